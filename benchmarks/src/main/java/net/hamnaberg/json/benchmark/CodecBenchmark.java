@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.benchmark;
+
+import net.hamnaberg.json.Collection;
+import net.hamnaberg.json.DataFormat;
+import net.hamnaberg.json.Item;
+import net.hamnaberg.json.JsonCodec;
+import net.hamnaberg.json.Link;
+import net.hamnaberg.json.Property;
+import net.hamnaberg.json.WriteOptions;
+import net.hamnaberg.json.parser.CollectionParser;
+import net.hamnaberg.json.parser.ItemCursor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes a collection with each {@link JsonCodec}.
+ * <p/>
+ * {@code JACKSON} is the default codec and the baseline. {@code parse} builds the collection from UTF-8 bytes,
+ * {@code cursor} reads every item through an {@link ItemCursor} without building it, and {@code writeBytes}
+ * and {@code writeChars} write the collection to a discarding stream and to a writer.
+ * Each fork only uses the codec under test, as a service configured with one codec would, so the calls into
+ * the parser and generator are not shared between two classes.
+ * Run with {@code -prof gc} to compare the allocation rate as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+    @Param({"JACKSON", "COLLECTION_JSON"})
+    public String codec;
+
+    @Param({"100", "10000"})
+    public int items;
+
+    private Collection collection;
+    private byte[] json;
+    private CollectionParser parser;
+    private WriteOptions options;
+
+    @Setup
+    public void setUp() throws IOException {
+        JsonCodec selected = "JACKSON".equals(codec) ? JsonCodec.JACKSON : JsonCodec.COLLECTION_JSON;
+        List<Item> list = new ArrayList<Item>(items);
+        for (int i = 0; i < items; i++) {
+            URI href = URI.create("http://example.com/items/" + i);
+            list.add(Item.create(href,
+                    Arrays.asList(
+                            Property.value("id", i),
+                            Property.value("name", "item " + i),
+                            Property.value("description", "An item with a \"quoted\" word and a non-ASCII \u00e6\u00f8\u00e5"),
+                            Property.value("price", i * 0.25),
+                            Property.value("active", i % 2 == 0)),
+                    Arrays.asList(Link.create(URI.create(href + "/owner"), "owner"))));
+        }
+        collection = Collection.builder(URI.create("http://example.com/items/")).addItems(list).build();
+        parser = new CollectionParser().usingCodec(selected);
+        options = WriteOptions.builder().codec(selected).build();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        collection.writeTo(stream, options);
+        json = stream.toByteArray();
+    }
+
+    @Benchmark
+    public Collection parse() throws IOException {
+        return parser.parse(new ByteArrayInputStream(json), DataFormat.JSON);
+    }
+
+    @Benchmark
+    public long cursor() throws IOException {
+        ItemCursor cursor = parser.cursor(new ByteArrayInputStream(json));
+        long sum = 0;
+        try {
+            while (cursor.next()) {
+                sum += cursor.getItem().getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long writeBytes() throws IOException {
+        CountingStream stream = new CountingStream();
+        collection.writeTo(stream, options);
+        return stream.count;
+    }
+
+    @Benchmark
+    public int writeChars() throws IOException {
+        StringWriter writer = new StringWriter(json.length);
+        collection.writeTo(writer, options);
+        return writer.getBuffer().length();
+    }
+
+    private static final class CountingStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
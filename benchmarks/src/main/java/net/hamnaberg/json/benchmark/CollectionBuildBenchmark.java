@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.hamnaberg.json.benchmark;
+
+import net.hamnaberg.funclite.Optional;
+import net.hamnaberg.json.Collection;
+import net.hamnaberg.json.Item;
+import net.hamnaberg.json.Link;
+import net.hamnaberg.json.Property;
+import net.hamnaberg.json.Query;
+import net.hamnaberg.json.Template;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a large collection from its parts.
+ * <p/>
+ * {@code items} creates every item from its properties and links with {@link Item#create(URI, Iterable, List)}.
+ * {@code collection} creates the collection from the already built items with
+ * {@link Collection#create(URI, List, List, List, Template, net.hamnaberg.json.Error)}.
+ * For a before and after comparison, run the same benchmark against the library built before and after the change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollectionBuildBenchmark {
+    private static final URI HREF = URI.create("http://example.com/items/");
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private List<URI> hrefs;
+    private List<List<Property>> data;
+    private List<List<Link>> links;
+    private List<Item> built;
+    private List<Link> collectionLinks;
+    private List<Query> queries;
+    private Template template;
+
+    @Setup
+    public void setUp() {
+        hrefs = new ArrayList<URI>(size);
+        data = new ArrayList<List<Property>>(size);
+        links = new ArrayList<List<Link>>(size);
+        for (int i = 0; i < size; i++) {
+            URI href = URI.create(HREF + String.valueOf(i));
+            hrefs.add(href);
+            data.add(Arrays.asList(Property.value("id", i), Property.value("name", "item " + i), Property.value("active", i % 2 == 0)));
+            links.add(Arrays.asList(Link.create(URI.create(href + "/owner"), "owner")));
+        }
+        built = items();
+        collectionLinks = Arrays.asList(Link.create(URI.create(HREF + "?page=2"), "next"));
+        queries = Arrays.asList(Query.create(URI.create(HREF + "search"), "search", Optional.<String>none(), Arrays.asList(Property.template("q"))));
+        template = Template.create(Arrays.asList(Property.template("name"), Property.template("active")));
+    }
+
+    @Benchmark
+    public List<Item> items() {
+        List<Item> items = new ArrayList<Item>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(Item.create(hrefs.get(i), data.get(i), links.get(i)));
+        }
+        return items;
+    }
+
+    @Benchmark
+    public Collection collection() {
+        return Collection.create(HREF, collectionLinks, built, queries, template, null);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.benchmark;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.hamnaberg.json.Item;
+import net.hamnaberg.json.Property;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaces every property of an item once, as a chain of single updates, and then builds the json.
+ * <p/>
+ * {@code persistent} uses {@link Item#replace(Property)}. {@code copyOnWrite} copies the whole
+ * data array on every update, which is what replace did before it was backed by a persistent vector.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataUpdateBenchmark {
+    private static final URI HREF = URI.create("http://example.com/items/1");
+
+    @Param({"10", "100", "1000"})
+    public int properties;
+
+    private Item item;
+    private List<Property> replacements;
+
+    @Setup
+    public void setUp() {
+        List<Property> data = new ArrayList<Property>(properties);
+        replacements = new ArrayList<Property>(properties);
+        for (int i = 0; i < properties; i++) {
+            data.add(Property.value("p" + i, i));
+            replacements.add(Property.value("p" + i, "changed " + i));
+        }
+        item = Item.create(HREF, data);
+    }
+
+    @Benchmark
+    public ObjectNode persistent() {
+        Item updated = item;
+        for (Property replacement : replacements) {
+            updated = updated.replace(replacement);
+        }
+        return updated.asJson();
+    }
+
+    @Benchmark
+    public ObjectNode copyOnWrite() {
+        Item updated = item;
+        for (Property replacement : replacements) {
+            List<Property> data = new ArrayList<Property>(properties);
+            for (Property property : updated.getData()) {
+                data.add(property.getName().equals(replacement.getName()) ? replacement : property);
+            }
+            updated = Item.create(HREF, data);
+        }
+        return updated.asJson();
+    }
+}
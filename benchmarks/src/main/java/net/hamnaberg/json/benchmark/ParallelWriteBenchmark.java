@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.hamnaberg.json.benchmark;
+
+import net.hamnaberg.json.Collection;
+import net.hamnaberg.json.Item;
+import net.hamnaberg.json.Link;
+import net.hamnaberg.json.Property;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a large collection to a discarding stream.
+ * <p/>
+ * {@code sequential} uses {@link Collection#writeTo(OutputStream)}, {@code parallel} uses
+ * {@link Collection#writeTo(OutputStream, ExecutorService)} with a fixed pool of {@code threads}.
+ * Compare the parallel scores across thread counts, up to the number of cores of the machine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelWriteBenchmark {
+    @Param({"100000"})
+    public int items;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Collection collection;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        List<Item> list = new ArrayList<Item>(items);
+        for (int i = 0; i < items; i++) {
+            URI href = URI.create("http://example.com/items/" + i);
+            list.add(Item.create(href,
+                    Arrays.asList(Property.value("id", i), Property.value("name", "item " + i), Property.value("active", i % 2 == 0)),
+                    Arrays.asList(Link.create(URI.create(href + "/owner"), "owner"))));
+        }
+        collection = Collection.builder(URI.create("http://example.com/items/")).addItems(list).build();
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public long sequential() throws IOException {
+        CountingStream stream = new CountingStream();
+        collection.writeTo(stream);
+        return stream.count;
+    }
+
+    @Benchmark
+    public long parallel() throws IOException {
+        CountingStream stream = new CountingStream();
+        collection.writeTo(stream, executor);
+        return stream.count;
+    }
+
+    private static final class CountingStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.hamnaberg.json.benchmark;
+
+import com.damnhandy.uri.template.UriTemplate;
+import net.hamnaberg.funclite.Optional;
+import net.hamnaberg.json.Property;
+import net.hamnaberg.json.URITemplateTarget;
+import net.hamnaberg.json.Value;
+import net.hamnaberg.json.ValueFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expands a uri template with the values of a list of properties.
+ * <p/>
+ * {@code builtIn} uses {@link URITemplateTarget#expand(Iterable)}. {@code handy} is what expand did before
+ * the built-in engine: copy the property values into a map, expand a precompiled handy-uri-templates
+ * template with it, and create the URI.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UriTemplateBenchmark {
+    @Param({
+            "http://example.com/orders/{id}",
+            "http://example.com/search{?q,lang,page}",
+            "http://example.com{/path*}{?q,filter*}"
+    })
+    public String template;
+
+    private List<Property> properties;
+    private URITemplateTarget target;
+    private UriTemplate handyTemplate;
+
+    @Setup
+    public void setUp() throws Exception {
+        Map<String, Value> filter = new LinkedHashMap<String, Value>();
+        filter.put("status", ValueFactory.createValue("open"));
+        filter.put("owner", ValueFactory.createValue("erlend hamnaberg"));
+        properties = Arrays.asList(
+                Property.value("id", 12345),
+                Property.value("q", "blue shoes & socks"),
+                Property.value("lang", "en"),
+                Property.value("page", 2),
+                Property.array("path", Arrays.asList(ValueFactory.createValue("v2"), ValueFactory.createValue("orders"), ValueFactory.createValue("open"))),
+                Property.object("filter", filter)
+        );
+        target = new URITemplateTarget(template);
+        handyTemplate = UriTemplate.fromTemplate(template);
+    }
+
+    @Benchmark
+    public URI builtIn() {
+        return target.expand(properties);
+    }
+
+    @Benchmark
+    public URI handy() throws Exception {
+        Map<String, Object> variables = new HashMap<String, Object>();
+        for (Property property : properties) {
+            if (property.hasArray()) {
+                List<Object> list = new ArrayList<Object>();
+                for (Value value : property.getArray()) {
+                    if (!value.isNull()) {
+                        list.add(value.asString());
+                    }
+                }
+                variables.put(property.getName(), list);
+            }
+            else if (property.hasObject()) {
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                for (Map.Entry<String, Value> entry : property.getObject().entrySet()) {
+                    if (!entry.getValue().isNull()) {
+                        map.put(entry.getKey(), entry.getValue().asString());
+                    }
+                }
+                variables.put(property.getName(), map);
+            }
+            else {
+                Optional<Value> value = property.getValue();
+                if (value.isSome() && !value.get().isNull()) {
+                    variables.put(property.getName(), value.get().asString());
+                }
+            }
+        }
+        synchronized (handyTemplate) {
+            return URI.create(handyTemplate.expand(variables));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of canonical encodings, keyed by collection identity.
+ * <p/>
+ * Collections are immutable, so an entry never goes stale; it is only evicted when the cache is full,
+ * least recently used first. A cached entry answers If-None-Match, and supplies the body, without serializing.
+ * <pre>
+ * CanonicalForm form = cache.get(collection);
+ * if (form.matches(request.getHeader("If-None-Match"))) { 304 } else { form.writeTo(out) }
+ * </pre>
+ * Thread-safe.
+ */
+public final class CanonicalCache {
+    private final Map<IdentityKey, CanonicalForm> entries;
+
+    public CanonicalCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive, was " + maxEntries);
+        }
+        this.entries = new LinkedHashMap<IdentityKey, CanonicalForm>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IdentityKey, CanonicalForm> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cached form, or a newly encoded form which is then cached.
+     */
+    public CanonicalForm get(Collection collection) {
+        IdentityKey key = new IdentityKey(collection.unwrap());
+        CanonicalForm form = getIfPresent(key);
+        if (form == null) {
+            form = CanonicalForm.encode(collection);
+            synchronized (entries) {
+                entries.put(key, form);
+            }
+        }
+        return form;
+    }
+
+    /**
+     * @return the cached form, or null.
+     */
+    public CanonicalForm getIfPresent(Collection collection) {
+        return getIfPresent(new IdentityKey(collection.unwrap()));
+    }
+
+    public void invalidate(Collection collection) {
+        synchronized (entries) {
+            entries.remove(new IdentityKey(collection.unwrap()));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private CanonicalForm getIfPresent(IdentityKey key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private static final class IdentityKey {
+        private final ObjectNode node;
+
+        private IdentityKey(ObjectNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(node);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).node == node;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The canonical encoding of a collection together with its strong ETag.
+ * <p/>
+ * The ETag is the quoted hex SHA-256 of the encoded bytes, so equal content always gives the same ETag,
+ * whatever the key order or number formatting of the original document.
+ */
+public final class CanonicalForm {
+    private final byte[] bytes;
+    private final String etag;
+
+    private CanonicalForm(byte[] bytes, String etag) {
+        this.bytes = bytes;
+        this.etag = etag;
+    }
+
+    static CanonicalForm encode(Collection collection) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        String etag;
+        try {
+            etag = writeCanonical(collection, stream);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode collection", e);
+        }
+        return new CanonicalForm(stream.toByteArray(), etag);
+    }
+
+    /**
+     * Writes the canonical form, hashing the bytes as they are written.
+     *
+     * @return the strong ETag of what was written.
+     */
+    static String writeCanonical(Collection collection, OutputStream stream) throws IOException {
+        DigestingStream digesting = new DigestingStream(stream);
+        JsonWriter.writeCanonical("collection", collection.unwrap(), digesting);
+        return toETag(digesting.digest.digest());
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, bytes.length);
+    }
+
+    /**
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        stream.write(bytes);
+    }
+
+    /**
+     * @param ifNoneMatch the value of an If-None-Match header, may be null
+     * @return true if the header matches this, and a 304 Not Modified can be sent.
+     */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "CanonicalForm with etag " + etag + " and " + bytes.length + " bytes";
+    }
+
+    private static String toETag(byte[] digest) {
+        char[] chars = new char[digest.length * 2 + 2];
+        chars[0] = '"';
+        for (int i = 0; i < digest.length; i++) {
+            chars[1 + i * 2] = Character.forDigit((digest[i] >> 4) & 0xF, 16);
+            chars[2 + i * 2] = Character.forDigit(digest[i] & 0xF, 16);
+        }
+        chars[chars.length - 1] = '"';
+        return new String(chars);
+    }
+
+    private static class DigestingStream extends FilterOutputStream {
+        private final MessageDigest digest;
+
+        private DigestingStream(OutputStream out) {
+            super(out);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            digest.update(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * The buffers of a {@link JsonCodec#COLLECTION_JSON} parser or generator, kept per thread between documents.
+ * A thread which has its buffers in use gets new ones.
+ */
+final class CodecBuffers {
+    static final int SIZE = 8000;
+    private static final int STRINGS = 512;
+    private static final ThreadLocal<SoftReference<CodecBuffers>> CACHE = new ThreadLocal<SoftReference<CodecBuffers>>();
+
+    /**
+     * Decoded input, or a string being encoded and output to a writer.
+     * As long as {@link #bytes}, since UTF-8 never decodes to more chars than bytes.
+     */
+    final char[] chars = new char[SIZE];
+    final byte[] bytes = new byte[SIZE];
+
+    /**
+     * Recently read strings, by hash. Kept with the buffers, so repeated names are shared between documents.
+     */
+    final String[] strings = new String[STRINGS];
+    private boolean inUse;
+
+    private CodecBuffers() {
+    }
+
+    static CodecBuffers acquire() {
+        SoftReference<CodecBuffers> reference = CACHE.get();
+        CodecBuffers buffers = reference == null ? null : reference.get();
+        if (buffers == null) {
+            buffers = new CodecBuffers();
+            CACHE.set(new SoftReference<CodecBuffers>(buffers));
+        }
+        else if (buffers.inUse) {
+            return new CodecBuffers();
+        }
+        buffers.inUse = true;
+        return buffers;
+    }
+
+    void release() {
+        inUse = false;
+    }
+}
@@ -18,40 +18,81 @@ package net.hamnaberg.json;
 
 
 import net.hamnaberg.json.extension.Extended;
+import net.hamnaberg.json.extension.Extension;
 import net.hamnaberg.funclite.CollectionOps;
+import net.hamnaberg.funclite.Function;
 import net.hamnaberg.funclite.Optional;
 import net.hamnaberg.funclite.Predicate;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import net.hamnaberg.json.io.ByteBufferAllocator;
+import net.hamnaberg.json.io.Compression;
+import net.hamnaberg.json.io.EncodedBuffers;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.*;
 import java.net.URI;
-import java.nio.charset.Charset;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static net.hamnaberg.funclite.Optional.fromNullable;
 import static net.hamnaberg.funclite.Optional.some;
 
 public final class Collection extends Extended<Collection> implements Writable {
+    private static final int PARALLEL_CHUNK_SIZE = 1024;
+
+    private volatile List<Item> items;
+    private volatile ItemIndex index;
+    private volatile Template template;
+    private final EncodedForms forms;
+
     Collection(ObjectNode value) {
+        this(value, null);
+    }
+
+    private Collection(ObjectNode value, EncodedForms forms) {
         super(value);
+        this.forms = forms;
+    }
+
+    /**
+     * The underlying node, not copied. Must not be modified.
+     */
+    ObjectNode unwrap() {
+        return delegate();
+    }
+
+    /**
+     * @return the memoized forms of the parts of this, or null.
+     */
+    EncodedForms forms() {
+        return forms;
     }
 
     @Override
     protected Collection copy(ObjectNode value) {
-        return new Collection(value);
+        return new Collection(value, forms);
     }
 
     public static Collection create(URI href, List<Link> links, List<Item> items, List<Query> queries, Template template, Error error) {
         return create(fromNullable(href), links, items, queries, fromNullable(template), fromNullable(error));
     }
 
+    /**
+     * The nodes of the given links, items, queries, template and error are shared, not copied;
+     * they are never modified once wrapped. Each is validated as it is added.
+     */
     public static Collection create(Optional<URI> href, List<Link> links, List<Item> items, List<Query> queries, Optional<Template> template, Optional<Error> error) {
         ObjectNode obj = JsonNodeFactory.instance.objectNode();
+        EncodedForms.Builder forms = new EncodedForms.Builder();
         obj.put("version", Version.ONE.getIdentifier());
         if (href.isSome()) {
             obj.put("href", href.get().toString());
@@ -59,32 +100,44 @@ public final class Collection extends Extended<Collection> implements Writable {
         if (!links.isEmpty()) {
             ArrayNode arr = JsonNodeFactory.instance.arrayNode();
             for (Link link : links) {
-                arr.add(link.asJson());
+                link.validate();
+                arr.add(link.unwrap());
+                forms.add(link.unwrap(), link.encoded());
             }
             obj.put("links", arr);
         }
+        List<Item> itemList = Collections.emptyList();
         if (!items.isEmpty()) {
             ArrayNode arr = JsonNodeFactory.instance.arrayNode();
+            itemList = new ArrayList<Item>(items.size());
             for (Item i : items) {
-                arr.add(i.asJson());
+                i.validate();
+                arr.add(i.unwrap());
+                forms.addAll(i.forms());
+                itemList.add(i);
             }
             obj.put("items", arr);
         }
         if (!queries.isEmpty()) {
             ArrayNode arr = JsonNodeFactory.instance.arrayNode();
             for (Query i : queries) {
-                arr.add(i.asJson());
+                i.validate();
+                arr.add(i.unwrap());
+                forms.addAll(i.forms());
             }
             obj.put("queries", arr);
         }
         if (template.isSome()) {
-            obj.put("template", template.get().asJson());
+            template.get().validate();
+            obj.put("template", template.get().unwrap());
+            forms.addAll(template.get().forms());
         }
         if (error.isSome()) {
-            obj.put("error", error.get().asJson());
+            error.get().validate();
+            obj.put("error", error.get().unwrap());
         }
-        Collection coll = new Collection(obj);
-        coll.validate();
+        Collection coll = new Collection(obj, forms.build());
+        coll.items = Collections.unmodifiableList(itemList);
         return coll;
     }
 
@@ -93,35 +146,76 @@ public final class Collection extends Extended<Collection> implements Writable {
     }
 
     public Optional<URI> getHref() {
-        return delegate.has("href") ? some(URI.create(delegate.get("href").asText())) : Optional.<URI>none();
+        return delegate().has("href") ? some(URI.create(delegate().get("href").asText())) : Optional.<URI>none();
     }
 
     public List<Link> getLinks() {
-        return delegate.has("links") ? Link.fromArray(delegate.get("links")) : Collections.<Link>emptyList();
+        return delegate().has("links") ? Link.fromArray(delegate().get("links"), forms) : Collections.<Link>emptyList();
     }
 
+    /**
+     * The item wrappers are created once and shared between calls.
+     */
     public List<Item> getItems() {
-        return delegate.has("items") ? Item.fromArray(delegate.get("items")) : Collections.<Item>emptyList();
+        List<Item> list = items;
+        if (list == null) {
+            list = delegate().has("items") ? Item.fromArray(delegate().get("items"), forms) : Collections.<Item>emptyList();
+            items = list;
+        }
+        return list;
+    }
+
+    /**
+     * Lookup structures over the items of this collection.
+     * The index is built on first access, and is safe to share between threads.
+     */
+    public ItemIndex getItemIndex() {
+        ItemIndex idx = index;
+        if (idx == null) {
+            idx = new ItemIndex(getItems());
+            index = idx;
+        }
+        return idx;
+    }
+
+    public Optional<Item> itemByHref(URI href) {
+        return getItemIndex().byHref(href);
+    }
+
+    public List<Item> itemsByProfile(URI profile) {
+        return getItemIndex().byProfile(profile);
     }
 
     public List<Query> getQueries() {
-        return delegate.has("queries") ? Query.fromArray(delegate.get("queries")) : Collections.<Query>emptyList();
+        return delegate().has("queries") ? Query.fromArray(delegate().get("queries"), forms) : Collections.<Query>emptyList();
     }
 
     public boolean hasTemplate() {
-        return delegate.has("template");
+        return delegate().has("template");
     }
 
+    /**
+     * The template wrapper is created once and shared between calls.
+     */
     public Optional<Template> getTemplate() {
-        return hasTemplate() ? some(new Template((ObjectNode) delegate.get("template"))) : Optional.<Template>none();
+        if (!hasTemplate()) {
+            return Optional.none();
+        }
+        Template t = template;
+        if (t == null) {
+            JsonNode node = delegate().get("template");
+            t = new Template((ObjectNode) node, EncodedForms.subtree(forms, node));
+            template = t;
+        }
+        return some(t);
     }
 
     public boolean hasError() {
-        return delegate.has("error");
+        return delegate().has("error");
     }
 
     public Optional<Error> getError() {
-        return hasError() ? some(new Error((ObjectNode) delegate.get("error"))) : Optional.<Error>none();
+        return hasError() ? some(new Error((ObjectNode) delegate().get("error"))) : Optional.<Error>none();
     }
 
     public Optional<Link> linkByName(final String name) {
@@ -194,18 +288,12 @@ public final class Collection extends Extended<Collection> implements Writable {
         return CollectionOps.filter(getItems(), predicate);
     }
 
+    /**
+     * Items with a profile link to the given uri, and items without a profile link.
+     * Uses the {@link #getItemIndex() item index}.
+     */
     public List<Item> filterItemsByProfile(final URI profile) {
-        return filterItems(new Predicate<Item>() {
-            @Override
-            public boolean apply(Item item) {
-                return item.linkByRel("profile").forall(new Predicate<Link>() {
-                    @Override
-                    public boolean apply(Link link) {
-                        return link.getHref().equals(profile);
-                    }
-                });
-            }
-        });
+        return getItemIndex().byProfileOrUnprofiled(profile);
     }
 
     public Optional<Item> getFirstItem() {
@@ -220,6 +308,118 @@ public final class Collection extends Extended<Collection> implements Writable {
         return CollectionOps.filter(getQueries(), predicate);
     }
 
+    /**
+     * Walks this collection without creating any model objects.
+     */
+    public void accept(CollectionVisitor visitor) {
+        CollectionWalker.walkCollection(delegate(), visitor);
+    }
+
+    /**
+     * Applies many changes with a single copy.
+     *
+     * @param mutation the changes to apply to a transient copy of this.
+     * @return a new copy with all the changes.
+     */
+    public Collection withMutations(Mutation<Transient> mutation) {
+        Transient t = asTransient();
+        mutation.apply(t);
+        return t.persistent();
+    }
+
+    /**
+     * @return a mutable copy, which is frozen into a new instance with {@link Transient#persistent()}.
+     */
+    public Transient asTransient() {
+        return new Transient(copyDelegate(), forms);
+    }
+
+    /**
+     * Applies the same extension value to every item, with one copy per item.
+     */
+    public <A> Collection applyToItems(final A value, final Extension<A> extension) {
+        return applyToItems(new Function<Item, A>() {
+            @Override
+            public A apply(Item input) {
+                return value;
+            }
+        }, extension);
+    }
+
+    /**
+     * Applies a value computed per item to every item, with one copy per item.
+     */
+    public <A> Collection applyToItems(final Function<Item, A> values, final Extension<A> extension) {
+        return withMutations(new Mutation<Transient>() {
+            @Override
+            public void apply(Transient t) {
+                t.mapItems(new Function<Item, Item>() {
+                    @Override
+                    public Item apply(Item item) {
+                        return item.apply(values.apply(item), extension);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Applies a value computed per item to every item, splitting large collections
+     * into contiguous chunks which are processed on the executor.
+     * The order of the items is kept.
+     */
+    public <A> Collection applyToItems(final Function<Item, A> values, final Extension<A> extension, ExecutorService executor) {
+        final List<Item> list = getItems();
+        int chunks = Runtime.getRuntime().availableProcessors() * 4;
+        final int chunkSize = Math.max(PARALLEL_CHUNK_SIZE, (list.size() + chunks - 1) / chunks);
+        if (list.size() <= chunkSize) {
+            return applyToItems(values, extension);
+        }
+        final Item[] result = new Item[list.size()];
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int start = 0; start < list.size(); start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(list.size(), start + chunkSize);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = from; i < to; i++) {
+                        Item item = list.get(i);
+                        result[i] = item.apply(values.apply(item), extension);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while applying extension", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof java.lang.Error) {
+                    throw (java.lang.Error) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        ArrayNode arr = JsonNodeFactory.instance.arrayNode();
+        EncodedForms.Builder applied = new EncodedForms.Builder().addAll(forms);
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] != list.get(i)) {
+                applied.remove(list.get(i).unwrap());
+            }
+            arr.add(result[i].unwrap());
+            applied.addAll(result[i].forms());
+        }
+        ObjectNode copied = copyDelegate();
+        copied.put("items", arr);
+        return new Collection(copied, applied.build());
+    }
+
     public Builder toBuilder() {
         Builder builder = new Builder(getHref());
         builder.addItems(getItems());
@@ -234,15 +434,120 @@ public final class Collection extends Extended<Collection> implements Writable {
         return builder;
     }
 
+    /*
+     * Writes UTF-8 encoded json to the supplied OutputStream, and flushes it.
+     * Note: Does NOT close the stream.
+     */
     public void writeTo(OutputStream stream) throws IOException {
-        writeTo(new OutputStreamWriter(stream, Charset.forName("UTF-8")));
+        JsonWriter.write("collection", delegate(), forms(), stream);
     }
 
+    /*
+     * Writes UTF-8 encoded json to the supplied OutputStream, with the items written as the options say.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream, WriteOptions options) throws IOException {
+        JsonWriter.write("collection", delegate(), forms(), stream, options);
+    }
+
+    /*
+     * Writes to the supplied Writer, with the items written as the options say.
+     * Note: Does NOT close the writer.
+     */
+    public void writeTo(Writer writer, WriteOptions options) throws IOException {
+        JsonWriter.write("collection", delegate(), forms(), writer, options);
+    }
+
+    /*
+     * Writes UTF-8 encoded json to the supplied OutputStream, and flushes it.
+     * Large collections have their items encoded in chunks on the executor; the output is the same.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream, ExecutorService executor) throws IOException {
+        JsonWriter.writeParallel("collection", delegate(), forms(), stream, executor);
+    }
+
+    /*
+     * Writes compressed UTF-8 encoded json to the supplied OutputStream, and flushes it.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream, Compression compression) throws IOException {
+        JsonWriter.write("collection", delegate(), forms(), stream, compression);
+    }
+
+    /*
+     * Writes to the supplied Writer, and flushes it.
+     * Note: Does NOT close the writer.
+     */
     public void writeTo(Writer writer) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode obj = mapper.createObjectNode();
-        obj.put("collection", asJson());
-        mapper.writeValue(writer, obj);
+        JsonWriter.write("collection", delegate(), forms(), writer);
+    }
+
+    /**
+     * Writes UTF-8 encoded json to the supplied OutputStream with the codec, and flushes it.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream, JsonCodec codec) throws IOException {
+        JsonWriter.write("collection", delegate(), forms(), stream, codec);
+    }
+
+    /**
+     * Writes to the supplied Writer with the codec, and flushes it.
+     * Note: Does NOT close the writer.
+     */
+    public void writeTo(Writer writer, JsonCodec codec) throws IOException {
+        JsonWriter.write("collection", delegate(), forms(), writer, codec);
+    }
+
+    /**
+     * Writes to the supplied OutputStream in the format, and flushes it.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream, DataFormat format) throws IOException {
+        JsonWriter.write("collection", delegate(), forms(), stream, WriteOptions.DEFAULT, format);
+    }
+
+    /**
+     * Writes UTF-8 encoded json to the channel, using gathering writes where supported.
+     * Note: Does NOT close the channel.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        JsonWriter.write("collection", delegate(), forms(), channel);
+    }
+
+    /**
+     * Encodes this as UTF-8 json into buffers from the allocator.
+     * The caller must {@link EncodedBuffers#release() release} the result.
+     */
+    public EncodedBuffers encode(ByteBufferAllocator allocator) throws IOException {
+        return JsonWriter.encode("collection", delegate(), forms(), allocator);
+    }
+
+    /**
+     * Encodes this as compressed UTF-8 json into buffers from the allocator.
+     * The caller must {@link EncodedBuffers#release() release} the result.
+     */
+    public EncodedBuffers encode(ByteBufferAllocator allocator, Compression compression) throws IOException {
+        return JsonWriter.encode("collection", delegate(), forms(), allocator, compression);
+    }
+
+    /**
+     * Writes this in canonical form, with sorted keys and normalized numbers, hashing while writing.
+     * Note: Does NOT close the stream.
+     *
+     * @return the strong ETag of the written bytes.
+     * @see CanonicalForm
+     */
+    public String writeCanonicalTo(OutputStream stream) throws IOException {
+        return CanonicalForm.writeCanonical(this, stream);
+    }
+
+    /**
+     * @return the canonical encoding of this, with its ETag.
+     * @see CanonicalCache
+     */
+    public CanonicalForm toCanonicalForm() {
+        return CanonicalForm.encode(this);
     }
 
     @Override
@@ -277,6 +582,151 @@ public final class Collection extends Extended<Collection> implements Writable {
         return new Builder(fromNullable(href));
     }
 
+    /**
+     * Mutable, single-threaded view of a collection.
+     * Items, links and queries are shared with the source, not copied.
+     * The view can not be used after {@link #persistent()} is called.
+     */
+    public static final class Transient {
+        private ObjectNode node;
+        private final Map<String, ArrayNode> arrays = new HashMap<String, ArrayNode>(4);
+        private final EncodedForms.Builder forms = new EncodedForms.Builder();
+
+        private Transient(ObjectNode node, EncodedForms forms) {
+            this.node = node;
+            this.forms.addAll(forms);
+        }
+
+        public Transient withHref(URI href) {
+            if (href == null) {
+                checkNode().remove("href");
+            }
+            else {
+                checkNode().put("href", href.toString());
+            }
+            return this;
+        }
+
+        public Transient addItem(Item item) {
+            array("items").add(item.unwrap());
+            forms.addAll(item.forms());
+            return this;
+        }
+
+        public Transient addItems(Iterable<Item> items) {
+            ArrayNode arr = array("items");
+            for (Item item : items) {
+                arr.add(item.unwrap());
+                forms.addAll(item.forms());
+            }
+            return this;
+        }
+
+        /**
+         * Replaces every item with the result of the function.
+         */
+        public Transient mapItems(Function<Item, Item> f) {
+            ArrayNode arr = array("items");
+            for (int i = 0; i < arr.size(); i++) {
+                Item item = f.apply(item(arr.get(i)));
+                if (item.unwrap() != arr.get(i)) {
+                    forms.remove(arr.get(i));
+                    arr.set(i, item.unwrap());
+                }
+                forms.addAll(item.forms());
+            }
+            return this;
+        }
+
+        public Transient removeItems(Predicate<Item> predicate) {
+            ArrayNode arr = array("items");
+            for (int i = arr.size() - 1; i >= 0; i--) {
+                if (predicate.apply(item(arr.get(i)))) {
+                    forms.remove(arr.remove(i));
+                }
+            }
+            return this;
+        }
+
+        public Transient addLink(Link link) {
+            link.validate();
+            array("links").add(link.unwrap());
+            forms.add(link.unwrap(), link.encoded());
+            return this;
+        }
+
+        public Transient addQuery(Query query) {
+            query.validate();
+            array("queries").add(query.unwrap());
+            forms.addAll(query.forms());
+            return this;
+        }
+
+        public Transient withTemplate(Template template) {
+            if (template != null) {
+                forms.addAll(template.forms());
+            }
+            return withOptional("template", template == null ? null : template.unwrap());
+        }
+
+        public Transient withError(Error error) {
+            return withOptional("error", error == null ? null : error.unwrap());
+        }
+
+        /**
+         * @return a new immutable collection with all changes applied.
+         */
+        public Collection persistent() {
+            ObjectNode frozen = checkNode();
+            for (Map.Entry<String, ArrayNode> entry : arrays.entrySet()) {
+                if (entry.getValue().size() == 0) {
+                    frozen.remove(entry.getKey());
+                }
+            }
+            node = null;
+            arrays.clear();
+            return new Collection(frozen, forms.build());
+        }
+
+        private Item item(JsonNode node) {
+            return new Item((ObjectNode) node, forms.subtree(node));
+        }
+
+        private Transient withOptional(String name, ObjectNode value) {
+            if (value == null) {
+                checkNode().remove(name);
+            }
+            else {
+                checkNode().put(name, value);
+            }
+            return this;
+        }
+
+        private ArrayNode array(String name) {
+            ObjectNode n = checkNode();
+            ArrayNode arr = arrays.get(name);
+            if (arr == null) {
+                arr = JsonNodeFactory.instance.arrayNode();
+                JsonNode existing = n.get(name);
+                if (existing != null) {
+                    for (int i = 0; i < existing.size(); i++) {
+                        arr.add(existing.get(i));
+                    }
+                }
+                n.put(name, arr);
+                arrays.put(name, arr);
+            }
+            return arr;
+        }
+
+        private ObjectNode checkNode() {
+            if (node == null) {
+                throw new IllegalStateException("Transient used after persistent()");
+            }
+            return node;
+        }
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -355,5 +805,33 @@ public final class Collection extends Extended<Collection> implements Writable {
         public Collection build() {
             return Collection.create(href, linkBuilder, itemBuilder, queryBuilder, template, error);
         }
+
+        /**
+         * Continues in a builder which keeps the items encoded, in memory up to the budget and in a
+         * temporary file beyond it. Items added so far are moved over.
+         *
+         * @param memoryBudget the number of encoded bytes to keep in memory.
+         */
+        public SpooledCollection.Builder spooled(long memoryBudget) throws IOException {
+            return spooled(memoryBudget, null);
+        }
+
+        /**
+         * @param directory where to put the temporary file, or null for the default temporary directory.
+         */
+        public SpooledCollection.Builder spooled(long memoryBudget, File directory) throws IOException {
+            Collection envelope = Collection.create(href, linkBuilder, Collections.<Item>emptyList(), queryBuilder, template, error);
+            SpooledCollection.Builder builder = new SpooledCollection.Builder(envelope, memoryBudget, directory);
+            boolean added = false;
+            try {
+                builder.addItems(itemBuilder);
+                added = true;
+            } finally {
+                if (!added) {
+                    builder.close();
+                }
+            }
+            return builder;
+        }
     }
 }
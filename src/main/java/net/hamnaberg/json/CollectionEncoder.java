@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Encodes a collection on demand, one buffer at a time.
+ * <p/>
+ * Each call to {@link #next(ByteBuffer)} fills the buffer with the next part of the document,
+ * encoding only as much as is needed, so a server can write as the client is ready to receive.
+ * At most one item, or one envelope field, is held in encoded form at a time.
+ * <pre>
+ * boolean more = encoder.next(buffer);
+ * buffer.flip();
+ * channel.write(buffer);
+ * </pre>
+ * Not thread-safe.
+ */
+public final class CollectionEncoder {
+    private enum State {
+        START, FIELDS, ITEMS, END, DONE
+    }
+
+    private final ObjectNode node;
+    private final EncodedForms forms;
+    private final Iterator<Map.Entry<String, JsonNode>> fields;
+    private final Iterator<Item> streamed;
+    private final WriteOptions options;
+    private final String base;
+    private final Sink sink = new Sink();
+    private final JsonGenerator generator;
+    private Iterator<JsonNode> items = Collections.<JsonNode>emptyList().iterator();
+    private State state = State.START;
+    private int position;
+
+    private CollectionEncoder(ObjectNode node, EncodedForms forms, Iterator<Item> streamed, WriteOptions options) throws IOException {
+        this.node = node;
+        this.forms = forms;
+        this.options = options;
+        this.base = JsonWriter.relativeBase(options, node);
+        this.fields = node.fields();
+        this.streamed = streamed;
+        this.generator = JsonWriter.generator(sink, options.getCodec());
+    }
+
+    /**
+     * Encodes the collection as it is. The output is the same as {@link Collection#writeTo(java.io.OutputStream)}.
+     */
+    public static CollectionEncoder create(Collection collection) throws IOException {
+        return create(collection, WriteOptions.DEFAULT);
+    }
+
+    public static CollectionEncoder create(Collection collection, WriteOptions options) throws IOException {
+        return new CollectionEncoder(collection.unwrap(), collection.forms(), null, options);
+    }
+
+    /**
+     * Encodes the envelope, followed by its own items and then the items from the iterator.
+     * The output is the same as {@link CollectionWriter#write(Collection, Iterator)}.
+     */
+    public static CollectionEncoder create(Collection envelope, Iterator<Item> items) throws IOException {
+        return create(envelope, items, WriteOptions.DEFAULT);
+    }
+
+    public static CollectionEncoder create(Collection envelope, Iterator<Item> items, WriteOptions options) throws IOException {
+        if (items == null) {
+            throw new IllegalArgumentException("Items may not be null");
+        }
+        return new CollectionEncoder(envelope.unwrap(), envelope.forms(), items, options);
+    }
+
+    /**
+     * Puts as many of the next bytes as fit into the buffer.
+     *
+     * @return true if there is more to come, false if the document is complete.
+     */
+    public boolean next(ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            if (position < sink.size()) {
+                int count = Math.min(dst.remaining(), sink.size() - position);
+                dst.put(sink.buffer(), position, count);
+                position += count;
+            }
+            else {
+                sink.reset();
+                position = 0;
+                if (!produce()) {
+                    return false;
+                }
+                generator.flush();
+            }
+        }
+        return position < sink.size() || state != State.DONE;
+    }
+
+    private boolean produce() throws IOException {
+        switch (state) {
+            case START:
+                generator.writeStartObject();
+                JsonWriter.writeKey(generator, "collection");
+                generator.writeStartObject();
+                if (streamed != null) {
+                    JsonWriter.writeKey(generator, "version");
+                    generator.writeString(Version.ONE.getIdentifier());
+                }
+                state = State.FIELDS;
+                return true;
+            case FIELDS:
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    String name = field.getKey();
+                    if (streamed != null && ("version".equals(name) || "items".equals(name))) {
+                        continue;
+                    }
+                    if ("items".equals(name)) {
+                        JsonWriter.writeKey(generator, name);
+                        startItems(field.getValue());
+                    }
+                    else {
+                        JsonWriter.writeEnvelopeField(generator, name, field.getValue(), forms, base);
+                    }
+                    return true;
+                }
+                if (streamed != null) {
+                    JsonWriter.writeKey(generator, "items");
+                    startItems(node.get("items"));
+                    return true;
+                }
+                state = State.END;
+                return produce();
+            case ITEMS:
+                if (items.hasNext()) {
+                    JsonWriter.writeItem(generator, items.next(), forms, options, base);
+                }
+                else if (streamed != null && streamed.hasNext()) {
+                    Item item = streamed.next();
+                    JsonWriter.writeItem(generator, item.unwrap(), item.forms(), options, base);
+                }
+                else {
+                    generator.writeEndArray();
+                    state = streamed != null ? State.END : State.FIELDS;
+                }
+                return true;
+            case END:
+                generator.writeEndObject();
+                generator.writeEndObject();
+                generator.close();
+                state = State.DONE;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void startItems(JsonNode array) throws IOException {
+        generator.writeStartArray();
+        if (array != null) {
+            items = array.elements();
+        }
+        state = State.ITEMS;
+    }
+
+    private static class Sink extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.base.GeneratorBase;
+import com.fasterxml.jackson.core.io.NumberOutput;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.JsonWriteContext;
+import net.hamnaberg.json.util.Charsets;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * The encoder of {@link JsonCodec#COLLECTION_JSON}.
+ * <p/>
+ * Writes UTF-8 straight into a byte buffer, with a fast path for ASCII, and copies the stored UTF-8 of the fixed keys
+ * and memoized forms as it is. Output to a writer is decoded from the buffer when it is drained.
+ * The output is the same as Jackson's: characters outside the BMP are escaped when writing bytes, but not chars.
+ * Pretty printing and escaping of non-ASCII are not supported.
+ */
+final class CollectionJsonGenerator extends GeneratorBase {
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] NULL = ascii("null");
+
+    /**
+     * For each ASCII char: 0 if it is written as it is, the char after the backslash, or -1 for a unicode escape.
+     */
+    private static final int[] ESCAPES = new int[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            ESCAPES[i] = -1;
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+    }
+
+    private final OutputStream stream;
+    private final Writer writer;
+    private final CodecBuffers buffers;
+    private byte[] out;
+    private int tail;
+    private SerializableString rootValueSeparator = new SerializedString(" ");
+
+    CollectionJsonGenerator(OutputStream stream) {
+        this(stream, null);
+    }
+
+    CollectionJsonGenerator(Writer writer) {
+        this(null, writer);
+    }
+
+    private CollectionJsonGenerator(OutputStream stream, Writer writer) {
+        super(Feature.collectDefaults(), JsonWriter.MAPPER);
+        this.stream = stream;
+        this.writer = writer;
+        this.buffers = CodecBuffers.acquire();
+        this.out = buffers.bytes;
+    }
+
+    @Override
+    public CollectionJsonGenerator setRootValueSeparator(SerializableString separator) {
+        rootValueSeparator = separator;
+        return this;
+    }
+
+    @Override
+    public Object getOutputTarget() {
+        return stream != null ? stream : writer;
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        _verifyValueWrite("start an array");
+        _writeContext = _writeContext.createChildArrayContext();
+        writeByte('[');
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        if (!_writeContext.inArray()) {
+            _reportError("Current context not an ARRAY but " + _writeContext.getTypeDesc());
+        }
+        writeByte(']');
+        _writeContext = _writeContext.getParent();
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        _verifyValueWrite("start an object");
+        _writeContext = _writeContext.createChildObjectContext();
+        writeByte('{');
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        if (!_writeContext.inObject()) {
+            _reportError("Current context not an object but " + _writeContext.getTypeDesc());
+        }
+        writeByte('}');
+        _writeContext = _writeContext.getParent();
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        verifyFieldName(name);
+        writeQuoted(name);
+    }
+
+    @Override
+    public void writeFieldName(SerializableString name) throws IOException {
+        verifyFieldName(name.getValue());
+        writeQuoted(name.asQuotedUTF8());
+    }
+
+    private void verifyFieldName(String name) throws IOException {
+        int status = _writeContext.writeFieldName(name);
+        if (status == JsonWriteContext.STATUS_EXPECT_VALUE) {
+            _reportError("Can not write a field name, expecting a value");
+        }
+        if (status == JsonWriteContext.STATUS_OK_AFTER_COMMA) {
+            writeByte(',');
+        }
+    }
+
+    @Override
+    public void writeString(String text) throws IOException {
+        _verifyValueWrite("write text value");
+        if (text == null) {
+            writeBytes(NULL, 0, NULL.length);
+        }
+        else {
+            writeQuoted(text);
+        }
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length));
+    }
+
+    @Override
+    public void writeString(SerializableString text) throws IOException {
+        _verifyValueWrite("write text value");
+        writeQuoted(text.asQuotedUTF8());
+    }
+
+    @Override
+    public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+        _verifyValueWrite("write text value");
+        writeByte('"');
+        writeBytes(text, offset, length);
+        writeByte('"');
+    }
+
+    @Override
+    public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length, Charsets.UTF_8));
+    }
+
+    @Override
+    public void writeRaw(String text) throws IOException {
+        writeRaw(text, 0, text.length());
+    }
+
+    @Override
+    public void writeRaw(String text, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            char c = text.charAt(i);
+            if (tail + 4 > out.length) {
+                drain();
+            }
+            if (c < 0x80) {
+                out[tail++] = (byte) c;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < offset + length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            }
+            else if (Character.isSurrogate(c)) {
+                _reportError("Unmatched surrogate 0x" + Integer.toHexString(c) + " in raw text");
+            }
+            else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    @Override
+    public void writeRaw(char[] text, int offset, int length) throws IOException {
+        writeRaw(new String(text, offset, length));
+    }
+
+    @Override
+    public void writeRaw(char c) throws IOException {
+        writeRaw(String.valueOf(c));
+    }
+
+    @Override
+    public void writeRaw(SerializableString text) throws IOException {
+        byte[] bytes = text.asUnquotedUTF8();
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void writeBinary(Base64Variant variant, byte[] data, int offset, int length) throws IOException {
+        _verifyValueWrite("write binary value");
+        byte[] bytes = data;
+        if (offset != 0 || length != data.length) {
+            bytes = new byte[length];
+            System.arraycopy(data, offset, bytes, 0, length);
+        }
+        writeAscii(variant.encode(bytes, true));
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException {
+        _verifyValueWrite("write number");
+        if (_cfgNumbersAsStrings) {
+            writeQuoted(String.valueOf(value));
+            return;
+        }
+        if (tail + 11 > out.length) {
+            drain();
+        }
+        tail = NumberOutput.outputInt(value, out, tail);
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException {
+        _verifyValueWrite("write number");
+        if (_cfgNumbersAsStrings) {
+            writeQuoted(String.valueOf(value));
+            return;
+        }
+        if (tail + 21 > out.length) {
+            drain();
+        }
+        tail = NumberOutput.outputLong(value, out, tail);
+    }
+
+    @Override
+    public void writeNumber(BigInteger value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        writeNumber(value.toString());
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeNonNumeric(String.valueOf(value));
+            return;
+        }
+        writeNumber(String.valueOf(value));
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeNonNumeric(String.valueOf(value));
+            return;
+        }
+        writeNumber(String.valueOf(value));
+    }
+
+    private void writeNonNumeric(String value) throws IOException {
+        if (isEnabled(Feature.QUOTE_NON_NUMERIC_NUMBERS)) {
+            writeString(value);
+        }
+        else {
+            writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(BigDecimal value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        writeNumber(value.toString());
+    }
+
+    @Override
+    public void writeNumber(String encoded) throws IOException {
+        _verifyValueWrite("write number");
+        if (_cfgNumbersAsStrings) {
+            writeQuoted(encoded);
+        }
+        else {
+            writeAscii(encoded);
+        }
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException {
+        _verifyValueWrite("write boolean value");
+        byte[] literal = state ? TRUE : FALSE;
+        writeBytes(literal, 0, literal.length);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        _verifyValueWrite("write null value");
+        writeBytes(NULL, 0, NULL.length);
+    }
+
+    @Override
+    protected void _verifyValueWrite(String typeMsg) throws IOException {
+        int status = _writeContext.writeValue();
+        switch (status) {
+            case JsonWriteContext.STATUS_EXPECT_NAME:
+                _reportError("Can not " + typeMsg + ", expecting field name");
+                break;
+            case JsonWriteContext.STATUS_OK_AFTER_COMMA:
+                writeByte(',');
+                break;
+            case JsonWriteContext.STATUS_OK_AFTER_COLON:
+                writeByte(':');
+                break;
+            case JsonWriteContext.STATUS_OK_AFTER_SPACE:
+                if (rootValueSeparator != null) {
+                    byte[] separator = rootValueSeparator.asUnquotedUTF8();
+                    writeBytes(separator, 0, separator.length);
+                }
+                break;
+            default:
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (isEnabled(Feature.FLUSH_PASSED_TO_STREAM)) {
+            if (stream != null) {
+                stream.flush();
+            }
+            else {
+                writer.flush();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed()) {
+            return;
+        }
+        try {
+            if (isEnabled(Feature.AUTO_CLOSE_JSON_CONTENT)) {
+                JsonStreamContext context = getOutputContext();
+                while (!context.inRoot()) {
+                    if (context.inArray()) {
+                        writeEndArray();
+                    }
+                    else {
+                        writeEndObject();
+                    }
+                    context = getOutputContext();
+                }
+            }
+            drain();
+            super.close();
+            if (isEnabled(Feature.AUTO_CLOSE_TARGET)) {
+                if (stream != null) {
+                    stream.close();
+                }
+                else {
+                    writer.close();
+                }
+            }
+            else if (isEnabled(Feature.FLUSH_PASSED_TO_STREAM)) {
+                if (stream != null) {
+                    stream.flush();
+                }
+                else {
+                    writer.flush();
+                }
+            }
+        } finally {
+            _releaseBuffers();
+        }
+    }
+
+    @Override
+    protected void _releaseBuffers() {
+        if (out != null) {
+            out = null;
+            buffers.release();
+        }
+    }
+
+    /**
+     * Writes the string quoted and escaped. It is copied a chunk at a time into the char buffer, which is free
+     * until the next drain, with chunks small enough that every char fits as a unicode escape.
+     */
+    private void writeQuoted(String text) throws IOException {
+        writeByte('"');
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int count = Math.min(length - i, (out.length - tail) / 6);
+            if (count == 0) {
+                drain();
+                continue;
+            }
+            char[] chars = buffers.chars;
+            text.getChars(i, i + count, chars, 0);
+            byte[] bytes = out;
+            int position = tail;
+            int j = 0;
+            while (j < count) {
+                char c = chars[j++];
+                if (c < 0x80) {
+                    int escape = ESCAPES[c];
+                    if (escape == 0) {
+                        bytes[position++] = (byte) c;
+                    }
+                    else {
+                        bytes[position++] = '\\';
+                        if (escape > 0) {
+                            bytes[position++] = (byte) escape;
+                        }
+                        else {
+                            position = writeUnicodeEscape(c, bytes, position);
+                        }
+                    }
+                }
+                else if (c < 0x800) {
+                    bytes[position++] = (byte) (0xc0 | c >> 6);
+                    bytes[position++] = (byte) (0x80 | c & 0x3f);
+                }
+                else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+                    bytes[position++] = (byte) (0xe0 | c >> 12);
+                    bytes[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    bytes[position++] = (byte) (0x80 | c & 0x3f);
+                }
+                else if (writer != null && Character.isHighSurrogate(c) && i + j < length && Character.isLowSurrogate(text.charAt(i + j))) {
+                    int code = Character.toCodePoint(c, text.charAt(i + j++));
+                    bytes[position++] = (byte) (0xf0 | code >> 18);
+                    bytes[position++] = (byte) (0x80 | code >> 12 & 0x3f);
+                    bytes[position++] = (byte) (0x80 | code >> 6 & 0x3f);
+                    bytes[position++] = (byte) (0x80 | code & 0x3f);
+                }
+                else {
+                    bytes[position++] = '\\';
+                    position = writeUnicodeEscape(c, bytes, position);
+                }
+            }
+            i += j;
+            tail = position;
+        }
+        writeByte('"');
+    }
+
+    private static int writeUnicodeEscape(char c, byte[] bytes, int position) {
+        bytes[position++] = 'u';
+        bytes[position++] = HEX[c >> 12];
+        bytes[position++] = HEX[c >> 8 & 0xf];
+        bytes[position++] = HEX[c >> 4 & 0xf];
+        bytes[position++] = HEX[c & 0xf];
+        return position;
+    }
+
+    private void writeQuoted(byte[] quoted) throws IOException {
+        if (tail + quoted.length + 2 > out.length) {
+            drain();
+            if (quoted.length + 2 > out.length) {
+                writeByte('"');
+                writeBytes(quoted, 0, quoted.length);
+                writeByte('"');
+                return;
+            }
+        }
+        byte[] bytes = out;
+        bytes[tail++] = '"';
+        System.arraycopy(quoted, 0, bytes, tail, quoted.length);
+        tail += quoted.length;
+        bytes[tail++] = '"';
+    }
+
+    private void writeCodePoint(int code) {
+        if (code < 0x800) {
+            out[tail++] = (byte) (0xc0 | code >> 6);
+            out[tail++] = (byte) (0x80 | code & 0x3f);
+        }
+        else if (code < 0x10000) {
+            out[tail++] = (byte) (0xe0 | code >> 12);
+            out[tail++] = (byte) (0x80 | code >> 6 & 0x3f);
+            out[tail++] = (byte) (0x80 | code & 0x3f);
+        }
+        else {
+            out[tail++] = (byte) (0xf0 | code >> 18);
+            out[tail++] = (byte) (0x80 | code >> 12 & 0x3f);
+            out[tail++] = (byte) (0x80 | code >> 6 & 0x3f);
+            out[tail++] = (byte) (0x80 | code & 0x3f);
+        }
+    }
+
+    private void writeAscii(String text) throws IOException {
+        int length = text.length();
+        if (tail + length > out.length) {
+            drain();
+            if (length > out.length) {
+                writeRaw(text);
+                return;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            out[tail++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void writeByte(char c) throws IOException {
+        if (tail == out.length) {
+            drain();
+        }
+        out[tail++] = (byte) c;
+    }
+
+    /**
+     * Copies whole UTF-8 sequences into the buffer, or straight to the target if they do not fit.
+     */
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (tail + length > out.length) {
+            drain();
+            if (length > out.length) {
+                write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, out, tail, length);
+        tail += length;
+    }
+
+    private void drain() throws IOException {
+        if (tail > 0) {
+            write(out, 0, tail);
+            tail = 0;
+        }
+    }
+
+    /**
+     * Writes whole UTF-8 sequences to the target, decoding them for a writer.
+     */
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        if (stream != null) {
+            stream.write(bytes, offset, length);
+            return;
+        }
+        char[] chars = buffers.chars;
+        int count = 0;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int run = Math.min(end - i, chars.length - 1 - count);
+            if (run <= 0) {
+                writer.write(chars, 0, count);
+                count = 0;
+                continue;
+            }
+            for (int stop = i + run; i < stop && bytes[i] >= 0; i++) {
+                chars[count++] = (char) bytes[i];
+            }
+            if (i == end || count >= chars.length - 1) {
+                continue;
+            }
+            int b = bytes[i++];
+            if ((b & 0xe0) == 0xc0) {
+                chars[count++] = (char) ((b & 0x1f) << 6 | bytes[i++] & 0x3f);
+            }
+            else if ((b & 0xf0) == 0xe0) {
+                chars[count++] = (char) ((b & 0x0f) << 12 | (bytes[i++] & 0x3f) << 6 | bytes[i++] & 0x3f);
+            }
+            else {
+                int code = ((b & 0x07) << 18 | (bytes[i++] & 0x3f) << 12 | (bytes[i++] & 0x3f) << 6 | bytes[i++] & 0x3f) - 0x10000;
+                chars[count++] = (char) (0xd800 | code >> 10);
+                chars[count++] = (char) (0xdc00 | code & 0x3ff);
+            }
+        }
+        writer.write(chars, 0, count);
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,968 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.base.ParserMinimalBase;
+import com.fasterxml.jackson.core.json.JsonReadContext;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * The tokenizer of {@link JsonCodec#COLLECTION_JSON}.
+ * <p/>
+ * Bytes are decoded to chars as the buffer is filled, with a fast path for ASCII.
+ * The text of a string is created when asked for, straight from the buffer unless it has escapes or spans a refill.
+ * The fixed keys are matched in the buffer and returned as constants. Other names, and the values of
+ * name, rel, prompt and render, are looked up among recently read strings, so repeated ones are read as one string.
+ * Numbers are typed as Jackson types them, so the nodes read are the same.
+ */
+final class CollectionJsonParser extends ParserMinimalBase {
+    private static final int MAX_SHARED_LENGTH = 64;
+    private static final Key[][] KEYS_BY_LENGTH = new Key[16][];
+
+    static {
+        for (String name : JsonWriter.FIXED_KEYS) {
+            boolean sharesValues = "name".equals(name) || "rel".equals(name) || "prompt".equals(name) || "render".equals(name);
+            Key[] keys = KEYS_BY_LENGTH[name.length()];
+            Key[] extended = new Key[keys == null ? 1 : keys.length + 1];
+            if (keys != null) {
+                System.arraycopy(keys, 0, extended, 0, keys.length);
+            }
+            extended[extended.length - 1] = new Key(name, sharesValues);
+            KEYS_BY_LENGTH[name.length()] = extended;
+        }
+    }
+
+    private final Reader reader;
+    private final InputStream stream;
+    private final CodecBuffers buffers;
+    private final char[] buffer;
+    private final String[] strings;
+    private ObjectCodec codec;
+    private JsonReadContext context = JsonReadContext.createRootContext();
+    private boolean closed;
+
+    private int position;
+    private int limit;
+    private int pendingBytes;
+    private long processed;
+    private int line = 1;
+    private long lineStart;
+    private long tokenOffset;
+    private int tokenLine = 1;
+    private long tokenLineStart;
+
+    private String name;
+    private boolean sharedValue;
+    private char[] textChars;
+    private int textStart;
+    private int textLength;
+    private String text;
+    private char[] scratch = new char[64];
+
+    private NumberType numberType;
+    private long longValue;
+    private BigInteger bigValue;
+    private double doubleValue;
+    private boolean doubleParsed;
+
+    CollectionJsonParser(InputStream stream) {
+        this(null, stream);
+    }
+
+    CollectionJsonParser(Reader reader) {
+        this(reader, null);
+    }
+
+    private CollectionJsonParser(Reader reader, InputStream stream) {
+        super(Feature.collectDefaults());
+        this.reader = reader;
+        this.stream = stream;
+        this.buffers = CodecBuffers.acquire();
+        this.buffer = buffers.chars;
+        this.strings = buffers.strings;
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException {
+        if (closed) {
+            return null;
+        }
+        if (_currToken == JsonToken.FIELD_NAME) {
+            int c = skipWhitespace();
+            if (c == -1) {
+                _reportInvalidEOF(": expected a value for \"" + name + "\"");
+            }
+            markToken();
+            return _currToken = readValue(c);
+        }
+        int c = skipWhitespace();
+        if (c == -1) {
+            close();
+            _handleEOF();
+            return _currToken = null;
+        }
+        markToken();
+        if (c == ']' || c == '}') {
+            return _currToken = closeScope(c);
+        }
+        if (context.expectComma()) {
+            if (c != ',') {
+                _reportUnexpectedChar(c, "was expecting comma to separate " + context.getTypeDesc() + " entries");
+            }
+            position++;
+            c = skipWhitespace();
+            if (c == -1) {
+                _reportInvalidEOF();
+            }
+            markToken();
+        }
+        if (context.inObject()) {
+            readName(c);
+            return _currToken = JsonToken.FIELD_NAME;
+        }
+        return _currToken = readValue(c);
+    }
+
+    private JsonToken closeScope(int c) throws IOException {
+        if (c == ']' ? !context.inArray() : !context.inObject()) {
+            _reportUnexpectedChar(c, "expected close marker for " + context.getTypeDesc());
+        }
+        position++;
+        context = context.getParent();
+        return c == ']' ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+    }
+
+    private void readName(int c) throws IOException {
+        if (c != '"') {
+            _reportUnexpectedChar(c, "was expecting double-quote to start field name");
+        }
+        position++;
+        scanString();
+        name = sharedName();
+        context.setCurrentName(name);
+        c = skipWhitespace();
+        if (c == -1) {
+            _reportInvalidEOF(": was expecting a colon to separate field name and value");
+        }
+        if (c != ':') {
+            _reportUnexpectedChar(c, "was expecting a colon to separate field name and value");
+        }
+        position++;
+    }
+
+    private JsonToken readValue(int c) throws IOException {
+        switch (c) {
+            case '"':
+                position++;
+                scanString();
+                text = sharedValue && _currToken == JsonToken.FIELD_NAME ? shared(textChars, textStart, textLength) : null;
+                return JsonToken.VALUE_STRING;
+            case '[':
+                position++;
+                context = context.createChildArrayContext(tokenLine, column());
+                return JsonToken.START_ARRAY;
+            case '{':
+                position++;
+                context = context.createChildObjectContext(tokenLine, column());
+                return JsonToken.START_OBJECT;
+            case 't':
+                readLiteral("true");
+                return JsonToken.VALUE_TRUE;
+            case 'f':
+                readLiteral("false");
+                return JsonToken.VALUE_FALSE;
+            case 'n':
+                readLiteral("null");
+                return JsonToken.VALUE_NULL;
+            default:
+                if (c == '-' || c >= '0' && c <= '9') {
+                    return readNumber();
+                }
+                _reportUnexpectedChar(c, "expected a valid value (number, String, array, object, 'true', 'false' or 'null')");
+                return null;
+        }
+    }
+
+    /**
+     * Scans the string after the opening quote. Its text is left in the buffer, or in the scratch buffer.
+     */
+    private void scanString() throws IOException {
+        char[] chars = buffer;
+        int end = limit;
+        int start = position;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c == '"') {
+                textChars = chars;
+                textStart = start;
+                textLength = i - start;
+                position = i + 1;
+                return;
+            }
+            if (c == '\\' || c < 0x20) {
+                break;
+            }
+        }
+        scanStringSlowly();
+    }
+
+    private void scanStringSlowly() throws IOException {
+        int length = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                _reportInvalidEOF(": was expecting closing quote for a string value");
+            }
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == '"' || c == '\\' || c < 0x20) {
+                    break;
+                }
+                position++;
+            }
+            length = appendScratch(length, buffer, start, position - start);
+            if (position == limit) {
+                continue;
+            }
+            char c = buffer[position++];
+            if (c == '"') {
+                break;
+            }
+            if (c < 0x20) {
+                _throwUnquotedSpace(c, "string value");
+            }
+            length = appendScratch(length, readEscape());
+        }
+        textChars = scratch;
+        textStart = 0;
+        textLength = length;
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = read();
+                    int hex = digit >= 0 && digit < 0x80 ? Character.digit((char) digit, 16) : -1;
+                    if (hex == -1) {
+                        _reportUnexpectedChar(digit, "expected a hex-digit for character escape sequence");
+                    }
+                    value = value << 4 | hex;
+                }
+                return (char) value;
+            case -1:
+                _reportInvalidEOF(" in character escape sequence");
+                return 0;
+            default:
+                _reportError("Unrecognized character escape " + _getCharDesc(c));
+                return 0;
+        }
+    }
+
+    /**
+     * Reads a number which ends within the buffer in place, or else {@link #readNumberSlowly()}.
+     */
+    private JsonToken readNumber() throws IOException {
+        char[] chars = buffer;
+        int end = limit;
+        int i = position;
+        boolean negative = chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+        int integerStart = i;
+        long value = 0;
+        while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+            value = value * 10 + (chars[i] - '0');
+            i++;
+        }
+        int integerLength = i - integerStart;
+        if (i == end || integerLength == 0 || integerLength > 18 || integerLength > 1 && chars[integerStart] == '0') {
+            return readNumberSlowly();
+        }
+        boolean integral = true;
+        if (chars[i] == '.') {
+            integral = false;
+            int digits = ++i;
+            while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+                i++;
+            }
+            if (i == end || i == digits) {
+                return readNumberSlowly();
+            }
+        }
+        if (chars[i] == 'e' || chars[i] == 'E') {
+            integral = false;
+            i++;
+            if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+                i++;
+            }
+            int digits = i;
+            while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+                i++;
+            }
+            if (i == end || i == digits) {
+                return readNumberSlowly();
+            }
+        }
+        textChars = chars;
+        textStart = position;
+        textLength = i - position;
+        position = i;
+        return number(integral, integerLength, negative ? -value : value);
+    }
+
+    private JsonToken readNumberSlowly() throws IOException {
+        int length = 0;
+        int c = peek();
+        boolean negative = c == '-';
+        if (negative) {
+            length = appendScratch(length, '-');
+            position++;
+            c = peek();
+        }
+        int integerStart = length;
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            length = appendScratch(length, (char) c);
+            value = value * 10 + (c - '0');
+            position++;
+            c = peek();
+        }
+        int integerLength = length - integerStart;
+        if (integerLength == 0) {
+            _reportUnexpectedChar(c, "expected digit (0-9) to follow minus sign, for valid numeric value");
+        }
+        if (integerLength > 1 && scratch[integerStart] == '0') {
+            _reportError("Invalid numeric value: Leading zeroes not allowed");
+        }
+        boolean integral = true;
+        if (c == '.') {
+            integral = false;
+            length = appendScratch(length, '.');
+            position++;
+            c = peek();
+            int digits = length;
+            while (c >= '0' && c <= '9') {
+                length = appendScratch(length, (char) c);
+                position++;
+                c = peek();
+            }
+            if (length == digits) {
+                _reportUnexpectedChar(c, "Decimal point not followed by a digit");
+            }
+        }
+        if (c == 'e' || c == 'E') {
+            integral = false;
+            length = appendScratch(length, (char) c);
+            position++;
+            c = peek();
+            if (c == '-' || c == '+') {
+                length = appendScratch(length, (char) c);
+                position++;
+                c = peek();
+            }
+            int digits = length;
+            while (c >= '0' && c <= '9') {
+                length = appendScratch(length, (char) c);
+                position++;
+                c = peek();
+            }
+            if (length == digits) {
+                _reportUnexpectedChar(c, "Exponent indicator not followed by a digit");
+            }
+        }
+        textChars = scratch;
+        textStart = 0;
+        textLength = length;
+        return number(integral, integerLength, negative ? -value : value);
+    }
+
+    /**
+     * Types the number whose text was just read. The value is only used for integers of at most 18 digits.
+     */
+    private JsonToken number(boolean integral, int integerLength, long value) {
+        text = null;
+        bigValue = null;
+        doubleParsed = false;
+        if (!integral) {
+            numberType = NumberType.DOUBLE;
+            return JsonToken.VALUE_NUMBER_FLOAT;
+        }
+        if (integerLength <= 18) {
+            longValue = value;
+            numberType = value == (int) value ? NumberType.INT : NumberType.LONG;
+        }
+        else {
+            bigValue = new BigInteger(new String(textChars, textStart, textLength));
+            if (bigValue.bitLength() <= 63) {
+                longValue = bigValue.longValue();
+                numberType = NumberType.LONG;
+            }
+            else {
+                numberType = NumberType.BIG_INTEGER;
+            }
+        }
+        return JsonToken.VALUE_NUMBER_INT;
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        int length = literal.length();
+        if (position + length < limit) {
+            for (int i = 0; i < length; i++) {
+                if (buffer[position + i] != literal.charAt(i)) {
+                    _reportError("Unrecognized token: was expecting '" + literal + "'");
+                }
+            }
+            position += length;
+        }
+        else {
+            for (int i = 0; i < length; i++) {
+                if (read() != literal.charAt(i)) {
+                    _reportError("Unrecognized token: was expecting '" + literal + "'");
+                }
+            }
+        }
+        int c = peek();
+        if (c != -1 && Character.isJavaIdentifierPart((char) c)) {
+            _reportError("Unrecognized token '" + literal + (char) c + "': was expecting '" + literal + "'");
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[position];
+            if (c > ' ') {
+                return c;
+            }
+            if (c == '\n') {
+                line++;
+                lineStart = processed + position + 1;
+            }
+            else if (c != ' ' && c != '\t' && c != '\r') {
+                _throwInvalidSpace(c);
+            }
+            position++;
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Reads more input into the buffer, dropping what is in it.
+     *
+     * @return false at the end of the input.
+     */
+    private boolean fill() throws IOException {
+        processed += limit;
+        position = 0;
+        limit = 0;
+        if (closed) {
+            return false;
+        }
+        if (reader != null) {
+            int count;
+            do {
+                count = reader.read(buffer, 0, buffer.length);
+            } while (count == 0);
+            if (count == -1) {
+                return false;
+            }
+            limit = count;
+        }
+        else if (!decode()) {
+            return false;
+        }
+        if (processed == 0 && buffer[0] == '\uFEFF') {
+            position = 1;
+            if (limit == 1) {
+                return fill();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the next UTF-8 bytes into the buffer. A sequence split by the end of a read is kept for the next one.
+     */
+    private boolean decode() throws IOException {
+        byte[] bytes = buffers.bytes;
+        char[] chars = buffer;
+        while (limit == 0) {
+            int count = stream.read(bytes, pendingBytes, bytes.length - pendingBytes);
+            if (count == -1) {
+                if (pendingBytes > 0) {
+                    _reportInvalidEOF(" in a UTF-8 sequence");
+                }
+                return false;
+            }
+            int end = pendingBytes + count;
+            int i = 0;
+            int out = 0;
+            while (i < end) {
+                int start = i;
+                while (i < end && bytes[i] >= 0) {
+                    i++;
+                }
+                for (int j = start; j < i; j++) {
+                    chars[out++] = (char) bytes[j];
+                }
+                if (i == end) {
+                    break;
+                }
+                int length = sequenceLength(bytes[i]);
+                if (i + length > end) {
+                    break;
+                }
+                out = decodeSequence(bytes, i, length, chars, out);
+                i += length;
+            }
+            pendingBytes = end - i;
+            System.arraycopy(bytes, i, bytes, 0, pendingBytes);
+            limit = out;
+        }
+        return true;
+    }
+
+    private int sequenceLength(int b) throws JsonParseException {
+        int length = (b & 0xe0) == 0xc0 ? 2 : (b & 0xf0) == 0xe0 ? 3 : (b & 0xf8) == 0xf0 ? 4 : 0;
+        if (length == 0) {
+            _reportError("Invalid UTF-8 start byte 0x" + Integer.toHexString(b & 0xff));
+        }
+        return length;
+    }
+
+    private int decodeSequence(byte[] bytes, int start, int length, char[] chars, int out) throws JsonParseException {
+        int code = bytes[start] & (0x7f >> length);
+        for (int j = 1; j < length; j++) {
+            int next = bytes[start + j];
+            if ((next & 0xc0) != 0x80) {
+                _reportError("Invalid UTF-8 middle byte 0x" + Integer.toHexString(next & 0xff));
+            }
+            code = code << 6 | next & 0x3f;
+        }
+        if (length == 4) {
+            code -= 0x10000;
+            chars[out++] = (char) (0xd800 | code >> 10);
+            chars[out++] = (char) (0xdc00 | code & 0x3ff);
+        }
+        else {
+            chars[out++] = (char) code;
+        }
+        return out;
+    }
+
+    private int appendScratch(int length, char c) {
+        if (length == scratch.length) {
+            growScratch(length + 1);
+        }
+        scratch[length] = c;
+        return length + 1;
+    }
+
+    private int appendScratch(int length, char[] chars, int start, int count) {
+        if (length + count > scratch.length) {
+            growScratch(length + count);
+        }
+        System.arraycopy(chars, start, scratch, length, count);
+        return length + count;
+    }
+
+    private void growScratch(int minimum) {
+        char[] grown = new char[Math.max(minimum, scratch.length * 2)];
+        System.arraycopy(scratch, 0, grown, 0, scratch.length);
+        scratch = grown;
+    }
+
+    private String sharedName() {
+        Key[] keys = textLength < KEYS_BY_LENGTH.length ? KEYS_BY_LENGTH[textLength] : null;
+        if (keys != null) {
+            for (Key key : keys) {
+                if (key.matches(textChars, textStart)) {
+                    sharedValue = key.sharesValues;
+                    return key.name;
+                }
+            }
+        }
+        sharedValue = false;
+        return shared(textChars, textStart, textLength);
+    }
+
+    private String shared(char[] chars, int start, int length) {
+        if (length > MAX_SHARED_LENGTH) {
+            return new String(chars, start, length);
+        }
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ hash >>> 16) & (strings.length - 1);
+        String value = strings[slot];
+        if (value == null || value.hashCode() != hash || !matches(value, chars, start, length)) {
+            value = new String(chars, start, length);
+            strings[slot] = value;
+        }
+        return value;
+    }
+
+    private static boolean matches(String value, char[] chars, int start, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void markToken() {
+        tokenOffset = processed + position;
+        tokenLine = line;
+        tokenLineStart = lineStart;
+    }
+
+    private int column() {
+        return (int) (tokenOffset - tokenLineStart) + 1;
+    }
+
+    @Override
+    protected void _handleEOF() throws JsonParseException {
+        if (!context.inRoot()) {
+            _reportInvalidEOF(": expected close marker for " + context.getTypeDesc());
+        }
+    }
+
+    @Override
+    public String getCurrentName() {
+        if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+            return context.getParent().getCurrentName();
+        }
+        return context.getCurrentName();
+    }
+
+    @Override
+    public void overrideCurrentName(String name) {
+        JsonReadContext named = _currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY ? context.getParent() : context;
+        named.setCurrentName(name);
+        if (_currToken == JsonToken.FIELD_NAME) {
+            this.name = name;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (isEnabled(Feature.AUTO_CLOSE_SOURCE)) {
+                if (reader != null) {
+                    reader.close();
+                }
+                else {
+                    stream.close();
+                }
+            }
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public JsonStreamContext getParsingContext() {
+        return context;
+    }
+
+    @Override
+    public JsonLocation getTokenLocation() {
+        return new JsonLocation(null, -1L, tokenOffset, tokenLine, column());
+    }
+
+    @Override
+    public JsonLocation getCurrentLocation() {
+        long offset = processed + position;
+        return new JsonLocation(null, -1L, offset, line, (int) (offset - lineStart) + 1);
+    }
+
+    @Override
+    public ObjectCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public void setCodec(ObjectCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public String getText() {
+        if (_currToken == null) {
+            return null;
+        }
+        switch (_currToken) {
+            case FIELD_NAME:
+                return name;
+            case VALUE_STRING:
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                if (text == null) {
+                    text = new String(textChars, textStart, textLength);
+                }
+                return text;
+            default:
+                return _currToken.asString();
+        }
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        if (_currToken == null) {
+            return null;
+        }
+        switch (_currToken) {
+            case FIELD_NAME:
+                return name.toCharArray();
+            case VALUE_STRING:
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return textChars;
+            default:
+                return _currToken.asCharArray();
+        }
+    }
+
+    @Override
+    public int getTextLength() {
+        if (_currToken == null) {
+            return 0;
+        }
+        switch (_currToken) {
+            case FIELD_NAME:
+                return name.length();
+            case VALUE_STRING:
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return textLength;
+            default:
+                return _currToken.asCharArray().length;
+        }
+    }
+
+    @Override
+    public int getTextOffset() {
+        if (_currToken == JsonToken.VALUE_STRING || _currToken == JsonToken.VALUE_NUMBER_INT || _currToken == JsonToken.VALUE_NUMBER_FLOAT) {
+            return textStart;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean hasTextCharacters() {
+        return _currToken == JsonToken.VALUE_STRING;
+    }
+
+    @Override
+    public byte[] getBinaryValue(Base64Variant variant) throws IOException {
+        if (_currToken != JsonToken.VALUE_STRING) {
+            _reportError("Current token (" + _currToken + ") not VALUE_STRING, can not access as binary");
+        }
+        ByteArrayBuilder builder = new ByteArrayBuilder();
+        _decodeBase64(getText(), builder, variant);
+        return builder.toByteArray();
+    }
+
+    @Override
+    public Object getEmbeddedObject() {
+        return null;
+    }
+
+    @Override
+    public NumberType getNumberType() throws IOException {
+        checkNumber();
+        return numberType;
+    }
+
+    @Override
+    public Number getNumberValue() throws IOException {
+        checkNumber();
+        switch (numberType) {
+            case INT:
+                return (int) longValue;
+            case LONG:
+                return longValue;
+            case BIG_INTEGER:
+                return bigValue;
+            default:
+                return getDoubleValue();
+        }
+    }
+
+    @Override
+    public int getIntValue() throws IOException {
+        long value = getLongValue();
+        if (value != (int) value) {
+            _reportError("Numeric value (" + getText() + ") out of range of int");
+        }
+        return (int) value;
+    }
+
+    @Override
+    public long getLongValue() throws IOException {
+        checkNumber();
+        switch (numberType) {
+            case INT:
+            case LONG:
+                return longValue;
+            case BIG_INTEGER:
+                _reportError("Numeric value (" + getText() + ") out of range of long");
+                return 0;
+            default:
+                double value = getDoubleValue();
+                if (value < Long.MIN_VALUE || value > Long.MAX_VALUE) {
+                    _reportError("Numeric value (" + getText() + ") out of range of long");
+                }
+                return (long) value;
+        }
+    }
+
+    @Override
+    public BigInteger getBigIntegerValue() throws IOException {
+        checkNumber();
+        switch (numberType) {
+            case INT:
+            case LONG:
+                return BigInteger.valueOf(longValue);
+            case BIG_INTEGER:
+                return bigValue;
+            default:
+                return getDecimalValue().toBigInteger();
+        }
+    }
+
+    @Override
+    public float getFloatValue() throws IOException {
+        return (float) getDoubleValue();
+    }
+
+    @Override
+    public double getDoubleValue() throws IOException {
+        checkNumber();
+        switch (numberType) {
+            case INT:
+            case LONG:
+                return longValue;
+            case BIG_INTEGER:
+                return bigValue.doubleValue();
+            default:
+                if (!doubleParsed) {
+                    doubleValue = Double.parseDouble(getText());
+                    doubleParsed = true;
+                }
+                return doubleValue;
+        }
+    }
+
+    @Override
+    public BigDecimal getDecimalValue() throws IOException {
+        checkNumber();
+        switch (numberType) {
+            case INT:
+            case LONG:
+                return BigDecimal.valueOf(longValue);
+            case BIG_INTEGER:
+                return new BigDecimal(bigValue);
+            default:
+                return new BigDecimal(getText());
+        }
+    }
+
+    private void checkNumber() throws JsonParseException {
+        if (_currToken != JsonToken.VALUE_NUMBER_INT && _currToken != JsonToken.VALUE_NUMBER_FLOAT) {
+            _reportError("Current token (" + _currToken + ") not numeric, can not use numeric value accessors");
+        }
+    }
+
+    private static final class Key {
+        private final String name;
+        private final boolean sharesValues;
+
+        private Key(String name, boolean sharesValues) {
+            this.name = name;
+            this.sharesValues = sharesValues;
+        }
+
+        private boolean matches(char[] chars, int start) {
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.hamnaberg.funclite.Optional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A collection response with its static parts encoded up front.
+ * <p/>
+ * Every top-level field of a prototype collection other than its version, href and items is encoded once,
+ * when compiled, in the order of the prototype. This includes fields added by extensions.
+ * Every response then only encodes its href and items, which are streamed from an iterator.
+ * The output is the same as building the full collection and writing it.
+ * <p/>
+ * Thread-safe.
+ */
+public final class CollectionSkeleton {
+    private static final byte[] HEAD = ascii("{\"collection\":{\"version\":\"" + Version.ONE.getIdentifier() + "\"");
+    private static final byte[] HREF = ascii(",\"href\":\"");
+    private static final byte[] QUOTE = ascii("\"");
+    private static final byte[] COMMA = ascii(",");
+    private static final byte[] COLON = ascii(":");
+    private static final byte[] ITEMS = ascii(",\"items\":[");
+    private static final byte[] ITEMS_END = ascii("]");
+    private static final byte[] TAIL = ascii("}}");
+
+    private final Optional<URI> href;
+    private final byte[] beforeItems;
+    private final byte[] afterItems;
+
+    private CollectionSkeleton(Optional<URI> href, byte[] beforeItems, byte[] afterItems) {
+        this.href = href;
+        this.beforeItems = beforeItems;
+        this.afterItems = afterItems;
+    }
+
+    /**
+     * Encodes the static parts of the prototype. Its items are not used.
+     * <p/>
+     * The items of a response are written where the prototype has its items field.
+     * If it has none, they are written where {@link Collection#create} puts them: after the links.
+     */
+    public static CollectionSkeleton compile(Collection prototype) {
+        ObjectNode node = prototype.unwrap();
+        boolean hasItems = node.has("items");
+        ByteArrayOutputStream before = new ByteArrayOutputStream();
+        ByteArrayOutputStream after = new ByteArrayOutputStream();
+        ByteArrayOutputStream current = hasItems || node.has("links") ? before : after;
+        try {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                String name = field.getKey();
+                if ("items".equals(name)) {
+                    current = after;
+                }
+                else if (!"version".equals(name) && !"href".equals(name)) {
+                    encodeField(current, name, field.getValue(), prototype.forms());
+                    if (!hasItems && "links".equals(name)) {
+                        current = after;
+                    }
+                }
+            }
+            return new CollectionSkeleton(prototype.getHref(), before.toByteArray(), after.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode prototype", e);
+        }
+    }
+
+    /**
+     * Writes a response with the href of the prototype.
+     */
+    public void writeTo(OutputStream stream, Iterator<Item> items) throws IOException {
+        writeTo(stream, href, items);
+    }
+
+    public void writeTo(OutputStream stream, URI href, Iterable<Item> items) throws IOException {
+        writeTo(stream, Optional.fromNullable(href), items.iterator());
+    }
+
+    /**
+     * Writes a response as UTF-8, and flushes.
+     * Note: Does NOT close the stream.
+     *
+     * @param href  the href of this response, or none.
+     * @param items the items of this response, written as they are read.
+     */
+    public void writeTo(OutputStream stream, Optional<URI> href, Iterator<Item> items) throws IOException {
+        stream.write(HEAD);
+        if (href.isSome()) {
+            stream.write(HREF);
+            stream.write(JsonStringEncoder.getInstance().quoteAsUTF8(href.get().toString()));
+            stream.write(QUOTE);
+        }
+        stream.write(beforeItems);
+        if (items.hasNext()) {
+            stream.write(ITEMS);
+            JsonGenerator generator = JsonWriter.generator(stream);
+            generator.setRootValueSeparator(new SerializedString(","));
+            while (items.hasNext()) {
+                Item item = items.next();
+                JsonWriter.writeObject(generator, item.unwrap(), item.forms());
+            }
+            generator.close();
+            stream.write(ITEMS_END);
+        }
+        stream.write(afterItems);
+        stream.write(TAIL);
+        stream.flush();
+    }
+
+    private static void encodeField(OutputStream stream, String name, JsonNode value, EncodedForms forms) throws IOException {
+        stream.write(COMMA);
+        stream.write(QUOTE);
+        stream.write(JsonStringEncoder.getInstance().quoteAsUTF8(name));
+        stream.write(QUOTE);
+        stream.write(COLON);
+        JsonGenerator generator = JsonWriter.generator(stream);
+        JsonWriter.writeNode(generator, value, forms);
+        generator.close();
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+/**
+ * Callback based traversal of a {@link Collection}, {@link Item} or {@link Template}.
+ * <p/>
+ * The traversal reads the underlying json directly, so no model objects are created.
+ * Strings are handed over as they are stored; optional strings which are absent are passed as null.
+ * All methods do nothing by default, override the ones you need.
+ * <p/>
+ * Properties are reported as {@link #visitProperty(String, String, PropertyKind)},
+ * followed by zero or more value callbacks, followed by {@link #visitPropertyEnd()}.
+ * Values of object properties are each preceded by {@link #visitKey(String)}.
+ */
+public abstract class CollectionVisitor {
+    public enum PropertyKind {
+        /** No value; a template property. */
+        EMPTY,
+        VALUE,
+        ARRAY,
+        OBJECT
+    }
+
+    public void visitCollectionStart(String version, String href) {
+    }
+
+    public void visitCollectionEnd() {
+    }
+
+    public void visitLink(String href, String rel, String prompt, String name, String render) {
+    }
+
+    public void visitItemStart(String href) {
+    }
+
+    public void visitItemEnd() {
+    }
+
+    public void visitQueryStart(String href, String rel, String prompt, String name, boolean uriTemplate) {
+    }
+
+    public void visitQueryEnd() {
+    }
+
+    public void visitTemplateStart() {
+    }
+
+    public void visitTemplateEnd() {
+    }
+
+    public void visitError(String title, String code, String message) {
+    }
+
+    public void visitProperty(String name, String prompt, PropertyKind kind) {
+    }
+
+    public void visitPropertyEnd() {
+    }
+
+    public void visitKey(String key) {
+    }
+
+    public void visitString(String value) {
+    }
+
+    public void visitLong(long value) {
+    }
+
+    public void visitDouble(double value) {
+    }
+
+    public void visitBoolean(boolean value) {
+    }
+
+    public void visitNull() {
+    }
+}
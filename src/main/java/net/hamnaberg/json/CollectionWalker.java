@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.Map;
+
+import static net.hamnaberg.json.CollectionVisitor.PropertyKind;
+
+/**
+ * Drives a {@link CollectionVisitor} over the raw json of the model.
+ * Arrays are walked by index to avoid creating iterators.
+ */
+final class CollectionWalker {
+    private CollectionWalker() {
+    }
+
+    static void walkCollection(ObjectNode node, CollectionVisitor visitor) {
+        visitor.visitCollectionStart(Version.ONE.getIdentifier(), text(node, "href"));
+        walkLinks(node.get("links"), visitor);
+        JsonNode items = node.get("items");
+        if (items != null) {
+            for (int i = 0; i < items.size(); i++) {
+                walkItem(items.get(i), visitor);
+            }
+        }
+        JsonNode queries = node.get("queries");
+        if (queries != null) {
+            for (int i = 0; i < queries.size(); i++) {
+                walkQuery(queries.get(i), visitor);
+            }
+        }
+        JsonNode template = node.get("template");
+        if (template != null) {
+            walkTemplate(template, visitor);
+        }
+        JsonNode error = node.get("error");
+        if (error != null) {
+            visitor.visitError(text(error, "title"), text(error, "code"), text(error, "message"));
+        }
+        visitor.visitCollectionEnd();
+    }
+
+    static void walkItem(JsonNode node, CollectionVisitor visitor) {
+        visitor.visitItemStart(text(node, "href"));
+        walkData(node.get("data"), visitor);
+        walkLinks(node.get("links"), visitor);
+        visitor.visitItemEnd();
+    }
+
+    static void walkTemplate(JsonNode node, CollectionVisitor visitor) {
+        visitor.visitTemplateStart();
+        walkData(node.get("data"), visitor);
+        visitor.visitTemplateEnd();
+    }
+
+    private static void walkQuery(JsonNode node, CollectionVisitor visitor) {
+        visitor.visitQueryStart(
+                text(node, "href"),
+                text(node, "rel"),
+                text(node, "prompt"),
+                text(node, "name"),
+                "uri-template".equals(text(node, "encoding"))
+        );
+        walkData(node.get("data"), visitor);
+        visitor.visitQueryEnd();
+    }
+
+    private static void walkLinks(JsonNode links, CollectionVisitor visitor) {
+        if (links == null) {
+            return;
+        }
+        for (int i = 0; i < links.size(); i++) {
+            JsonNode link = links.get(i);
+            visitor.visitLink(text(link, "href"), text(link, "rel"), text(link, "prompt"), text(link, "name"), text(link, "render"));
+        }
+    }
+
+    private static void walkData(JsonNode data, CollectionVisitor visitor) {
+        if (data == null) {
+            return;
+        }
+        for (int i = 0; i < data.size(); i++) {
+            walkProperty(data.get(i), visitor);
+        }
+    }
+
+    private static void walkProperty(JsonNode property, CollectionVisitor visitor) {
+        String name = text(property, "name");
+        String prompt = text(property, "prompt");
+        JsonNode value = property.get("value");
+        JsonNode array = property.get("array");
+        JsonNode object = property.get("object");
+        if (value != null) {
+            visitor.visitProperty(name, prompt, PropertyKind.VALUE);
+            walkValue(value, visitor);
+        }
+        else if (array != null && array.isArray()) {
+            visitor.visitProperty(name, prompt, PropertyKind.ARRAY);
+            for (int i = 0; i < array.size(); i++) {
+                walkValue(array.get(i), visitor);
+            }
+        }
+        else if (object != null && object.isObject()) {
+            visitor.visitProperty(name, prompt, PropertyKind.OBJECT);
+            Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                visitor.visitKey(field.getKey());
+                walkValue(field.getValue(), visitor);
+            }
+        }
+        else {
+            visitor.visitProperty(name, prompt, PropertyKind.EMPTY);
+        }
+        visitor.visitPropertyEnd();
+    }
+
+    private static void walkValue(JsonNode value, CollectionVisitor visitor) {
+        if (value.isTextual()) {
+            visitor.visitString(value.textValue());
+        }
+        else if (value.isBoolean()) {
+            visitor.visitBoolean(value.booleanValue());
+        }
+        else if (value.isIntegralNumber()) {
+            if (value.canConvertToLong()) {
+                visitor.visitLong(value.longValue());
+            }
+            else {
+                visitor.visitDouble(value.doubleValue());
+            }
+        }
+        else if (value.isBigDecimal()) {
+            BigDecimal decimal = value.decimalValue();
+            if (decimal.scale() <= 0 && value.canConvertToLong()) {
+                visitor.visitLong(decimal.longValue());
+            }
+            else {
+                visitor.visitDouble(decimal.doubleValue());
+            }
+        }
+        else if (value.isNumber()) {
+            visitor.visitDouble(value.doubleValue());
+        }
+        else if (value.isNull()) {
+            visitor.visitNull();
+        }
+        else {
+            throw new IllegalArgumentException("Illegal value " + value);
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.hamnaberg.json.io.CompressingOutputStream;
+import net.hamnaberg.json.io.Compression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes a vnd.collection+json document incrementally.
+ * <p/>
+ * The envelope (version, href, links, queries, template, error) is written first,
+ * followed by the items, which are written as they are handed over.
+ * Nothing is buffered beyond the generator, so memory use does not depend on the number of items.
+ * <pre>
+ * CollectionWriter writer = CollectionWriter.create(stream);
+ * try {
+ *     writer.start(Collection.builder(href).addLink(next).build());
+ *     writer.writeItems(rows);
+ *     writer.finish();
+ * } finally {
+ *     writer.close();
+ * }
+ * </pre>
+ * Only {@link #finish()} completes the document. If writing fails part way, {@link #close()} leaves it incomplete,
+ * so a truncated response can not be mistaken for a complete one.
+ * Note: Does NOT close the underlying stream. Not thread-safe.
+ */
+public final class CollectionWriter implements Closeable {
+    private enum State {
+        NEW, ITEMS, DONE, CLOSED
+    }
+
+    private final JsonGenerator generator;
+    private final WriteOptions options;
+    private final DataFormat format;
+    private final CompressingOutputStream compressed;
+    private final int syncFlushEvery;
+    private State state = State.NEW;
+    private String base;
+    private long count;
+
+    private CollectionWriter(JsonGenerator generator, WriteOptions options) {
+        this(generator, options, DataFormat.JSON);
+    }
+
+    private CollectionWriter(JsonGenerator generator, WriteOptions options, DataFormat format) {
+        this(generator, options, format, null, 0);
+    }
+
+    private CollectionWriter(JsonGenerator generator, WriteOptions options, DataFormat format, CompressingOutputStream compressed, int syncFlushEvery) {
+        this.generator = generator;
+        this.options = options;
+        this.format = format;
+        this.compressed = compressed;
+        this.syncFlushEvery = syncFlushEvery;
+    }
+
+    /**
+     * Writes UTF-8 encoded json to the stream.
+     */
+    public static CollectionWriter create(OutputStream stream) throws IOException {
+        return create(stream, WriteOptions.DEFAULT);
+    }
+
+    /**
+     * Writes UTF-8 encoded json to the stream, with the items written as the options say.
+     */
+    public static CollectionWriter create(OutputStream stream, WriteOptions options) throws IOException {
+        return new CollectionWriter(JsonWriter.generator(stream, options.getCodec()), options);
+    }
+
+    /**
+     * Writes to the stream in the format, with the items written as the options say.
+     */
+    public static CollectionWriter create(OutputStream stream, WriteOptions options, DataFormat format) throws IOException {
+        return new CollectionWriter(JsonWriter.generator(stream, format, options.getCodec()), options, format);
+    }
+
+    /**
+     * Writes compressed UTF-8 encoded json to the stream.
+     * The output is sync-flushed every {@link Compression#syncFlushEvery(int) n} items, so clients can start reading.
+     * The compressor is given back when the writer is finished or closed.
+     */
+    public static CollectionWriter create(OutputStream stream, WriteOptions options, Compression compression) throws IOException {
+        CompressingOutputStream compressed = compression.compress(stream);
+        return new CollectionWriter(JsonWriter.generator(compressed, options.getCodec()), options, DataFormat.JSON, compressed, compression.getSyncFlushEvery());
+    }
+
+    public static CollectionWriter create(Writer writer) throws IOException {
+        return create(writer, WriteOptions.DEFAULT);
+    }
+
+    public static CollectionWriter create(Writer writer, WriteOptions options) throws IOException {
+        return new CollectionWriter(JsonWriter.generator(writer, options.getCodec()), options);
+    }
+
+    /**
+     * Writes the envelope of the collection and opens the items array, and flushes so the client gets the envelope
+     * before the first streamed item. Items already in the envelope are written first.
+     *
+     * @param envelope the collection to take everything but the streamed items from.
+     * @throws IllegalStateException if the writer is already started
+     */
+    public CollectionWriter start(Collection envelope) throws IOException {
+        if (state != State.NEW) {
+            throw new IllegalStateException("Collection is already started");
+        }
+        ObjectNode node = envelope.unwrap();
+        EncodedForms forms = forms(envelope.forms());
+        base = JsonWriter.relativeBase(options, node);
+        generator.writeStartObject();
+        JsonWriter.writeKey(generator, "collection");
+        generator.writeStartObject();
+        JsonWriter.writeKey(generator, "version");
+        generator.writeString(envelope.getVersion().getIdentifier());
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            if (!"version".equals(name) && !"items".equals(name)) {
+                JsonWriter.writeEnvelopeField(generator, name, field.getValue(), forms, base);
+            }
+        }
+        JsonWriter.writeKey(generator, "items");
+        generator.writeStartArray();
+        state = State.ITEMS;
+        JsonNode items = node.get("items");
+        if (items != null) {
+            for (int i = 0; i < items.size(); i++) {
+                JsonWriter.writeItem(generator, items.get(i), forms, options, base);
+            }
+        }
+        flush();
+        return this;
+    }
+
+    /**
+     * @throws IllegalStateException if the writer is not started, or already finished
+     */
+    public CollectionWriter writeItem(Item item) throws IOException {
+        if (state != State.ITEMS) {
+            throw new IllegalStateException(state == State.NEW ? "Collection is not started" : "Collection is finished");
+        }
+        JsonWriter.writeItem(generator, item.unwrap(), forms(item.forms()), options, base);
+        if (syncFlushEvery > 0 && ++count % syncFlushEvery == 0) {
+            flush();
+        }
+        return this;
+    }
+
+    /**
+     * Copies already encoded items, separated by commas, through as they are.
+     *
+     * @throws IllegalStateException if the writer is not started, or does not write to a stream
+     */
+    void writeEncodedItems(InputStream items) throws IOException {
+        if (state != State.ITEMS) {
+            throw new IllegalStateException(state == State.NEW ? "Collection is not started" : "Collection is finished");
+        }
+        Object target = generator.getOutputTarget();
+        if (!(target instanceof OutputStream)) {
+            throw new IllegalStateException("Encoded items can only be written to a stream");
+        }
+        generator.writeRawValue("");
+        generator.flush();
+        OutputStream stream = (OutputStream) target;
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = items.read(buffer)) != -1) {
+            stream.write(buffer, 0, count);
+        }
+    }
+
+    /**
+     * Drains the iterator, writing every item.
+     */
+    public CollectionWriter writeItems(Iterator<Item> items) throws IOException {
+        while (items.hasNext()) {
+            writeItem(items.next());
+        }
+        return this;
+    }
+
+    public CollectionWriter writeItems(Iterable<Item> items) throws IOException {
+        return writeItems(items.iterator());
+    }
+
+    /**
+     * Writes a complete collection: the envelope, then the items from the iterator.
+     */
+    public void write(Collection envelope, Iterator<Item> items) throws IOException {
+        start(envelope);
+        writeItems(items);
+        finish();
+    }
+
+    /**
+     * Flushes what is written so far. Compressed output is sync-flushed.
+     */
+    public void flush() throws IOException {
+        generator.flush();
+        if (compressed != null) {
+            compressed.syncFlush();
+        }
+    }
+
+    /**
+     * Closes the items array and the document, and flushes.
+     *
+     * @throws IllegalStateException if the writer is not started
+     */
+    public void finish() throws IOException {
+        if (state == State.DONE) {
+            return;
+        }
+        if (state != State.ITEMS) {
+            throw new IllegalStateException(state == State.NEW ? "Collection is not started" : "Collection is closed");
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.flush();
+        state = State.DONE;
+        if (compressed != null) {
+            compressed.finish();
+        }
+    }
+
+    /**
+     * Releases the writer. Does NOT complete the document; use {@link #finish()} for that.
+     * The json of a document that is not finished is left as it is, and compressed output is not completed.
+     * The underlying stream is left open.
+     */
+    public void close() throws IOException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        boolean finished = state == State.DONE;
+        state = State.CLOSED;
+        if (finished) {
+            generator.close();
+        }
+        else if (compressed != null) {
+            compressed.abort();
+        }
+    }
+
+    /**
+     * @return the memoized forms, if they can be spliced into the format.
+     */
+    private EncodedForms forms(EncodedForms forms) {
+        return format.splicesEncodedForms() ? forms : null;
+    }
+}
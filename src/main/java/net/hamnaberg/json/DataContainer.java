@@ -1,18 +1,106 @@
 package net.hamnaberg.json;
 
 import net.hamnaberg.json.extension.Extended;
+import net.hamnaberg.json.extension.Extension;
 import net.hamnaberg.funclite.*;
+import net.hamnaberg.funclite.Optional;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.util.*;
 
-public abstract class DataContainer<A extends DataContainer> extends Extended<A> {
+public abstract class DataContainer<A extends DataContainer<A>> extends Extended<A> {
+    private final ObjectNode base;
+    private volatile PropertyVector properties;
+    private final EncodedForms forms;
+
     protected DataContainer(ObjectNode delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * @param forms the memoized forms of the node and its parts, or null.
+     */
+    DataContainer(ObjectNode delegate, EncodedForms forms) {
         super(delegate);
+        this.base = null;
+        this.forms = forms;
+    }
+
+    /**
+     * A container with the data of the vector, and the other fields of the base node.
+     * The json is not built until it is needed, so a chain of updates costs O(log n) per update.
+     */
+    DataContainer(ObjectNode base, PropertyVector properties, EncodedForms forms) {
+        this.base = base;
+        this.properties = properties;
+        this.forms = forms;
+    }
+
+    abstract A copy(ObjectNode value, EncodedForms forms);
+
+    abstract A copy(ObjectNode base, PropertyVector properties, EncodedForms forms);
+
+    /**
+     * A copy keeps the memoized forms of the links it shares with this.
+     */
+    @Override
+    protected A copy(ObjectNode value) {
+        return copy(value, EncodedForms.links(forms, value));
+    }
+
+    @Override
+    protected ObjectNode materialize() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.putAll(base);
+        if (properties.isEmpty()) {
+            node.remove("data");
+        }
+        else {
+            node.put("data", properties.toArrayNode());
+        }
+        return node;
+    }
+
+    /**
+     * The underlying node, not copied. Must not be modified.
+     */
+    ObjectNode unwrap() {
+        return delegate();
+    }
+
+    /**
+     * Encodes this once, and keeps the encoded json with the returned object.
+     * Writers splice the stored form in instead of encoding it again,
+     * also when this is written as part of a collection built from it.
+     * Copies such as {@link #add(Property)} are encoded as usual, but keep the memoized links they share.
+     *
+     * @return a memoized copy sharing the node of this, or this if it is already memoized.
+     */
+    @SuppressWarnings("unchecked")
+    public A memoize() {
+        if (isMemoized()) {
+            return (A) this;
+        }
+        ObjectNode node = delegate();
+        return copy(node, EncodedForms.with(forms, node));
+    }
+
+    public boolean isMemoized() {
+        return forms != null && forms.get(delegate()) != null;
+    }
+
+    /**
+     * @return the memoized forms of this and its links, or null.
+     */
+    EncodedForms forms() {
+        return forms;
     }
 
     public Data getData() {
-        return new Data(delegate.has("data") ? Property.fromData(delegate.get("data")) : Collections.<Property>emptyList());
+        return new Data(delegate().has("data") ? Property.fromData(delegate().get("data")) : Collections.<Property>emptyList());
     }
 
     public Map<String, Property> getDataAsMap() {
@@ -24,24 +112,25 @@ public abstract class DataContainer<A extends DataContainer> extends Extended<A>
     }
 
     public Optional<Property> propertyByName(final String name) {
+        PropertyVector vector = properties;
+        if (vector != null) {
+            JsonNode node = vector.first(name);
+            return node == null ? Optional.<Property>none() : Optional.some(new Property((ObjectNode) node));
+        }
         return getData().propertyByName(name);
     }
 
     /**
-     * Replaces all properties with the same name as the supplied property
+     * Replaces all properties with the same name as the supplied property.
+     * This is O(log n), and unchanged properties are shared with this instance.
      * @param property property to replace with
      * @return a new copy of the template, or this if nothing was modified.
      */
     @SuppressWarnings("unchecked")
     public A replace(Property property) {
-        Data data = getData();
-        Data replaced = data.replace(property);
-        if (!replaced.isEmpty()) {
-            ObjectNode copied = copyDelegate();
-            copied.put("data", Property.toArrayNode(replaced));
-            return copy(copied);
-        }
-        return (A)this;
+        PropertyVector current = properties();
+        PropertyVector replaced = current.replace(property.unwrap());
+        return replaced == current ? (A) this : copy(base(), replaced, EncodedForms.links(forms, base()));
     }
 
     /**
@@ -54,21 +143,21 @@ public abstract class DataContainer<A extends DataContainer> extends Extended<A>
     }
 
     /**
-     * Adds properties to the data.
+     * Adds properties to the data, in O(log n) per property.
      * @param toAdd the properties to add
      * @return a new copy of the template.
      */
     @SuppressWarnings("unchecked")
     public A addAll(Iterable<Property> toAdd) {
-        Data data = getData();
-        Data modified = data.addAll(toAdd);
-        if (data == modified) {
+        if (CollectionOps.isEmpty(toAdd)) {
             return (A)this;
         }
 
-        ObjectNode copied = copyDelegate();
-        copied.put("data", Property.toArrayNode(data));
-        return copy(copied);
+        PropertyVector vector = properties();
+        for (Property property : toAdd) {
+            vector = vector.add(property.unwrap());
+        }
+        return copy(base(), vector, EncodedForms.links(forms, base()));
     }
 
     /**
@@ -86,4 +175,150 @@ public abstract class DataContainer<A extends DataContainer> extends Extended<A>
         copied.put("data", Property.toArrayNode(props));
         return copy(copied);
     }
+
+    /**
+     * Applies many changes with a single copy.
+     *
+     * @param mutation the changes to apply to a transient copy of this.
+     * @return a new copy with all the changes.
+     */
+    public A withMutations(Mutation<Transient<A>> mutation) {
+        Transient<A> t = asTransient();
+        mutation.apply(t);
+        return t.persistent();
+    }
+
+    /**
+     * @return a mutable copy, which is frozen into a new instance with {@link Transient#persistent()}.
+     */
+    public Transient<A> asTransient() {
+        return new Transient<A>(this);
+    }
+
+    /**
+     * The persistent form of the data, built from the json on the first update.
+     */
+    private PropertyVector properties() {
+        PropertyVector vector = properties;
+        if (vector == null) {
+            vector = PropertyVector.of(delegate().get("data"));
+            properties = vector;
+        }
+        return vector;
+    }
+
+    private ObjectNode base() {
+        return base != null ? base : delegate();
+    }
+
+    /**
+     * Mutable, single-threaded view of a data container.
+     * Changes are applied in place, and the view can not be used after {@link #persistent()} is called.
+     */
+    public static final class Transient<A extends DataContainer<A>> {
+        private final DataContainer<A> source;
+        private ObjectNode node;
+        private ArrayNode data;
+
+        private Transient(DataContainer<A> source) {
+            this.source = source;
+            this.node = source.copyDelegate();
+        }
+
+        public Transient<A> add(Property property) {
+            data().add(property.unwrap());
+            return this;
+        }
+
+        public Transient<A> addAll(Iterable<Property> properties) {
+            ArrayNode arr = data();
+            for (Property property : properties) {
+                arr.add(property.unwrap());
+            }
+            return this;
+        }
+
+        /**
+         * Replaces all properties with the same name as the supplied property.
+         */
+        public Transient<A> replace(Property property) {
+            ArrayNode arr = data();
+            String name = property.getName();
+            for (int i = 0; i < arr.size(); i++) {
+                if (name.equals(arr.get(i).path("name").asText())) {
+                    arr.set(i, property.unwrap());
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Removes all properties with the given name.
+         */
+        public Transient<A> remove(String name) {
+            ArrayNode arr = data();
+            for (int i = arr.size() - 1; i >= 0; i--) {
+                if (name.equals(arr.get(i).path("name").asText())) {
+                    arr.remove(i);
+                }
+            }
+            return this;
+        }
+
+        public Transient<A> set(Iterable<Property> properties) {
+            data().removeAll();
+            return addAll(properties);
+        }
+
+        /**
+         * The extension writes into an empty node, as for {@link Extended#apply(Object, Extension)},
+         * and the written fields are then put into this. Nested nodes shared with the source are never given to it.
+         */
+        public <B> Transient<A> apply(B value, Extension<B> extension) {
+            ObjectNode n = checkNode();
+            ObjectNode written = JsonNodeFactory.instance.objectNode();
+            if (extension.applyTo(value, written)) {
+                n.putAll(written);
+                if (data != null && n.get("data") != data) {
+                    data = null;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return a new immutable instance with all changes applied.
+         */
+        public A persistent() {
+            ObjectNode frozen = checkNode();
+            if (data != null && data.size() == 0) {
+                frozen.remove("data");
+            }
+            node = null;
+            data = null;
+            return source.copy(frozen);
+        }
+
+        private ArrayNode data() {
+            ObjectNode n = checkNode();
+            if (data == null) {
+                data = JsonNodeFactory.instance.arrayNode();
+                JsonNode existing = n.get("data");
+                if (existing != null) {
+                    for (int i = 0; i < existing.size(); i++) {
+                        data.add(existing.get(i));
+                    }
+                }
+                n.put("data", data);
+            }
+            return data;
+        }
+
+        private ObjectNode checkNode() {
+            if (node == null) {
+                throw new IllegalStateException("Transient used after persistent()");
+            }
+            return node;
+        }
+    }
 }
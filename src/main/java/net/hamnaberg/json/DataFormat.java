@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import java.util.Locale;
+
+/**
+ * The encodings a collection can be written and parsed in, chosen by media type.
+ * <p/>
+ * {@link #SMILE} is binary json, for traffic between services.
+ * Repeated property names and short string values are written as back-references.
+ * It needs jackson-dataformat-smile on the classpath.
+ */
+public enum DataFormat {
+    JSON(MediaType.COLLECTION_JSON),
+    SMILE(MediaType.COLLECTION_SMILE);
+
+    private final String mediaType;
+
+    DataFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param mediaType a media type, parameters and case are ignored.
+     * @throws IllegalArgumentException if the media type is not supported
+     */
+    public static DataFormat fromMediaType(String mediaType) {
+        String type = mediaType;
+        int parameters = type.indexOf(';');
+        if (parameters != -1) {
+            type = type.substring(0, parameters);
+        }
+        type = type.trim().toLowerCase(Locale.ENGLISH);
+        for (DataFormat format : values()) {
+            if (format.mediaType.equals(type)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported media type " + mediaType);
+    }
+
+    /**
+     * The factory every reader and writer of this format uses, configured in one place.
+     * It is shared, so it must not be reconfigured.
+     */
+    public JsonFactory getFactory() {
+        return this == JSON ? JsonWriter.FACTORY : SmileFormat.FACTORY;
+    }
+
+    /**
+     * @return true if memoized json may be spliced into output of this format as it is.
+     */
+    boolean splicesEncodedForms() {
+        return this == JSON;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import net.hamnaberg.json.util.Charsets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Encoded json of the memoized nodes of a model object, keyed by node identity.
+ * <p/>
+ * Each model object carries the table for its own nodes, or null if none of them are memoized,
+ * so writing something without memoized parts does no lookups at all.
+ * Nodes owned by the model are never modified, so an encoding stays valid for as long as its node is shared.
+ * A table is never modified once built.
+ */
+final class EncodedForms {
+    private final Map<JsonNode, SerializableString> forms;
+
+    private EncodedForms(Map<JsonNode, SerializableString> forms) {
+        this.forms = forms;
+    }
+
+    /**
+     * @return the encoded form of the node, or null if it is not memoized.
+     */
+    SerializableString get(JsonNode node) {
+        return forms.get(node);
+    }
+
+    /**
+     * @return the table with the node encoded and added.
+     */
+    static EncodedForms with(EncodedForms forms, ObjectNode node) {
+        return new Builder().addAll(forms).add(node, encode(node)).build();
+    }
+
+    /**
+     * @return the forms of the node and its links, or null if there are none.
+     */
+    static EncodedForms subtree(EncodedForms forms, JsonNode node) {
+        if (forms == null) {
+            return null;
+        }
+        return new Builder().add(node, forms.get(node)).addLinks(forms, node).build();
+    }
+
+    /**
+     * @return the forms of the links of the node, or null if there are none.
+     */
+    static EncodedForms links(EncodedForms forms, JsonNode node) {
+        if (forms == null) {
+            return null;
+        }
+        return new Builder().addLinks(forms, node).build();
+    }
+
+    /**
+     * Encodes the node as the UTF-8 generator does, so a spliced form is byte for byte what it replaces.
+     */
+    static SerializableString encode(ObjectNode node) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try {
+            JsonGenerator generator = JsonWriter.generator(stream);
+            JsonWriter.writeObject(generator, node, null);
+            generator.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode node", e);
+        }
+        SerializedString form = new SerializedString(new String(stream.toByteArray(), Charsets.UTF_8));
+        form.asUnquotedUTF8();
+        return form;
+    }
+
+    /**
+     * Collects the forms of the parts of a new model object.
+     */
+    static final class Builder {
+        private Map<JsonNode, SerializableString> forms;
+
+        /**
+         * @param form the encoded node, or null if it is not memoized.
+         */
+        Builder add(JsonNode node, SerializableString form) {
+            if (form != null) {
+                map().put(node, form);
+            }
+            return this;
+        }
+
+        Builder addAll(EncodedForms table) {
+            if (table != null) {
+                map().putAll(table.forms);
+            }
+            return this;
+        }
+
+        Builder remove(JsonNode node) {
+            if (forms != null) {
+                forms.remove(node);
+            }
+            return this;
+        }
+
+        /**
+         * @return the forms collected so far of the node and its links, or null if there are none.
+         */
+        EncodedForms subtree(JsonNode node) {
+            return forms == null ? null : EncodedForms.subtree(new EncodedForms(forms), node);
+        }
+
+        /**
+         * @return the table, or null if nothing was added. The builder starts over empty.
+         */
+        EncodedForms build() {
+            Map<JsonNode, SerializableString> built = forms;
+            forms = null;
+            return built == null || built.isEmpty() ? null : new EncodedForms(built);
+        }
+
+        private Builder addLinks(EncodedForms table, JsonNode node) {
+            JsonNode links = node.get("links");
+            if (links != null) {
+                for (int i = 0; i < links.size(); i++) {
+                    add(links.get(i), table.get(links.get(i)));
+                }
+            }
+            return this;
+        }
+
+        private Map<JsonNode, SerializableString> map() {
+            if (forms == null) {
+                forms = new IdentityHashMap<JsonNode, SerializableString>();
+            }
+            return forms;
+        }
+    }
+}
@@ -37,6 +37,13 @@ public final class Error extends Extended<Error> {
         return new Error(value);
     }
 
+    /**
+     * The underlying node, not copied. Must not be modified.
+     */
+    ObjectNode unwrap() {
+        return delegate();
+    }
+
     public String getTitle() {
         return getAsString("title");
     }
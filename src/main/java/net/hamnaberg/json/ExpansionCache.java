@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of expanded uri templates, keyed by template and variable values,
+ * least recently used evicted first. Meant for hot queries, which are expanded with the same values over and over.
+ * <pre>
+ * URI uri = query.expand(properties, cache);
+ * </pre>
+ * Thread-safe.
+ */
+public final class ExpansionCache {
+    private final Map<Key, URI> entries;
+
+    public ExpansionCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive, was " + maxEntries);
+        }
+        this.entries = new LinkedHashMap<Key, URI>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, URI> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    URI get(String template, Object variables) {
+        synchronized (entries) {
+            return entries.get(new Key(template, variables));
+        }
+    }
+
+    void put(String template, Object variables, URI uri) {
+        synchronized (entries) {
+            entries.put(new Key(template, variables), uri);
+        }
+    }
+
+    private static final class Key {
+        private final String template;
+        private final Object variables;
+        private final int hash;
+
+        private Key(String template, Object variables) {
+            this.template = template;
+            this.variables = variables;
+            this.hash = 31 * template.hashCode() + variables.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && template.equals(other.template) && variables.equals(other.variables);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+/**
+ * String level relativizing of hrefs against a collection href.
+ * <p/>
+ * Only the common case is handled: an href under the directory of the base.
+ * Anything else is left absolute. The parser resolves them back, see {@code CollectionParser#resolvingRelativeHrefs()}.
+ */
+final class Hrefs {
+    private Hrefs() {
+    }
+
+    /**
+     * @return the base up to and including the last slash of its path, or null if it is not an absolute hierarchical href.
+     */
+    static String directoryOf(String base) {
+        if (base == null) {
+            return null;
+        }
+        int schemeEnd = base.indexOf("://");
+        if (schemeEnd <= 0 || !isScheme(base, schemeEnd)) {
+            return null;
+        }
+        int end = base.length();
+        int query = base.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = base.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        int slash = base.lastIndexOf('/', end - 1);
+        if (slash < schemeEnd + 3) {
+            return base.substring(0, end) + "/";
+        }
+        return base.substring(0, slash + 1);
+    }
+
+    /**
+     * @param directory a directory from {@link #directoryOf(String)}, or null.
+     * @return the href relative to the directory, or the href itself if that is not safe.
+     */
+    static String relativize(String directory, String href) {
+        if (directory == null || href == null || href.length() <= directory.length() || !href.startsWith(directory)) {
+            return href;
+        }
+        String relative = href.substring(directory.length());
+        char first = relative.charAt(0);
+        if (first == '/' || first == '?' || first == '#' || hasDotSegment(relative) || hasColonBeforeSlash(relative)) {
+            return href;
+        }
+        return relative;
+    }
+
+    /**
+     * A relative href with a colon before the first slash would be read as a scheme, or is not valid at all
+     * (RFC 3986 section 4.2). This also covers templates such as {@code x{?a:3}}.
+     */
+    private static boolean hasColonBeforeSlash(String relative) {
+        int colon = relative.indexOf(':');
+        if (colon < 0) {
+            return false;
+        }
+        int slash = relative.indexOf('/');
+        return slash < 0 || colon < slash;
+    }
+
+    private static boolean isScheme(String href, int end) {
+        if (!Character.isLetter(href.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < end; i++) {
+            char c = href.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '+' || c == '-' || c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasDotSegment(String relative) {
+        int end = relative.length();
+        for (int i = 0; i < relative.length(); i++) {
+            char c = relative.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        int start = 0;
+        while (start <= end) {
+            int slash = relative.indexOf('/', start);
+            int segmentEnd = slash < 0 || slash > end ? end : slash;
+            String segment = relative.substring(start, segmentEnd);
+            if (".".equals(segment) || "..".equals(segment)) {
+                return true;
+            }
+            start = segmentEnd + 1;
+        }
+        return false;
+    }
+}
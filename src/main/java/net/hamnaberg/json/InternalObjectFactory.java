@@ -11,6 +11,10 @@ public abstract class InternalObjectFactory {
         return new Error(node);
     }
 
+    public Item createItem(ObjectNode node) {
+        return new Item(node);
+    }
+
     public Link createLink(ObjectNode node) {
         return new Link(node);
     }
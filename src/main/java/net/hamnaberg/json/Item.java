@@ -36,6 +36,14 @@ public final class Item extends DataContainer<Item> {
         super(node);
     }
 
+    Item(ObjectNode delegate, EncodedForms forms) {
+        super(delegate, forms);
+    }
+
+    private Item(ObjectNode base, PropertyVector properties, EncodedForms forms) {
+        super(base, properties, forms);
+    }
+
     public static Item create(URI href, Iterable<Property> properties) {
         return create(fromNullable(href), properties, Collections.<Link>emptyList());
     }
@@ -50,20 +58,18 @@ public final class Item extends DataContainer<Item> {
             node.put("href", uri.toString());
         }
         if (!CollectionOps.isEmpty(properties)) {
-           ArrayNode arr = JsonNodeFactory.instance.arrayNode();
-            for (Property property : properties) {
-                arr.add(property.asJson());
-            }
-            node.put("data", arr);
+            node.put("data", Property.toArrayNode(properties));
         }
+        EncodedForms.Builder forms = new EncodedForms.Builder();
         if (!links.isEmpty()) {
             ArrayNode arr = JsonNodeFactory.instance.arrayNode();
             for (Link link : links) {
-                arr.add(link.asJson());
+                arr.add(link.unwrap());
+                forms.add(link.unwrap(), link.encoded());
             }
             node.put("links", arr);
         }
-        return new Item(node);
+        return new Item(node, forms.build());
     }
 
     public static Item create(Optional<URI> href, Iterable<Property> properties) {
@@ -79,11 +85,11 @@ public final class Item extends DataContainer<Item> {
     }
 
     public Optional<URI> getHref() {
-        return delegate.has("href") ? some(URI.create(delegate.get("href").asText())) : Optional.<URI>none();
+        return delegate().has("href") ? some(URI.create(delegate().get("href").asText())) : Optional.<URI>none();
     }
 
     public List<Link> getLinks() {
-        return delegate.has("links") ? Link.fromArray(delegate.get("links")) : Collections.<Link>emptyList();
+        return delegate().has("links") ? Link.fromArray(delegate().get("links"), forms()) : Collections.<Link>emptyList();
     }
 
     public Template toTemplate() {
@@ -149,8 +155,13 @@ public final class Item extends DataContainer<Item> {
     }
 
     @Override
-    protected Item copy(ObjectNode value) {
-        return new Item(value);
+    Item copy(ObjectNode value, EncodedForms forms) {
+        return new Item(value, forms);
+    }
+
+    @Override
+    Item copy(ObjectNode base, PropertyVector properties, EncodedForms forms) {
+        return new Item(base, properties, forms);
     }
 
     @Override
@@ -158,6 +169,13 @@ public final class Item extends DataContainer<Item> {
         return String.format("Item with href %s, properties %s and links %s", getHref().orNull(), getData(), getLinks());
     }
 
+    /**
+     * Walks this item without creating any model objects.
+     */
+    public void accept(CollectionVisitor visitor) {
+        CollectionWalker.walkItem(delegate(), visitor);
+    }
+
     public Collection toCollection() {
         return new Collection.Builder(getHref()).addItem(this).build();
     }
@@ -167,10 +185,13 @@ public final class Item extends DataContainer<Item> {
         return builder.addProperties(getData()).addLinks(getLinks());
     }
 
-    static List<Item> fromArray(JsonNode queries) {
+    /**
+     * @param forms the memoized forms of the owner, or null.
+     */
+    static List<Item> fromArray(JsonNode queries, EncodedForms forms) {
         List<Item> builder = CollectionOps.newArrayList();
         for (JsonNode jsonNode : queries) {
-            builder.add(new Item((ObjectNode) jsonNode));
+            builder.add(new Item((ObjectNode) jsonNode, EncodedForms.subtree(forms, jsonNode)));
         }
         return Collections.unmodifiableList(builder);
     }
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import net.hamnaberg.funclite.Optional;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, thread-safe lookup structures over the items of a {@link Collection}.
+ * <p/>
+ * The href and profile indexes are built when the index is created.
+ * Property indexes are built the first time they are asked for, and are then shared.
+ */
+public final class ItemIndex {
+    private final List<Item> items;
+    private final Map<URI, Item> byHref;
+    private final Map<URI, int[]> byProfile;
+    private final int[] withoutProfile;
+    private final ConcurrentMap<String, PropertyIndex> hashIndexes = new ConcurrentHashMap<String, PropertyIndex>();
+    private final ConcurrentMap<String, PropertyIndex> sortedIndexes = new ConcurrentHashMap<String, PropertyIndex>();
+
+    ItemIndex(List<Item> items) {
+        this.items = items;
+        Map<URI, Item> hrefs = new HashMap<URI, Item>(capacity(items.size()));
+        Map<URI, List<Integer>> profiles = new HashMap<URI, List<Integer>>();
+        List<Integer> unprofiled = new ArrayList<Integer>();
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            for (URI href : item.getHref()) {
+                if (!hrefs.containsKey(href)) {
+                    hrefs.put(href, item);
+                }
+            }
+            Optional<Link> profile = item.linkByRel("profile");
+            if (profile.isSome()) {
+                URI uri = profile.get().getHref();
+                List<Integer> positions = profiles.get(uri);
+                if (positions == null) {
+                    positions = new ArrayList<Integer>();
+                    profiles.put(uri, positions);
+                }
+                positions.add(i);
+            }
+            else {
+                unprofiled.add(i);
+            }
+        }
+        this.byHref = hrefs;
+        this.byProfile = new HashMap<URI, int[]>(capacity(profiles.size()));
+        for (Map.Entry<URI, List<Integer>> entry : profiles.entrySet()) {
+            byProfile.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        this.withoutProfile = toArray(unprofiled);
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public Optional<Item> byHref(URI href) {
+        return Optional.fromNullable(byHref.get(href));
+    }
+
+    /**
+     * @param profile the profile uri
+     * @return the items that have a link with rel "profile" pointing to the given uri.
+     */
+    public List<Item> byProfile(URI profile) {
+        int[] positions = byProfile.get(profile);
+        return positions == null ? Collections.<Item>emptyList() : select(positions, new int[0]);
+    }
+
+    /**
+     * Same semantics as {@link Collection#filterItemsByProfile(URI)};
+     * items without a profile link are included, and original order is kept.
+     */
+    List<Item> byProfileOrUnprofiled(URI profile) {
+        int[] positions = byProfile.get(profile);
+        return select(positions == null ? new int[0] : positions, withoutProfile);
+    }
+
+    /**
+     * Gets, or builds, a hash index over the value of the named property.
+     * Items where the property is missing or has no value are not indexed.
+     *
+     * @param name the property name
+     * @return a point lookup index
+     */
+    public PropertyIndex hashIndex(String name) {
+        PropertyIndex index = hashIndexes.get(name);
+        if (index == null) {
+            index = build(name, new HashMap<Value, List<Item>>(), false);
+            PropertyIndex existing = hashIndexes.putIfAbsent(name, index);
+            index = existing != null ? existing : index;
+        }
+        return index;
+    }
+
+    /**
+     * Gets, or builds, a sorted index over the value of the named property.
+     * Values are ordered null, booleans, numbers and then strings.
+     *
+     * @param name the property name
+     * @return an index supporting both point and range lookups.
+     */
+    public PropertyIndex sortedIndex(String name) {
+        PropertyIndex index = sortedIndexes.get(name);
+        if (index == null) {
+            index = build(name, new TreeMap<Value, List<Item>>(VALUE_ORDER), true);
+            PropertyIndex existing = sortedIndexes.putIfAbsent(name, index);
+            index = existing != null ? existing : index;
+        }
+        return index;
+    }
+
+    private PropertyIndex build(String name, Map<Value, List<Item>> map, boolean sorted) {
+        for (Item item : items) {
+            Optional<Property> property = item.propertyByName(name);
+            if (property.isSome()) {
+                for (Value value : property.get().getValue()) {
+                    Value key = normalize(value);
+                    List<Item> list = map.get(key);
+                    if (list == null) {
+                        list = new ArrayList<Item>(1);
+                        map.put(key, list);
+                    }
+                    list.add(item);
+                }
+            }
+        }
+        for (Map.Entry<Value, List<Item>> entry : map.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return new PropertyIndex(map, sorted);
+    }
+
+    private List<Item> select(int[] first, int[] second) {
+        List<Item> result = new ArrayList<Item>(first.length + second.length);
+        int i = 0, j = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && first[i] < second[j])) {
+                result.add(items.get(first[i++]));
+            }
+            else {
+                result.add(items.get(second[j++]));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static int capacity(int size) {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+
+    /**
+     * Numbers are stored as BigDecimal, where 1.0 and 1 are not equal.
+     * We strip the scale so that hash lookups behave like numeric comparison.
+     */
+    static Value normalize(Value value) {
+        if (value.isNumeric()) {
+            BigDecimal decimal = toBigDecimal(value.asNumber());
+            if (decimal.signum() == 0) {
+                return ValueFactory.createValue(BigDecimal.ZERO);
+            }
+            return ValueFactory.createValue(decimal.stripTrailingZeros());
+        }
+        return value;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+    }
+
+    private static int rank(Value value) {
+        if (value.isNull()) {
+            return 0;
+        }
+        if (value.isBoolean()) {
+            return 1;
+        }
+        if (value.isNumeric()) {
+            return 2;
+        }
+        return 3;
+    }
+
+    static final Comparator<Value> VALUE_ORDER = new Comparator<Value>() {
+        @Override
+        public int compare(Value a, Value b) {
+            int rank = rank(a) - rank(b);
+            if (rank != 0) {
+                return rank;
+            }
+            if (a.isBoolean()) {
+                return a.asBoolean() == b.asBoolean() ? 0 : (a.asBoolean() ? 1 : -1);
+            }
+            if (a.isNumeric()) {
+                return toBigDecimal(a.asNumber()).compareTo(toBigDecimal(b.asNumber()));
+            }
+            if (a.isString()) {
+                return a.asString().compareTo(b.asString());
+            }
+            return 0;
+        }
+    };
+
+    public static final class PropertyIndex {
+        private final Map<Value, List<Item>> map;
+        private final boolean sorted;
+
+        private PropertyIndex(Map<Value, List<Item>> map, boolean sorted) {
+            this.map = map;
+            this.sorted = sorted;
+        }
+
+        public boolean isSorted() {
+            return sorted;
+        }
+
+        public List<Item> get(Value value) {
+            List<Item> found = map.get(normalize(value));
+            return found == null ? Collections.<Item>emptyList() : found;
+        }
+
+        public List<Item> get(Object value) {
+            return get(ValueFactory.createValue(value));
+        }
+
+        public Set<Value> values() {
+            return Collections.unmodifiableSet(map.keySet());
+        }
+
+        /**
+         * Range lookup; only available on sorted indexes.
+         *
+         * @return the matching items, ordered by value.
+         */
+        public List<Item> range(Value from, boolean fromInclusive, Value to, boolean toInclusive) {
+            return flatten(navigable().subMap(normalize(from), fromInclusive, normalize(to), toInclusive));
+        }
+
+        public List<Item> lessThan(Value value, boolean inclusive) {
+            return flatten(navigable().headMap(normalize(value), inclusive));
+        }
+
+        public List<Item> greaterThan(Value value, boolean inclusive) {
+            return flatten(navigable().tailMap(normalize(value), inclusive));
+        }
+
+        private NavigableMap<Value, List<Item>> navigable() {
+            if (!sorted) {
+                throw new IllegalStateException("Range lookups require a sorted index");
+            }
+            return (NavigableMap<Value, List<Item>>) map;
+        }
+
+        private static List<Item> flatten(Map<Value, List<Item>> map) {
+            List<Item> result = new ArrayList<Item>();
+            for (List<Item> list : map.values()) {
+                result.addAll(list);
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
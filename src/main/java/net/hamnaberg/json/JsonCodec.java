@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Tokenizes and encodes the json text of documents.
+ * <p/>
+ * The parser and every writer go through a codec: {@link net.hamnaberg.json.parser.CollectionParser#usingCodec(JsonCodec)}
+ * for reading, and {@link WriteOptions.Builder#codec(JsonCodec)} for writing. The model is written straight to the
+ * generator, and cursors read straight from the parser, so a codec never sees a document tree.
+ * {@link #JACKSON} is the default.
+ * <p/>
+ * Only json text goes through a codec; Smile is always read and written by Jackson.
+ * Implementations must be thread-safe. The parsers and generators they create are not.
+ */
+public abstract class JsonCodec {
+    /**
+     * The Jackson streaming parser and generator.
+     */
+    public static final JsonCodec JACKSON = new JsonCodec() {
+        @Override
+        public JsonParser createParser(InputStream stream) throws IOException {
+            return JsonWriter.FACTORY.createParser(stream);
+        }
+
+        @Override
+        public JsonParser createParser(Reader reader) throws IOException {
+            return JsonWriter.FACTORY.createParser(reader);
+        }
+
+        @Override
+        public JsonGenerator createGenerator(OutputStream stream) throws IOException {
+            return JsonWriter.FACTORY.createGenerator(stream, JsonEncoding.UTF8);
+        }
+
+        @Override
+        public JsonGenerator createGenerator(Writer writer) throws IOException {
+            return JsonWriter.FACTORY.createGenerator(writer);
+        }
+
+        @Override
+        public String toString() {
+            return "JACKSON";
+        }
+    };
+
+    /**
+     * A tokenizer and encoder written for the vnd.collection+json grammar.
+     * The fixed keys are matched without creating strings, and repeated names, rels, prompts and renders
+     * are read as one string. The output is the same as {@link #JACKSON}'s.
+     */
+    public static final JsonCodec COLLECTION_JSON = new JsonCodec() {
+        @Override
+        public JsonParser createParser(InputStream stream) throws IOException {
+            return new CollectionJsonParser(stream);
+        }
+
+        @Override
+        public JsonParser createParser(Reader reader) throws IOException {
+            return new CollectionJsonParser(reader);
+        }
+
+        @Override
+        public JsonGenerator createGenerator(OutputStream stream) throws IOException {
+            return new CollectionJsonGenerator(stream);
+        }
+
+        @Override
+        public JsonGenerator createGenerator(Writer writer) throws IOException {
+            return new CollectionJsonGenerator(writer);
+        }
+
+        @Override
+        public String toString() {
+            return "COLLECTION_JSON";
+        }
+    };
+
+    /**
+     * A parser over UTF-8 encoded json. Closing the parser closes the stream.
+     */
+    public abstract JsonParser createParser(InputStream stream) throws IOException;
+
+    /**
+     * A parser over json text. Closing the parser closes the reader.
+     */
+    public abstract JsonParser createParser(Reader reader) throws IOException;
+
+    /**
+     * A generator writing UTF-8 encoded json to the stream.
+     * It must honour {@link JsonGenerator.Feature#AUTO_CLOSE_TARGET}, which the writers disable.
+     */
+    public abstract JsonGenerator createGenerator(OutputStream stream) throws IOException;
+
+    /**
+     * A generator writing json text to the writer.
+     * It must honour {@link JsonGenerator.Feature#AUTO_CLOSE_TARGET}, which the writers disable.
+     */
+    public abstract JsonGenerator createGenerator(Writer writer) throws IOException;
+}
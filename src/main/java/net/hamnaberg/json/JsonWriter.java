@@ -0,0 +1,762 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NumericNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import net.hamnaberg.json.io.ByteBufferAllocator;
+import net.hamnaberg.json.io.ByteBufferOutputStream;
+import net.hamnaberg.json.io.CompressingOutputStream;
+import net.hamnaberg.json.io.Compression;
+import net.hamnaberg.json.io.EncodedBuffers;
+import net.hamnaberg.json.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Serializes the model straight from the underlying nodes.
+ * <p/>
+ * Generators come from the {@link JsonCodec} of the write options, Jackson by default,
+ * and the fixed vnd.collection+json keys are encoded once.
+ * The output is the same as writing the tree with an ObjectMapper.
+ */
+final class JsonWriter {
+    static final ObjectMapper MAPPER = new ObjectMapper();
+    static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    private static final int PARALLEL_CHUNK_SIZE = 1024;
+    private static final SerializableString ITEM_SEPARATOR = new SerializedString(",");
+
+    /**
+     * The keys of the vnd.collection+json grammar.
+     */
+    static final String[] FIXED_KEYS = {
+            "collection", "version", "href", "links", "items", "queries", "template", "error",
+            "data", "name", "value", "array", "object", "prompt", "rel", "render",
+            "encoding", "title", "code", "message"};
+
+    private static final Map<String, SerializableString> KEYS = new HashMap<String, SerializableString>();
+
+    static {
+        for (String key : FIXED_KEYS) {
+            KEYS.put(key, new SerializedString(key));
+        }
+    }
+
+    private JsonWriter() {
+    }
+
+    static JsonGenerator generator(OutputStream stream) throws IOException {
+        return generator(stream, JsonCodec.JACKSON);
+    }
+
+    static JsonGenerator generator(OutputStream stream, JsonCodec codec) throws IOException {
+        JsonGenerator generator = codec.createGenerator(stream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    /**
+     * A generator for the format. Json is written with the codec.
+     */
+    static JsonGenerator generator(OutputStream stream, DataFormat format, JsonCodec codec) throws IOException {
+        if (format == DataFormat.JSON) {
+            return generator(stream, codec);
+        }
+        JsonGenerator generator = format.getFactory().createGenerator(stream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    static JsonGenerator generator(Writer writer) throws IOException {
+        return generator(writer, JsonCodec.JACKSON);
+    }
+
+    static JsonGenerator generator(Writer writer, JsonCodec codec) throws IOException {
+        JsonGenerator generator = codec.createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    /**
+     * Writes {"root": node} as UTF-8 and flushes. The stream is not closed.
+     */
+    static void write(String root, ObjectNode node, EncodedForms forms, OutputStream stream) throws IOException {
+        write(root, node, forms, stream, WriteOptions.DEFAULT);
+    }
+
+    static void write(String root, ObjectNode node, EncodedForms forms, OutputStream stream, WriteOptions options) throws IOException {
+        write(root, node, forms, generator(stream, options.getCodec()), options);
+    }
+
+    /**
+     * Writes {"root": node} as UTF-8 with the codec and flushes. The stream is not closed.
+     */
+    static void write(String root, ObjectNode node, EncodedForms forms, OutputStream stream, JsonCodec codec) throws IOException {
+        write(root, node, forms, generator(stream, codec), WriteOptions.DEFAULT);
+    }
+
+    /**
+     * Writes {"root": node} in the format and flushes. The stream is not closed.
+     */
+    static void write(String root, ObjectNode node, EncodedForms forms, OutputStream stream, WriteOptions options, DataFormat format) throws IOException {
+        write(root, node, format.splicesEncodedForms() ? forms : null, generator(stream, format, options.getCodec()), options);
+    }
+
+    /**
+     * Writes {"root": node} and flushes. The writer is not closed.
+     */
+    static void write(String root, ObjectNode node, EncodedForms forms, Writer writer) throws IOException {
+        write(root, node, forms, writer, WriteOptions.DEFAULT);
+    }
+
+    static void write(String root, ObjectNode node, EncodedForms forms, Writer writer, WriteOptions options) throws IOException {
+        write(root, node, forms, generator(writer, options.getCodec()), options);
+    }
+
+    /**
+     * Writes {"root": node} with the codec and flushes. The writer is not closed.
+     */
+    static void write(String root, ObjectNode node, EncodedForms forms, Writer writer, JsonCodec codec) throws IOException {
+        write(root, node, forms, generator(writer, codec), WriteOptions.DEFAULT);
+    }
+
+    /**
+     * Encodes {"root": node} as UTF-8 into buffers from the allocator.
+     */
+    static EncodedBuffers encode(String root, ObjectNode node, EncodedForms forms, ByteBufferAllocator allocator) throws IOException {
+        return encode(root, node, forms, allocator, null);
+    }
+
+    /**
+     * Encodes {"root": node} as UTF-8 into buffers from the allocator, compressed if compression is not null.
+     */
+    static EncodedBuffers encode(String root, ObjectNode node, EncodedForms forms, ByteBufferAllocator allocator, Compression compression) throws IOException {
+        ByteBufferOutputStream stream = new ByteBufferOutputStream(allocator);
+        boolean written = false;
+        try {
+            if (compression == null) {
+                write(root, node, forms, stream);
+            }
+            else {
+                write(root, node, forms, stream, compression);
+            }
+            written = true;
+            return stream.toBuffers();
+        } finally {
+            if (!written) {
+                stream.discard();
+            }
+        }
+    }
+
+    /**
+     * Writes {"root": node} as compressed UTF-8 and flushes. Does not close the stream.
+     */
+    static void write(String root, ObjectNode node, EncodedForms forms, OutputStream stream, Compression compression) throws IOException {
+        CompressingOutputStream compressed = compression.compress(stream);
+        boolean written = false;
+        try {
+            write(root, node, forms, compressed);
+            written = true;
+        } finally {
+            if (!written) {
+                compressed.abort();
+            }
+        }
+        compressed.finish();
+    }
+
+    /**
+     * Writes {"root": node} to the channel, staging it in pooled buffers.
+     */
+    static void write(String root, ObjectNode node, EncodedForms forms, WritableByteChannel channel) throws IOException {
+        EncodedBuffers buffers = encode(root, node, forms, ByteBufferAllocator.DEFAULT);
+        try {
+            buffers.writeTo(channel);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * Writes {"root": node} in canonical form and flushes. The stream is not closed.
+     *
+     * @see #writeCanonical(JsonGenerator, JsonNode)
+     */
+    static void writeCanonical(String root, ObjectNode node, OutputStream stream) throws IOException {
+        JsonGenerator generator = generator(stream);
+        generator.writeStartObject();
+        writeKey(generator, root);
+        writeCanonical(generator, node);
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    /**
+     * Writes a node in a deterministic form: object keys are sorted, and numbers are written
+     * as the shortest plain decimal of their value, so 1, 1.0 and 1.00 are all written as 1.
+     * Memoized forms are not used.
+     */
+    static void writeCanonical(JsonGenerator generator, JsonNode node) throws IOException {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                List<String> names = new ArrayList<String>(node.size());
+                Iterator<String> fieldNames = node.fieldNames();
+                while (fieldNames.hasNext()) {
+                    names.add(fieldNames.next());
+                }
+                Collections.sort(names);
+                generator.writeStartObject();
+                for (String name : names) {
+                    writeKey(generator, name);
+                    writeCanonical(generator, node.get(name));
+                }
+                generator.writeEndObject();
+                break;
+            case ARRAY:
+                generator.writeStartArray();
+                for (int i = 0; i < node.size(); i++) {
+                    writeCanonical(generator, node.get(i));
+                }
+                generator.writeEndArray();
+                break;
+            case NUMBER:
+                writeCanonicalNumber(generator, node);
+                break;
+            default:
+                writeNode(generator, node, null);
+        }
+    }
+
+    private static void writeCanonicalNumber(JsonGenerator generator, JsonNode node) throws IOException {
+        BigDecimal decimal;
+        switch (((NumericNode) node).numberType()) {
+            case INT:
+            case LONG:
+                generator.writeNumber(node.longValue());
+                return;
+            case BIG_INTEGER:
+                generator.writeNumber(node.bigIntegerValue());
+                return;
+            case FLOAT:
+            case DOUBLE:
+                double value = node.doubleValue();
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    generator.writeNumber(value);
+                    return;
+                }
+                decimal = new BigDecimal(node.isFloat() ? Float.toString(node.floatValue()) : Double.toString(value));
+                break;
+            default:
+                decimal = node.decimalValue();
+        }
+        if (decimal.signum() == 0) {
+            generator.writeNumber(0);
+            return;
+        }
+        decimal = decimal.stripTrailingZeros();
+        if (decimal.scale() <= 0) {
+            generator.writeNumber(decimal.toBigIntegerExact());
+        }
+        else {
+            generator.writeNumber(decimal.toPlainString());
+        }
+    }
+
+    /**
+     * Writes {"root": node} as UTF-8 and flushes, encoding the items in chunks on the executor.
+     * Chunks are written in order as they complete, with at most a few chunks per processor held in memory.
+     * The output is the same as {@link #write(String, ObjectNode, EncodedForms, OutputStream)}.
+     */
+    static void writeParallel(String root, ObjectNode node, EncodedForms forms, OutputStream stream, ExecutorService executor) throws IOException {
+        JsonNode items = node.get("items");
+        if (items == null || items.size() <= PARALLEL_CHUNK_SIZE) {
+            write(root, node, forms, stream);
+            return;
+        }
+        JsonGenerator generator = generator(stream);
+        generator.writeStartObject();
+        writeKey(generator, root);
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            writeKey(generator, field.getKey());
+            if (field.getValue() == items) {
+                generator.writeRawValue("");
+                generator.flush();
+                stream.write('[');
+                writeChunks(items, forms, stream, executor);
+                stream.write(']');
+            }
+            else {
+                writeNode(generator, field.getValue(), forms);
+            }
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private static void writeChunks(JsonNode items, EncodedForms forms, OutputStream stream, ExecutorService executor) throws IOException {
+        int window = Runtime.getRuntime().availableProcessors() * 2;
+        LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+        int next = 0;
+        boolean first = true;
+        try {
+            while (next < items.size() || !pending.isEmpty()) {
+                while (next < items.size() && pending.size() < window) {
+                    pending.add(executor.submit(new ChunkEncoder(items, forms, next, Math.min(items.size(), next + PARALLEL_CHUNK_SIZE))));
+                    next += PARALLEL_CHUNK_SIZE;
+                }
+                byte[] chunk = await(pending.removeFirst());
+                if (!first) {
+                    stream.write(',');
+                }
+                stream.write(chunk);
+                first = false;
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding items");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof java.lang.Error) {
+                throw (java.lang.Error) cause;
+            }
+            throw new IOException(cause.getMessage());
+        }
+    }
+
+    private static class ChunkEncoder implements Callable<byte[]> {
+        private final JsonNode items;
+        private final EncodedForms forms;
+        private final int from;
+        private final int to;
+
+        private ChunkEncoder(JsonNode items, EncodedForms forms, int from, int to) {
+            this.items = items;
+            this.forms = forms;
+            this.from = from;
+            this.to = to;
+        }
+
+        public byte[] call() throws IOException {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            JsonGenerator generator = generator(stream);
+            generator.setRootValueSeparator(ITEM_SEPARATOR);
+            for (int i = from; i < to; i++) {
+                writeObject(generator, items.get(i), forms);
+            }
+            generator.close();
+            return stream.toByteArray();
+        }
+    }
+
+    private static void write(String root, ObjectNode node, EncodedForms forms, JsonGenerator generator, WriteOptions options) throws IOException {
+        generator.writeStartObject();
+        writeKey(generator, root);
+        if (options.isDefault()) {
+            writeObject(generator, node, forms);
+        }
+        else {
+            writeCollection(generator, node, forms, options);
+        }
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private static void writeCollection(JsonGenerator generator, ObjectNode node, EncodedForms forms, WriteOptions options) throws IOException {
+        Map<String, String> hoisted = options.hoistsPrompts() ? hoistablePrompts(node) : Collections.<String, String>emptyMap();
+        String base = relativeBase(options, node);
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if ("items".equals(field.getKey())) {
+                writeKey(generator, field.getKey());
+                JsonNode items = field.getValue();
+                generator.writeStartArray();
+                for (int i = 0; i < items.size(); i++) {
+                    writeItem(generator, items.get(i), forms, options, hoisted, base);
+                }
+                generator.writeEndArray();
+            }
+            else if ("template".equals(field.getKey()) && !hoisted.isEmpty()) {
+                writeKey(generator, field.getKey());
+                writeTemplate(generator, field.getValue(), forms, hoisted);
+            }
+            else {
+                writeEnvelopeField(generator, field.getKey(), field.getValue(), forms, base);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * @return the directory hrefs are written relative to, or null if they are written as they are.
+     */
+    static String relativeBase(WriteOptions options, JsonNode collection) {
+        return options.writesRelativeHrefs() ? Hrefs.directoryOf(text(collection, "href")) : null;
+    }
+
+    /**
+     * Writes a field of the collection other than its items, with link and query hrefs relative to the base if given.
+     */
+    static void writeEnvelopeField(JsonGenerator generator, String name, JsonNode value, EncodedForms forms, String base) throws IOException {
+        writeKey(generator, name);
+        if (base != null && ("links".equals(name) || "queries".equals(name))) {
+            generator.writeStartArray();
+            for (int i = 0; i < value.size(); i++) {
+                writeWithHref(generator, value.get(i), base);
+            }
+            generator.writeEndArray();
+        }
+        else {
+            writeNode(generator, value, forms);
+        }
+    }
+
+    private static void writeWithHref(JsonGenerator generator, JsonNode node, String base) throws IOException {
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            writeKey(generator, field.getKey());
+            if ("href".equals(field.getKey()) && field.getValue().isTextual()) {
+                generator.writeString(Hrefs.relativize(base, field.getValue().textValue()));
+            }
+            else {
+                writeNode(generator, field.getValue(), null);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes an item as the options say.
+     *
+     * @param base the directory from {@link #relativeBase(WriteOptions, JsonNode)}, or null.
+     */
+    static void writeItem(JsonGenerator generator, JsonNode item, EncodedForms forms, WriteOptions options, String base) throws IOException {
+        writeItem(generator, item, forms, options, Collections.<String, String>emptyMap(), base);
+    }
+
+    private static void writeItem(JsonGenerator generator, JsonNode item, EncodedForms forms, WriteOptions options, Map<String, String> hoisted, String base) throws IOException {
+        if (options.isDefault()) {
+            writeObject(generator, item, forms);
+            return;
+        }
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = item.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            JsonNode value = field.getValue();
+            if (options.isCompact() && isEmptyArray(value)) {
+                continue;
+            }
+            writeKey(generator, name);
+            if ("href".equals(name) && base != null && value.isTextual()) {
+                generator.writeString(Hrefs.relativize(base, value.textValue()));
+            }
+            else if ("data".equals(name)) {
+                generator.writeStartArray();
+                for (int i = 0; i < value.size(); i++) {
+                    JsonNode property = value.get(i);
+                    if (options.includesField(text(property, "name"))) {
+                        writeProperty(generator, property, options, hoisted);
+                    }
+                }
+                generator.writeEndArray();
+            }
+            else if ("links".equals(name) && (options.filtersLinks() || base != null)) {
+                generator.writeStartArray();
+                for (int i = 0; i < value.size(); i++) {
+                    JsonNode link = value.get(i);
+                    if (!options.includesLink(text(link, "rel"))) {
+                        continue;
+                    }
+                    if (base != null) {
+                        writeWithHref(generator, link, base);
+                    }
+                    else {
+                        writeNode(generator, link, forms);
+                    }
+                }
+                generator.writeEndArray();
+            }
+            else {
+                writeNode(generator, value, forms);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeProperty(JsonGenerator generator, JsonNode property, WriteOptions options, Map<String, String> hoisted) throws IOException {
+        if (!options.isCompact() && hoisted.isEmpty()) {
+            writeNode(generator, property, null);
+            return;
+        }
+        String name = text(property, "name");
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = property.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if ("prompt".equals(field.getKey())) {
+                String prompt = value.asText();
+                if (prompt.equals(hoisted.get(name)) || options.isCompact() && isDefaultPrompt(name, prompt)) {
+                    continue;
+                }
+            }
+            else if (options.isCompact() && (value.isNull() || isEmptyArray(value))) {
+                continue;
+            }
+            writeKey(generator, field.getKey());
+            writeNode(generator, value, null);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the template, adding the hoisted prompts to the properties which have none.
+     */
+    private static void writeTemplate(JsonGenerator generator, JsonNode template, EncodedForms forms, Map<String, String> hoisted) throws IOException {
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = template.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            writeKey(generator, field.getKey());
+            if (!"data".equals(field.getKey())) {
+                writeNode(generator, field.getValue(), forms);
+                continue;
+            }
+            JsonNode data = field.getValue();
+            generator.writeStartArray();
+            for (int i = 0; i < data.size(); i++) {
+                JsonNode property = data.get(i);
+                String prompt = hoisted.get(text(property, "name"));
+                if (prompt == null || property.has("prompt")) {
+                    writeNode(generator, property, null);
+                    continue;
+                }
+                generator.writeStartObject();
+                Iterator<Map.Entry<String, JsonNode>> propertyFields = property.fields();
+                while (propertyFields.hasNext()) {
+                    Map.Entry<String, JsonNode> propertyField = propertyFields.next();
+                    writeKey(generator, propertyField.getKey());
+                    writeNode(generator, propertyField.getValue(), null);
+                    if ("name".equals(propertyField.getKey())) {
+                        writeKey(generator, "prompt");
+                        generator.writeString(prompt);
+                    }
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Finds the template properties whose prompt every item agrees on,
+     * and which the template either has no prompt for, or the same one.
+     */
+    private static Map<String, String> hoistablePrompts(JsonNode collection) {
+        JsonNode template = collection.get("template");
+        JsonNode items = collection.get("items");
+        if (template == null || template.get("data") == null || items == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> templatePrompts = new HashMap<String, String>();
+        JsonNode templateData = template.get("data");
+        for (int i = 0; i < templateData.size(); i++) {
+            templatePrompts.put(text(templateData.get(i), "name"), text(templateData.get(i), "prompt"));
+        }
+        Map<String, String> agreed = new HashMap<String, String>();
+        Set<String> conflicts = new HashSet<String>();
+        for (int i = 0; i < items.size(); i++) {
+            JsonNode data = items.get(i).get("data");
+            for (int j = 0; data != null && j < data.size(); j++) {
+                String name = text(data.get(j), "name");
+                String prompt = text(data.get(j), "prompt");
+                if (prompt == null || !templatePrompts.containsKey(name) || conflicts.contains(name)) {
+                    continue;
+                }
+                String previous = agreed.put(name, prompt);
+                if (previous != null && !previous.equals(prompt)) {
+                    agreed.remove(name);
+                    conflicts.add(name);
+                }
+            }
+        }
+        Iterator<Map.Entry<String, String>> candidates = agreed.entrySet().iterator();
+        while (candidates.hasNext()) {
+            Map.Entry<String, String> candidate = candidates.next();
+            String templatePrompt = templatePrompts.get(candidate.getKey());
+            if (templatePrompt != null && !templatePrompt.equals(candidate.getValue())) {
+                candidates.remove();
+            }
+        }
+        return agreed;
+    }
+
+    private static boolean isDefaultPrompt(String name, String prompt) {
+        return name != null && !name.isEmpty() && prompt.equals(StringUtils.capitalize(name));
+    }
+
+    private static boolean isEmptyArray(JsonNode value) {
+        return value.isArray() && value.size() == 0;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    static void writeKey(JsonGenerator generator, String key) throws IOException {
+        SerializableString encoded = KEYS.get(key);
+        if (encoded != null) {
+            generator.writeFieldName(encoded);
+        }
+        else {
+            generator.writeFieldName(key);
+        }
+    }
+
+    /**
+     * Writes the object, splicing in the memoized forms of it and its parts.
+     *
+     * @param forms the memoized forms, or null to encode everything. Must be null unless the generator writes json.
+     */
+    static void writeObject(JsonGenerator generator, JsonNode node, EncodedForms forms) throws IOException {
+        if (forms != null) {
+            SerializableString form = forms.get(node);
+            if (form != null) {
+                // the empty raw value writes the separator; the form follows as its stored UTF-8,
+                // since raw text with surrogate pairs fails in the UTF-8 generator
+                generator.writeRawValue("");
+                generator.writeRaw(form);
+                return;
+            }
+        }
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            writeKey(generator, field.getKey());
+            writeNode(generator, field.getValue(), forms);
+        }
+        generator.writeEndObject();
+    }
+
+    static void writeNode(JsonGenerator generator, JsonNode node, EncodedForms forms) throws IOException {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                writeObject(generator, node, forms);
+                break;
+            case ARRAY:
+                generator.writeStartArray();
+                for (int i = 0; i < node.size(); i++) {
+                    writeNode(generator, node.get(i), forms);
+                }
+                generator.writeEndArray();
+                break;
+            case STRING:
+                generator.writeString(node.textValue());
+                break;
+            case BOOLEAN:
+                generator.writeBoolean(node.booleanValue());
+                break;
+            case NULL:
+                generator.writeNull();
+                break;
+            case NUMBER:
+                writeNumber(generator, node);
+                break;
+            default:
+                MAPPER.writeTree(generator, node);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator generator, JsonNode node) throws IOException {
+        switch (((NumericNode) node).numberType()) {
+            case INT:
+                generator.writeNumber(node.intValue());
+                break;
+            case LONG:
+                generator.writeNumber(node.longValue());
+                break;
+            case BIG_INTEGER:
+                generator.writeNumber(node.bigIntegerValue());
+                break;
+            case FLOAT:
+                generator.writeNumber(node.floatValue());
+                break;
+            case DOUBLE:
+                generator.writeNumber(node.doubleValue());
+                break;
+            default:
+                generator.writeNumber(node.decimalValue());
+        }
+    }
+}
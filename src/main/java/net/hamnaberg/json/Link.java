@@ -20,6 +20,7 @@ import net.hamnaberg.json.extension.Extended;
 import net.hamnaberg.funclite.CollectionOps;
 import net.hamnaberg.funclite.Optional;
 import net.hamnaberg.funclite.Preconditions;
+import com.fasterxml.jackson.core.SerializableString;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -30,8 +31,15 @@ import java.util.Collections;
 import java.util.List;
 
 public final class Link extends Extended<Link> {
+    private final SerializableString encoded;
+
     Link(ObjectNode delegate) {
+        this(delegate, null);
+    }
+
+    private Link(ObjectNode delegate, SerializableString encoded) {
         super(delegate);
+        this.encoded = encoded;
     }
 
     @Override
@@ -39,6 +47,35 @@ public final class Link extends Extended<Link> {
         return new Link(value);
     }
 
+    /**
+     * The underlying node, not copied. Must not be modified.
+     */
+    ObjectNode unwrap() {
+        return delegate();
+    }
+
+    /**
+     * Encodes this once, and keeps the encoded json with the returned link.
+     * Writers splice the stored form in instead of encoding it again,
+     * also when the link is written as part of an item or collection built from it.
+     *
+     * @return a memoized link sharing the node of this, or this if it is already memoized.
+     */
+    public Link memoize() {
+        return encoded != null ? this : new Link(delegate(), EncodedForms.encode(delegate()));
+    }
+
+    public boolean isMemoized() {
+        return encoded != null;
+    }
+
+    /**
+     * @return the memoized form, or null.
+     */
+    SerializableString encoded() {
+        return encoded;
+    }
+
     public static Link create(URI href, String rel) {
         return create(href, rel, Optional.<String>none(), Optional.<String>none(), Optional.<Render>none());
     }
@@ -68,7 +105,7 @@ public final class Link extends Extended<Link> {
     }
 
     public URI getHref() {
-        return delegate.has("href") ? URI.create(delegate.get("href").asText()) : null;
+        return delegate().has("href") ? URI.create(delegate().get("href").asText()) : null;
     }
 
     public Link withHref(URI href) {
@@ -78,7 +115,7 @@ public final class Link extends Extended<Link> {
     }
 
     public String getRel() {
-        return delegate.get("rel").asText();
+        return delegate().get("rel").asText();
     }
 
     public Link withRel(String rel) {
@@ -112,7 +149,7 @@ public final class Link extends Extended<Link> {
     }
 
     public Render getRender() {
-        return delegate.has("render") ? Render.valueOf(delegate.get("render").asText()) : Render.Link;
+        return delegate().has("render") ? Render.valueOf(delegate().get("render").asText()) : Render.Link;
     }
 
     public Link withRender(Render render) {
@@ -131,10 +168,13 @@ public final class Link extends Extended<Link> {
         Preconditions.checkArgument(getRel() != null, "Rel was null");
     }
 
-    static List<Link> fromArray(JsonNode node) {
+    /**
+     * @param forms the memoized forms of the owner, or null.
+     */
+    static List<Link> fromArray(JsonNode node, EncodedForms forms) {
         List<Link> links = CollectionOps.newArrayList();
         for (JsonNode jsonNode : node) {
-            links.add(new Link((ObjectNode) jsonNode));
+            links.add(new Link((ObjectNode) jsonNode, forms == null ? null : forms.get(jsonNode)));
         }
         return Collections.unmodifiableList(links);
     }
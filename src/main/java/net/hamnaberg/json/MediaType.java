@@ -4,6 +4,8 @@ public final class MediaType {
 	public static final String COLLECTION_JSON_MIME_TYPE = "application";
 	public static final String COLLECTION_JSON_MIME_SUBTYPE = "vnd.collection+json";
 	public static final String COLLECTION_JSON = COLLECTION_JSON_MIME_TYPE+"/"+COLLECTION_JSON_MIME_SUBTYPE;
+	public static final String COLLECTION_SMILE_MIME_SUBTYPE = "vnd.collection+smile";
+	public static final String COLLECTION_SMILE = COLLECTION_JSON_MIME_TYPE+"/"+COLLECTION_SMILE_MIME_SUBTYPE;
 	
 	private MediaType(){}
 	
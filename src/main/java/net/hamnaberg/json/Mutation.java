@@ -0,0 +1,27 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+/**
+ * A batch of changes applied to the mutable view of an immutable object.
+ *
+ * @see DataContainer#withMutations(Mutation)
+ * @see Collection#withMutations(Mutation)
+ */
+public interface Mutation<M> {
+    void apply(M mutable);
+}
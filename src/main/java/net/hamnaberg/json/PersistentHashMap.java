@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+/**
+ * Immutable hash array mapped trie.
+ * <p/>
+ * {@link #get(Object)} and {@link #put(Object, Object)} are O(log32 n), and a put copies only the nodes
+ * on the path to the changed entry. Keys must not be null.
+ */
+final class PersistentHashMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<Object, Object>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        return (V) root.get(0, key.hashCode(), key);
+    }
+
+    PersistentHashMap<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(0, key.hashCode(), key, value, added);
+        return newRoot == root ? this : new PersistentHashMap<K, V>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    private static abstract class Node {
+        abstract Object get(int shift, int hash, Object key);
+
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+    }
+
+    /**
+     * Holds up to 32 slots, one per 5 bit chunk of the hash, and only allocates the slots in use.
+     * A slot is either a key and value pair, or null and a sub node.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * index(bit);
+            Object keyOrNull = slots[i];
+            if (keyOrNull == null) {
+                return ((Node) slots[i + 1]).get(shift + BITS, hash, key);
+            }
+            return key.equals(keyOrNull) ? slots[i + 1] : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[slots.length + 2];
+                System.arraycopy(slots, 0, copy, 0, i);
+                copy[i] = key;
+                copy[i + 1] = value;
+                System.arraycopy(slots, i, copy, i + 2, slots.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object keyOrNull = slots[i];
+            Object valueOrNode = slots[i + 1];
+            if (keyOrNull == null) {
+                Node node = (Node) valueOrNode;
+                Node changed = node.put(shift + BITS, hash, key, value, added);
+                return changed == node ? this : with(i + 1, changed);
+            }
+            if (key.equals(keyOrNull)) {
+                return value == valueOrNode ? this : with(i + 1, value);
+            }
+            added[0] = true;
+            Node node = create(shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+            BitmapNode copy = with(i + 1, node);
+            copy.slots[i] = null;
+            return copy;
+        }
+
+        private BitmapNode with(int i, Object value) {
+            Object[] copy = slots.clone();
+            copy[i] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private static Node create(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = key1.hashCode();
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            boolean[] ignored = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, ignored).put(shift, hash2, key2, value2, ignored);
+        }
+    }
+
+    /**
+     * Keys with the same full hash, searched linearly.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] entries;
+
+        CollisionNode(int hash, Object[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int i = find(key);
+            return i == -1 ? null : entries[i + 1];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapNode(bit(this.hash, shift), new Object[]{null, this}).put(shift, hash, key, value, added);
+            }
+            int i = find(key);
+            if (i != -1) {
+                if (entries[i + 1] == value) {
+                    return this;
+                }
+                Object[] copy = entries.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            Object[] copy = new Object[entries.length + 2];
+            System.arraycopy(entries, 0, copy, 0, entries.length);
+            copy[entries.length] = key;
+            copy[entries.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        private int find(Object key) {
+            for (int i = 0; i < entries.length; i += 2) {
+                if (key.equals(entries[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable vector with structural sharing, stored as a 32-way trie of leaves plus a tail.
+ * <p/>
+ * {@link #get(int)} and {@link #set(int, Object)} are O(log32 n), and {@link #append(Object)} is amortized O(1).
+ * An update copies only the path to the changed leaf; everything else is shared with the original.
+ */
+final class PersistentVector<E> implements Iterable<E> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentVector<Object> EMPTY = new PersistentVector<Object>(0, BITS, new Object[WIDTH], new Object[0]);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * Builds the vector a leaf at a time, instead of one append per element.
+     */
+    static <E> PersistentVector<E> of(List<? extends E> elements) {
+        PersistentVector<E> vector = empty();
+        int n = elements.size();
+        for (int start = 0; start < n; start += WIDTH) {
+            Object[] leaf = elements.subList(start, Math.min(n, start + WIDTH)).toArray();
+            vector = vector.size == 0 ? new PersistentVector<E>(leaf.length, BITS, vector.root, leaf) : vector.pushTail(leaf);
+        }
+        return vector;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    E get(int index) {
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    PersistentVector<E> set(int index, E value) {
+        checkIndex(index);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = value;
+            return new PersistentVector<E>(size, shift, root, newTail);
+        }
+        return new PersistentVector<E>(size, shift, set(shift, root, index, value), tail);
+    }
+
+    PersistentVector<E> append(E value) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = new Object[tail.length + 1];
+            System.arraycopy(tail, 0, newTail, 0, tail.length);
+            newTail[tail.length] = value;
+            return new PersistentVector<E>(size + 1, shift, root, newTail);
+        }
+        return pushTail(new Object[]{value});
+    }
+
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int index;
+            private Object[] leaf;
+
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                if ((index & MASK) == 0) {
+                    leaf = leafFor(index);
+                }
+                return (E) leaf[index++ & MASK];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Moves the full tail into the trie, and starts a new tail.
+     */
+    private PersistentVector<E> pushTail(Object[] newTail) {
+        int newShift = shift;
+        Object[] newRoot;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        }
+        else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<E>(size + newTail.length, newShift, newRoot, newTail);
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+        int sub = ((size - 1) >>> level) & MASK;
+        Object[] copy = parent.clone();
+        if (level == BITS) {
+            copy[sub] = leaf;
+        }
+        else {
+            Object[] child = (Object[]) parent[sub];
+            copy[sub] = child != null ? pushTail(level - BITS, child, leaf) : newPath(level - BITS, leaf);
+        }
+        return copy;
+    }
+
+    private static Object[] newPath(int level, Object[] leaf) {
+        if (level == 0) {
+            return leaf;
+        }
+        Object[] node = new Object[WIDTH];
+        node[0] = newPath(level - BITS, leaf);
+        return node;
+    }
+
+    private static Object[] set(int level, Object[] node, int index, Object value) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = value;
+        }
+        else {
+            int sub = (index >>> level) & MASK;
+            copy[sub] = set(level - BITS, (Object[]) node[sub], index, value);
+        }
+        return copy;
+    }
+
+    private Object[] leafFor(int index) {
+        checkIndex(index);
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private int tailOffset() {
+        return size - tail.length;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index %s, size %s", index, size));
+        }
+    }
+}
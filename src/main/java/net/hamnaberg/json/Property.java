@@ -33,40 +33,43 @@ public final class Property extends Extended<Property> {
         super(delegate);
     }
 
+    /**
+     * Property nodes are never modified after creation, so the new array shares them.
+     */
     static ArrayNode toArrayNode(Iterable<Property> data) {
         ArrayNode arr = JsonNodeFactory.instance.arrayNode();
         for (Property property : data) {
-            arr.add(property.asJson());
+            arr.add(property.delegate());
         }
         return arr;
     }
 
     public String getName() {
-        return delegate.get("name").asText();
+        return delegate().get("name").asText();
     }
 
     public Optional<Value> getValue() {
-        return ValueFactory.createOptionalValue(delegate.get("value"));
+        return ValueFactory.createOptionalValue(delegate().get("value"));
     }
 
     public Optional<String> getPrompt() {
-        return delegate.has("prompt") ? Optional.some(delegate.get("prompt").asText()) : Optional.<String>none();
+        return delegate().has("prompt") ? Optional.some(delegate().get("prompt").asText()) : Optional.<String>none();
     }
 
     public boolean hasValue() {
-        return delegate.has("value");
+        return delegate().has("value");
     }
 
     public boolean hasArray() {
-        return delegate.has("array");
+        return delegate().has("array");
     }
 
     public boolean hasObject() {
-        return delegate.has("object");
+        return delegate().has("object");
     }
 
     public List<Value> getArray() {
-        JsonNode array = delegate.get("array");
+        JsonNode array = delegate().get("array");
         List<Value> builder = CollectionOps.newArrayList();
         if (array != null && array.isArray()) {
             for (JsonNode n : array) {
@@ -78,7 +81,7 @@ public final class Property extends Extended<Property> {
 
     public Map<String, Value> getObject() {
         Map<String, Value> builder = MapOps.newHashMap();
-        JsonNode object = delegate.get("object");
+        JsonNode object = delegate().get("object");
         if (object != null && object.isObject()) {
             Iterator<Map.Entry<String,JsonNode>> fields = object.fields();
             while (fields.hasNext()) {
@@ -231,6 +234,13 @@ public final class Property extends Extended<Property> {
         return new Property(value);
     }
 
+    /**
+     * The underlying node, not copied. Must not be modified.
+     */
+    ObjectNode unwrap() {
+        return delegate();
+    }
+
     @Override
     public void validate() {
 
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent form of the "data" array of a {@link DataContainer}.
+ * <p/>
+ * The property nodes are kept in a {@link PersistentVector}, with a {@link PersistentHashMap} from name to positions,
+ * so adding or replacing a property is O(log n) and shares everything else with the original.
+ */
+final class PropertyVector {
+    static final PropertyVector EMPTY = new PropertyVector(PersistentVector.<JsonNode>empty(), PersistentHashMap.<String, int[]>empty());
+
+    private final PersistentVector<JsonNode> nodes;
+    private final PersistentHashMap<String, int[]> positions;
+
+    private PropertyVector(PersistentVector<JsonNode> nodes, PersistentHashMap<String, int[]> positions) {
+        this.nodes = nodes;
+        this.positions = positions;
+    }
+
+    /**
+     * @param data a data array, may be null
+     */
+    static PropertyVector of(JsonNode data) {
+        if (data == null || data.size() == 0) {
+            return EMPTY;
+        }
+        List<JsonNode> list = new ArrayList<JsonNode>(data.size());
+        PersistentHashMap<String, int[]> positions = PersistentHashMap.empty();
+        for (int i = 0; i < data.size(); i++) {
+            JsonNode node = data.get(i);
+            list.add(node);
+            positions = index(positions, node, i);
+        }
+        return new PropertyVector(PersistentVector.of(list), positions);
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * @return the first property node with the given name, or null.
+     */
+    JsonNode first(String name) {
+        int[] at = positions.get(name);
+        return at == null ? null : nodes.get(at[0]);
+    }
+
+    PropertyVector add(JsonNode property) {
+        return new PropertyVector(nodes.append(property), index(positions, property, nodes.size()));
+    }
+
+    /**
+     * Replaces all properties with the same name.
+     *
+     * @return a new vector, or this if there was no property with the name.
+     */
+    PropertyVector replace(JsonNode property) {
+        int[] at = positions.get(name(property));
+        if (at == null) {
+            return this;
+        }
+        PersistentVector<JsonNode> replaced = nodes;
+        for (int i : at) {
+            replaced = replaced.set(i, property);
+        }
+        return new PropertyVector(replaced, positions);
+    }
+
+    ArrayNode toArrayNode() {
+        ArrayNode array = JsonNodeFactory.instance.arrayNode();
+        for (JsonNode node : nodes) {
+            array.add(node);
+        }
+        return array;
+    }
+
+    private static PersistentHashMap<String, int[]> index(PersistentHashMap<String, int[]> positions, JsonNode property, int position) {
+        String name = name(property);
+        if (name == null) {
+            return positions;
+        }
+        int[] existing = positions.get(name);
+        if (existing == null) {
+            return positions.put(name, new int[]{position});
+        }
+        int[] at = new int[existing.length + 1];
+        System.arraycopy(existing, 0, at, 0, existing.length);
+        at[existing.length] = position;
+        return positions.put(name, at);
+    }
+
+    private static String name(JsonNode property) {
+        JsonNode name = property.get("name");
+        return name == null ? null : name.asText();
+    }
+}
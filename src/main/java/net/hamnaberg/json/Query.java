@@ -21,7 +21,6 @@ import net.hamnaberg.funclite.CollectionOps;
 import net.hamnaberg.funclite.Optional;
 import net.hamnaberg.funclite.Preconditions;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
@@ -31,11 +30,20 @@ import java.util.Collections;
 import java.util.List;
 
 public final class Query extends DataContainer<Query> {
+    private volatile Target target;
 
     Query(ObjectNode delegate) {
         super(delegate);
     }
 
+    private Query(ObjectNode delegate, EncodedForms forms) {
+        super(delegate, forms);
+    }
+
+    private Query(ObjectNode base, PropertyVector properties, EncodedForms forms) {
+        super(base, properties, forms);
+    }
+
     public static Query create(URI target, String rel, Optional<String> prompt, Iterable<Property> data) {
         return create(new URITarget(target), rel, prompt, Optional.<String>none(), data);
     }
@@ -58,11 +66,7 @@ public final class Query extends DataContainer<Query> {
             obj.put("name", name.get());
         }
         if (!CollectionOps.isEmpty(data)) {
-            ArrayNode arr = JsonNodeFactory.instance.arrayNode();
-            for (Property property : data) {
-                arr.add(property.asJson());
-            }
-            obj.put("data", arr);
+            obj.put("data", Property.toArrayNode(data));
         }
         return new Query(obj);
     }
@@ -72,22 +76,48 @@ public final class Query extends DataContainer<Query> {
     }
 
     @Override
-    protected Query copy(ObjectNode value) {
-        return new Query(value);
+    Query copy(ObjectNode value, EncodedForms forms) {
+        return new Query(value, forms);
     }
 
+    @Override
+    Query copy(ObjectNode base, PropertyVector properties, EncodedForms forms) {
+        return new Query(base, properties, forms);
+    }
+
+    /**
+     * The target is created once and shared between calls.
+     */
     public Target getHref() {
-        String href = delegate.get("href").asText();
-        if (delegate.has("encoding") && "uri-template".equals(delegate.get("encoding").asText())) {
-            return new URITemplateTarget(href);
+        Target t = target;
+        if (t == null) {
+            String href = delegate().get("href").asText();
+            if (delegate().has("encoding") && "uri-template".equals(delegate().get("encoding").asText())) {
+                t = new URITemplateTarget(href);
+            }
+            else {
+                t = new URITarget(href);
+            }
+            target = t;
         }
-        return new URITarget(href);
+        return t;
     }
 
     public URI expand(Iterable<Property> properties) {
         return getHref().expand(properties);
     }
 
+    /**
+     * Expands the query, looking uri templates up in the cache first.
+     */
+    public URI expand(Iterable<Property> properties, ExpansionCache cache) {
+        Target t = getHref();
+        if (t instanceof URITemplateTarget) {
+            return ((URITemplateTarget) t).expand(properties, cache);
+        }
+        return t.expand(properties);
+    }
+
     public URI expand() {
         return expand(getData());
     }
@@ -113,10 +143,13 @@ public final class Query extends DataContainer<Query> {
         return Optional.fromNullable(getAsString("prompt"));
     }
 
-    static List<Query> fromArray(JsonNode queries) {
+    /**
+     * @param forms the memoized forms of the owner, or null.
+     */
+    static List<Query> fromArray(JsonNode queries, EncodedForms forms) {
         List<Query> builder = CollectionOps.newArrayList();
         for (JsonNode jsonNode : queries) {
-            builder.add(new Query((ObjectNode) jsonNode));
+            builder.add(new Query((ObjectNode) jsonNode, EncodedForms.subtree(forms, jsonNode)));
         }
         return Collections.unmodifiableList(builder);
     }
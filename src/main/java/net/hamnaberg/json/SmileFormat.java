@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Holds the Smile factory, so that the optional dependency is only loaded when Smile is used.
+ */
+final class SmileFormat {
+    static final JsonFactory FACTORY = new SmileFactory()
+            .configure(SmileGenerator.Feature.CHECK_SHARED_NAMES, true)
+            .configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+
+    private SmileFormat() {
+    }
+}
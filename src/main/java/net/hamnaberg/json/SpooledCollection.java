@@ -0,0 +1,382 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A collection whose items are kept encoded, in memory up to a budget and in a temporary file beyond it.
+ * <p/>
+ * Items are encoded once when added. {@link #writeTo(OutputStream)} copies the encoded items through as they are,
+ * and {@link #getItem(int)} decodes a single item, so heap use does not grow with the items
+ * beyond the budget and an offset per item.
+ * <pre>
+ * SpooledCollection.Builder builder = Collection.builder(href).addLink(next).spooled(64 * 1024 * 1024);
+ * for (Row row : rows) {
+ *     builder.addItem(toItem(row));
+ * }
+ * SpooledCollection collection = builder.build();
+ * try {
+ *     collection.writeTo(stream);
+ * } finally {
+ *     collection.close();
+ * }
+ * </pre>
+ * Close it to delete the temporary file. Closing it also closes any {@link ItemIterator} still reading the file.
+ * Thread-safe once built.
+ */
+public final class SpooledCollection implements Closeable, Iterable<Item> {
+    private final Collection envelope;
+    private final byte[] memory;
+    private final File file;
+    private final long[] offsets;
+    private final int size;
+    private final long length;
+    private final Set<Closeable> openStreams = Collections.newSetFromMap(new IdentityHashMap<Closeable, Boolean>());
+    private RandomAccessFile access;
+    private boolean closed;
+
+    private SpooledCollection(Collection envelope, byte[] memory, File file, long[] offsets, int size, long length) {
+        this.envelope = envelope;
+        this.memory = memory;
+        this.file = file;
+        this.offsets = offsets;
+        this.size = size;
+        this.length = length;
+    }
+
+    /**
+     * @return the collection without the spooled items.
+     */
+    public Collection getEnvelope() {
+        return envelope;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the items were moved to a temporary file.
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Decodes the item at the index.
+     *
+     * @throws IndexOutOfBoundsException if there is no such item
+     */
+    public Item getItem(int index) throws IOException {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        byte[] bytes = new byte[(int) (end(index) - start(index))];
+        if (memory != null) {
+            System.arraycopy(memory, (int) start(index), bytes, 0, bytes.length);
+        }
+        else {
+            synchronized (this) {
+                checkOpen();
+                if (access == null) {
+                    access = new RandomAccessFile(file, "r");
+                }
+                access.seek(start(index));
+                access.readFully(bytes);
+            }
+        }
+        return decode(bytes);
+    }
+
+    /**
+     * Decodes the items one at a time, in order. Reading errors are thrown as {@link IllegalStateException}.
+     * Close the iterator if it is not read to the end.
+     */
+    public ItemIterator iterator() {
+        return new ItemIterator();
+    }
+
+    /**
+     * Writes UTF-8 encoded json to the supplied OutputStream, and flushes it.
+     * The output is the same as for a Collection with the same items.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        CollectionWriter writer = CollectionWriter.create(stream);
+        writer.start(envelope);
+        if (size > 0) {
+            InputStream items = open();
+            try {
+                writer.writeEncodedItems(items);
+            } finally {
+                items.close();
+            }
+        }
+        writer.finish();
+    }
+
+    /**
+     * Writes the collection with the items decoded one at a time, as the options say.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream, WriteOptions options) throws IOException {
+        ItemIterator items = iterator();
+        try {
+            CollectionWriter.create(stream, options).write(envelope, items);
+        } finally {
+            items.close();
+        }
+    }
+
+    /**
+     * Closes the open readers of the temporary file, and deletes it.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (Closeable stream : new ArrayList<Closeable>(openStreams)) {
+                stream.close();
+            }
+            if (access != null) {
+                access.close();
+            }
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    private InputStream open() throws IOException {
+        if (memory != null) {
+            return new ByteArrayInputStream(memory, 0, (int) length);
+        }
+        synchronized (this) {
+            checkOpen();
+            InputStream stream = new BufferedInputStream(new FileInputStream(file), 65536) {
+                @Override
+                public void close() throws IOException {
+                    synchronized (SpooledCollection.this) {
+                        openStreams.remove(this);
+                    }
+                    super.close();
+                }
+            };
+            openStreams.add(stream);
+            return stream;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Collection is closed");
+        }
+    }
+
+    private long start(int index) {
+        return index == 0 ? offsets[0] : offsets[index] + 1;
+    }
+
+    private long end(int index) {
+        return index + 1 < size ? offsets[index + 1] : length;
+    }
+
+    private static Item decode(byte[] bytes) throws IOException {
+        JsonNode node = JsonWriter.MAPPER.readTree(bytes);
+        return new Item((ObjectNode) node);
+    }
+
+    /**
+     * Opens the items on the first call to {@link #next()}, and closes them after the last item.
+     */
+    public final class ItemIterator implements Iterator<Item>, Closeable {
+        private DataInputStream stream;
+        private int index;
+
+        private ItemIterator() {
+        }
+
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        public Item next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                if (stream == null) {
+                    stream = new DataInputStream(open());
+                }
+                if (index > 0) {
+                    stream.readByte();
+                }
+                byte[] bytes = new byte[(int) (end(index) - start(index))];
+                stream.readFully(bytes);
+                index++;
+                if (index == size) {
+                    close();
+                }
+                return decode(bytes);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Stops reading. Later calls to {@link #hasNext()} return false.
+         */
+        public void close() throws IOException {
+            index = size;
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+    }
+
+    /**
+     * Not thread-safe. Close it to delete the temporary file if {@link #build()} is never called.
+     */
+    public static final class Builder implements Closeable {
+        private final Collection envelope;
+        private final long memoryBudget;
+        private final File directory;
+        private final Spool spool = new Spool();
+        private final JsonGenerator generator;
+        private long[] offsets = new long[1024];
+        private int size;
+        private boolean built;
+
+        Builder(Collection envelope, long memoryBudget, File directory) throws IOException {
+            if (memoryBudget < 0) {
+                throw new IllegalArgumentException("Memory budget must not be negative, was " + memoryBudget);
+            }
+            this.envelope = envelope;
+            this.memoryBudget = memoryBudget;
+            this.directory = directory;
+            this.generator = JsonWriter.generator(spool);
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            generator.setRootValueSeparator(new SerializedString(","));
+        }
+
+        public Builder addItem(Item item) throws IOException {
+            if (built) {
+                throw new IllegalStateException("Collection is already built");
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = spool.position;
+            JsonWriter.writeObject(generator, item.unwrap(), item.forms());
+            generator.flush();
+            if (spool.file == null && spool.position > memoryBudget) {
+                spool.spill(directory);
+            }
+            return this;
+        }
+
+        public Builder addItems(Iterable<Item> items) throws IOException {
+            for (Item item : items) {
+                addItem(item);
+            }
+            return this;
+        }
+
+        public SpooledCollection build() throws IOException {
+            if (built) {
+                throw new IllegalStateException("Collection is already built");
+            }
+            built = true;
+            generator.close();
+            spool.close();
+            // the spool buffer is handed over as it is, only the first spool.position bytes are used
+            byte[] memory = spool.file == null ? spool.memory.buffer() : null;
+            return new SpooledCollection(envelope, memory, spool.file, offsets, size, spool.position);
+        }
+
+        /**
+         * Discards the items unless built.
+         */
+        public void close() throws IOException {
+            if (!built) {
+                built = true;
+                spool.close();
+                if (spool.file != null) {
+                    spool.file.delete();
+                }
+            }
+        }
+    }
+
+    private static final class Spool extends OutputStream {
+        private Memory memory = new Memory();
+        private OutputStream target = memory;
+        private File file;
+        private long position;
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            target.write(bytes, offset, length);
+            position += length;
+        }
+
+        void spill(File directory) throws IOException {
+            file = File.createTempFile("collection", ".items", directory);
+            target = new BufferedOutputStream(new FileOutputStream(file), 65536);
+            memory.writeTo(target);
+            memory = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+
+    private static final class Memory extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
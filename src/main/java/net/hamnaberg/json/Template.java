@@ -18,13 +18,14 @@ package net.hamnaberg.json;
 
 
 import net.hamnaberg.funclite.CollectionOps;
-import net.hamnaberg.json.util.Charsets;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import net.hamnaberg.json.io.ByteBufferAllocator;
+import net.hamnaberg.json.io.EncodedBuffers;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collections;
 
 public final class Template extends DataContainer<Template> implements Writable {
@@ -32,9 +33,22 @@ public final class Template extends DataContainer<Template> implements Writable
         super(delegate);
     }
 
+    Template(ObjectNode delegate, EncodedForms forms) {
+        super(delegate, forms);
+    }
+
+    private Template(ObjectNode base, PropertyVector properties, EncodedForms forms) {
+        super(base, properties, forms);
+    }
+
+    @Override
+    Template copy(ObjectNode value, EncodedForms forms) {
+        return new Template(value, forms);
+    }
+
     @Override
-    protected Template copy(ObjectNode value) {
-        return new Template(value);
+    Template copy(ObjectNode base, PropertyVector properties, EncodedForms forms) {
+        return new Template(base, properties, forms);
     }
 
     public static Template create() {
@@ -54,12 +68,19 @@ public final class Template extends DataContainer<Template> implements Writable
         return Collection.builder(href).withTemplate(this).build();
     }
 
+    /**
+     * Walks this template without creating any model objects.
+     */
+    public void accept(CollectionVisitor visitor) {
+        CollectionWalker.walkTemplate(delegate(), visitor);
+    }
+
     /*
      * Writes to the supplied outputstream.
      * Note: Does NOT close the stream.
      */
     public void writeTo(OutputStream stream) throws IOException {
-        writeTo(new OutputStreamWriter(stream, Charsets.UTF_8));
+        JsonWriter.write("template", delegate(), forms(), stream);
     }
 
     /*
@@ -67,10 +88,47 @@ public final class Template extends DataContainer<Template> implements Writable
      * Note: Does NOT close the writer.
      */
     public void writeTo(Writer writer) throws IOException {
-        ObjectMapper factory = new ObjectMapper();
-        ObjectNode template = JsonNodeFactory.instance.objectNode();
-        template.put("template", asJson());
-        factory.writeValue(writer, template);
+        JsonWriter.write("template", delegate(), forms(), writer);
+    }
+
+    /**
+     * Writes UTF-8 encoded json to the supplied OutputStream with the codec, and flushes it.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream, JsonCodec codec) throws IOException {
+        JsonWriter.write("template", delegate(), forms(), stream, codec);
+    }
+
+    /**
+     * Writes to the supplied Writer with the codec, and flushes it.
+     * Note: Does NOT close the writer.
+     */
+    public void writeTo(Writer writer, JsonCodec codec) throws IOException {
+        JsonWriter.write("template", delegate(), forms(), writer, codec);
+    }
+
+    /**
+     * Writes to the supplied OutputStream in the format, and flushes it.
+     * Note: Does NOT close the stream.
+     */
+    public void writeTo(OutputStream stream, DataFormat format) throws IOException {
+        JsonWriter.write("template", delegate(), forms(), stream, WriteOptions.DEFAULT, format);
+    }
+
+    /**
+     * Writes UTF-8 encoded json to the channel, using gathering writes where supported.
+     * Note: Does NOT close the channel.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        JsonWriter.write("template", delegate(), forms(), channel);
+    }
+
+    /**
+     * Encodes this as UTF-8 json into buffers from the allocator.
+     * The caller must {@link EncodedBuffers#release() release} the result.
+     */
+    public EncodedBuffers encode(ByteBufferAllocator allocator) throws IOException {
+        return JsonWriter.encode("template", delegate(), forms(), allocator);
     }
 
     @Override
@@ -1,21 +1,26 @@
 package net.hamnaberg.json;
 
-import com.damnhandy.uri.template.MalformedUriTemplateException;
-import com.damnhandy.uri.template.UriTemplate;
-import com.damnhandy.uri.template.VariableExpansionException;
-import net.hamnaberg.funclite.*;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import java.net.URI;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public final class URITemplateTarget implements Target {
     private String href;
+    private final UriTemplate template;
 
+    /**
+     * The compiled template is taken from a global cache, so targets for the same template share it.
+     *
+     * @throws IllegalStateException if the template is malformed
+     */
     public URITemplateTarget(String href) {
         try {
-            UriTemplate.fromTemplate(href);
+            this.template = UriTemplates.compile(href);
             this.href = href;
-        } catch (MalformedUriTemplateException e) {
+        } catch (IllegalArgumentException e) {
             throw new IllegalStateException(e);
         }
     }
@@ -27,34 +32,33 @@ public final class URITemplateTarget implements Target {
 
     public URI toURI() {
         try {
-            return URI.create(UriTemplate.fromTemplate(href).expand());
-        } catch (Exception e) {
+            return URI.create(template.expand(template.values(Collections.<Property>emptyList())));
+        } catch (IllegalArgumentException e) {
             throw new IllegalStateException(e);
         }
     }
 
     public URI expand(Iterable<Property> properties) {
-        Map<String, Object> map = MapOps.newHashMap();
-        for (Property property : properties) {
-            if (property.hasArray()) {
-                map.put(property.getName(), FunctionalList.create(property.getArray()).filter(NOT_NULL_PRED).map(AS_STRING));
-            }
-            else if (property.hasObject()) {
-                map.put(property.getName(), FunctionalMap.create(property.getObject()).filter(VALUE_NOT_NULL_PRED).mapValues(AS_STRING));
-            }
-            else {
-                Optional<Object> value = property.getValue().filter(NOT_NULL_PRED).map(AS_STRING);
-                if (value.isSome()) {
-                    map.put(property.getName(), value.get());
-                }
-            }
-        }
+        return expand(properties, null);
+    }
 
-        try {
-            return URI.create(UriTemplate.fromTemplate(href).expand(map));
-        } catch (Exception e) {
-            throw new IllegalArgumentException(e);
+    /**
+     * Expands the template, looking the result up in the cache first.
+     *
+     * @param cache may be null.
+     */
+    public URI expand(Iterable<Property> properties, ExpansionCache cache) {
+        JsonNode[] values = template.values(properties);
+        List<JsonNode> key = cache == null ? null : Arrays.asList(values);
+        URI uri = cache == null ? null : cache.get(href, key);
+        if (uri != null) {
+            return uri;
         }
+        uri = URI.create(template.expand(values));
+        if (cache != null) {
+            cache.put(href, key, uri);
+        }
+        return uri;
     }
 
     @Override
@@ -78,25 +82,4 @@ public final class URITemplateTarget implements Target {
     public String toString() {
         return href;
     }
-
-    private final Predicate<Map.Entry<String,Value>> VALUE_NOT_NULL_PRED = new Predicate<Map.Entry<String, Value>>() {
-        @Override
-        public boolean apply(Map.Entry<String, Value> input) {
-            return !input.getValue().isNull();
-        }
-    };
-    
-    private Predicate<Value> NOT_NULL_PRED = new Predicate<Value>() {
-        @Override
-        public boolean apply(Value input) {
-            return !input.isNull();
-        }
-    };
-    private Function<Value,Object> AS_STRING = new Function<Value, Object>() {
-        @Override
-        public Object apply(Value input) {
-            return input.asString();
-        }
-    };
-
 }
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled RFC 6570 uri template, levels 1 to 4.
+ * <p/>
+ * The template is split into pre-encoded literals and expressions once.
+ * Expansion reads the values straight from the property nodes, and appends to a per-thread buffer.
+ * Numbers are written as {@link Value#asString()} writes them.
+ * <p/>
+ * Immutable and thread-safe.
+ */
+final class UriTemplate {
+    private static final String OPERATORS = "+#./;?&";
+    private static final String RESERVED_OPERATORS = "=,!@|";
+    private static final boolean[] UNRESERVED = new boolean[128];
+    private static final boolean[] UNRESERVED_OR_RESERVED = new boolean[128];
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int MAX_BUFFER = 8192;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c : "-._~".toCharArray()) {
+            UNRESERVED[c] = true;
+        }
+        System.arraycopy(UNRESERVED, 0, UNRESERVED_OR_RESERVED, 0, 128);
+        for (char c : ":/?#[]@!$&'()*+,;=".toCharArray()) {
+            UNRESERVED_OR_RESERVED[c] = true;
+        }
+    }
+
+    private final String template;
+    private final String[] names;
+    private final Object[] parts;
+
+    private UriTemplate(String template, String[] names, Object[] parts) {
+        this.template = template;
+        this.names = names;
+        this.parts = parts;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the template is malformed
+     */
+    static UriTemplate compile(String template) {
+        List<String> names = new ArrayList<String>();
+        List<Object> parts = new ArrayList<Object>();
+        int position = 0;
+        while (position < template.length()) {
+            int open = template.indexOf('{', position);
+            int close = template.indexOf('}', position);
+            if (close != -1 && (open == -1 || close < open)) {
+                throw malformed(template, "unmatched '}'");
+            }
+            int end = open == -1 ? template.length() : open;
+            if (end > position) {
+                StringBuilder literal = new StringBuilder();
+                encode(literal, template.substring(position, end), UNRESERVED_OR_RESERVED);
+                parts.add(literal.toString());
+            }
+            if (open == -1) {
+                break;
+            }
+            int nested = template.indexOf('{', open + 1);
+            if (close == -1 || nested != -1 && nested < close) {
+                throw malformed(template, "unclosed expression");
+            }
+            parts.add(Expression.parse(template, template.substring(open + 1, close), names));
+            position = close + 1;
+        }
+        return new UriTemplate(template, names.toArray(new String[names.size()]), parts.toArray());
+    }
+
+    String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the value nodes of the template variables, in variable order, null where undefined.
+     */
+    JsonNode[] values(Iterable<Property> properties) {
+        JsonNode[] values = new JsonNode[names.length];
+        for (Property property : properties) {
+            String name = property.getName();
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    values[i] = valueOf(property.unwrap());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param values as returned from {@link #values(Iterable)}.
+     * @throws IllegalArgumentException if a prefix modifier is used with a list or an object
+     */
+    String expand(JsonNode[] values) {
+        StringBuilder builder = BUFFER.get();
+        builder.setLength(0);
+        for (Object part : parts) {
+            if (part instanceof String) {
+                builder.append((String) part);
+            }
+            else {
+                ((Expression) part).expand(builder, values);
+            }
+        }
+        String result = builder.toString();
+        if (builder.capacity() > MAX_BUFFER) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    private static JsonNode valueOf(JsonNode property) {
+        JsonNode array = property.get("array");
+        if (array != null && array.isArray()) {
+            return array;
+        }
+        JsonNode object = property.get("object");
+        if (object != null && object.isObject()) {
+            return object;
+        }
+        return property.get("value");
+    }
+
+    private static boolean isDefined(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return false;
+        }
+        if (value.isContainerNode()) {
+            for (JsonNode element : value) {
+                if (!element.isNull()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static String text(JsonNode value) {
+        return value.isNumber() ? value.decimalValue().toString() : value.asText();
+    }
+
+    private static void encode(StringBuilder builder, String value, boolean[] allowed) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 128 && allowed[c]) {
+                builder.append(c);
+            }
+            else if (c == '%' && allowed == UNRESERVED_OR_RESERVED && i + 2 < length
+                    && Character.digit(value.charAt(i + 1), 16) != -1 && Character.digit(value.charAt(i + 2), 16) != -1) {
+                builder.append(value, i, i + 3);
+                i += 2;
+            }
+            else if (c < 0x80) {
+                appendEscaped(builder, c);
+            }
+            else if (c < 0x800) {
+                appendEscaped(builder, 0xc0 | c >> 6);
+                appendEscaped(builder, 0x80 | c & 0x3f);
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                appendEscaped(builder, 0xf0 | code >> 18);
+                appendEscaped(builder, 0x80 | code >> 12 & 0x3f);
+                appendEscaped(builder, 0x80 | code >> 6 & 0x3f);
+                appendEscaped(builder, 0x80 | code & 0x3f);
+            }
+            else {
+                appendEscaped(builder, 0xe0 | c >> 12);
+                appendEscaped(builder, 0x80 | c >> 6 & 0x3f);
+                appendEscaped(builder, 0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder builder, int b) {
+        builder.append('%').append(HEX[b >> 4 & 0xf]).append(HEX[b & 0xf]);
+    }
+
+    private static IllegalArgumentException malformed(String template, String reason) {
+        return new IllegalArgumentException(String.format("Malformed uri template '%s': %s", template, reason));
+    }
+
+    private static final class Expression {
+        private final String first;
+        private final char separator;
+        private final boolean named;
+        private final String ifEmpty;
+        private final boolean[] allowed;
+        private final String[] names;
+        private final int[] slots;
+        private final int[] prefixes;
+        private final boolean[] explode;
+
+        private Expression(char operator, String[] names, int[] slots, int[] prefixes, boolean[] explode) {
+            this.first = operator == 0 || operator == '+' ? "" : String.valueOf(operator);
+            this.separator = operator == 0 || operator == '+' || operator == '#' ? ',' : operator == '?' ? '&' : operator;
+            this.named = operator == ';' || operator == '?' || operator == '&';
+            this.ifEmpty = operator == '?' || operator == '&' ? "=" : "";
+            this.allowed = operator == '+' || operator == '#' ? UNRESERVED_OR_RESERVED : UNRESERVED;
+            this.names = names;
+            this.slots = slots;
+            this.prefixes = prefixes;
+            this.explode = explode;
+        }
+
+        static Expression parse(String template, String expression, List<String> variables) {
+            if (expression.length() == 0) {
+                throw malformed(template, "empty expression");
+            }
+            char operator = 0;
+            String list = expression;
+            if (OPERATORS.indexOf(expression.charAt(0)) != -1) {
+                operator = expression.charAt(0);
+                list = expression.substring(1);
+            }
+            else if (RESERVED_OPERATORS.indexOf(expression.charAt(0)) != -1) {
+                throw malformed(template, "reserved operator " + expression.charAt(0));
+            }
+            String[] specs = list.split(",", -1);
+            String[] names = new String[specs.length];
+            int[] slots = new int[specs.length];
+            int[] prefixes = new int[specs.length];
+            boolean[] explode = new boolean[specs.length];
+            for (int i = 0; i < specs.length; i++) {
+                String spec = specs[i];
+                int colon = spec.indexOf(':');
+                if (spec.endsWith("*")) {
+                    explode[i] = true;
+                    spec = spec.substring(0, spec.length() - 1);
+                }
+                else if (colon != -1) {
+                    String prefix = spec.substring(colon + 1);
+                    if (prefix.length() == 0 || prefix.length() > 4 || prefix.charAt(0) == '0' || !isDigits(prefix)) {
+                        throw malformed(template, "illegal prefix " + prefix);
+                    }
+                    prefixes[i] = Integer.parseInt(prefix);
+                    spec = spec.substring(0, colon);
+                }
+                if (!isVariableName(spec)) {
+                    throw malformed(template, "illegal variable name '" + spec + "'");
+                }
+                names[i] = spec;
+                int slot = variables.indexOf(spec);
+                if (slot == -1) {
+                    slot = variables.size();
+                    variables.add(spec);
+                }
+                slots[i] = slot;
+            }
+            return new Expression(operator, names, slots, prefixes, explode);
+        }
+
+        void expand(StringBuilder builder, JsonNode[] values) {
+            boolean firstDefined = true;
+            for (int i = 0; i < names.length; i++) {
+                JsonNode value = values[slots[i]];
+                if (!isDefined(value)) {
+                    continue;
+                }
+                builder.append(firstDefined ? first : String.valueOf(separator));
+                firstDefined = false;
+                if (value.isValueNode()) {
+                    String text = text(value);
+                    if (named) {
+                        builder.append(names[i]);
+                        builder.append(text.length() == 0 ? ifEmpty : "=");
+                    }
+                    if (prefixes[i] > 0 && text.codePointCount(0, text.length()) > prefixes[i]) {
+                        text = text.substring(0, text.offsetByCodePoints(0, prefixes[i]));
+                    }
+                    encode(builder, text, allowed);
+                }
+                else if (prefixes[i] > 0) {
+                    throw new IllegalArgumentException("Prefix modifier used with composite value " + names[i]);
+                }
+                else if (!explode[i]) {
+                    if (named) {
+                        builder.append(names[i]).append('=');
+                    }
+                    appendComposite(builder, value);
+                }
+                else {
+                    appendExploded(builder, names[i], value);
+                }
+            }
+        }
+
+        private void appendComposite(StringBuilder builder, JsonNode value) {
+            boolean firstElement = true;
+            if (value.isArray()) {
+                for (JsonNode element : value) {
+                    if (!element.isNull()) {
+                        if (!firstElement) {
+                            builder.append(',');
+                        }
+                        firstElement = false;
+                        encode(builder, text(element), allowed);
+                    }
+                }
+                return;
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = value.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (!field.getValue().isNull()) {
+                    if (!firstElement) {
+                        builder.append(',');
+                    }
+                    firstElement = false;
+                    encode(builder, field.getKey(), allowed);
+                    builder.append(',');
+                    encode(builder, text(field.getValue()), allowed);
+                }
+            }
+        }
+
+        private void appendExploded(StringBuilder builder, String name, JsonNode value) {
+            boolean firstElement = true;
+            if (value.isArray()) {
+                for (JsonNode element : value) {
+                    if (!element.isNull()) {
+                        if (!firstElement) {
+                            builder.append(separator);
+                        }
+                        firstElement = false;
+                        String text = text(element);
+                        if (named) {
+                            builder.append(name).append(text.length() == 0 ? ifEmpty : "=");
+                        }
+                        encode(builder, text, allowed);
+                    }
+                }
+                return;
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = value.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (!field.getValue().isNull()) {
+                    if (!firstElement) {
+                        builder.append(separator);
+                    }
+                    firstElement = false;
+                    String text = text(field.getValue());
+                    encode(builder, field.getKey(), allowed);
+                    builder.append(named && text.length() == 0 ? ifEmpty : "=");
+                    encode(builder, text, allowed);
+                }
+            }
+        }
+
+        private static boolean isDigits(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (!Character.isDigit(value.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isVariableName(String name) {
+            if (name.length() == 0) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (!(c < 128 && UNRESERVED[c] && c != '-' && c != '~' || c == '%')) {
+                    return false;
+                }
+            }
+            return !name.startsWith(".") && !name.endsWith(".");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded global cache of compiled uri templates, keyed by template string, least recently used evicted first.
+ */
+final class UriTemplates {
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final Map<String, UriTemplate> COMPILED = new LinkedHashMap<String, UriTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UriTemplate> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private UriTemplates() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the template is malformed
+     */
+    static UriTemplate compile(String template) {
+        synchronized (COMPILED) {
+            UriTemplate compiled = COMPILED.get(template);
+            if (compiled != null) {
+                return compiled;
+            }
+        }
+        UriTemplate compiled = UriTemplate.compile(template);
+        synchronized (COMPILED) {
+            COMPILED.put(template, compiled);
+        }
+        return compiled;
+    }
+}
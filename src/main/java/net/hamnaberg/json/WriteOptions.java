@@ -0,0 +1,198 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Controls how the items, and the hrefs, of a collection are written.
+ * <p/>
+ * Projection and compaction are applied while encoding, so no copies of the items are made.
+ * <pre>
+ * WriteOptions options = WriteOptions.builder().fields("name", "price").build();
+ * collection.writeTo(stream, options);
+ * </pre>
+ */
+public final class WriteOptions {
+    public static final WriteOptions DEFAULT = builder().build();
+
+    private final Set<String> fields;
+    private final Set<String> linkRels;
+    private final boolean compact;
+    private final boolean hoistPrompts;
+    private final boolean relativeHrefs;
+    private final JsonCodec codec;
+
+    private WriteOptions(Set<String> fields, Set<String> linkRels, boolean compact, boolean hoistPrompts, boolean relativeHrefs, JsonCodec codec) {
+        this.fields = fields;
+        this.linkRels = linkRels;
+        this.compact = compact;
+        this.hoistPrompts = hoistPrompts;
+        this.relativeHrefs = relativeHrefs;
+        this.codec = codec;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return true if items are written as they are.
+     */
+    boolean isDefault() {
+        return fields == null && linkRels == null && !compact && !hoistPrompts && !relativeHrefs;
+    }
+
+    JsonCodec getCodec() {
+        return codec;
+    }
+
+    boolean isCompact() {
+        return compact;
+    }
+
+    boolean hoistsPrompts() {
+        return hoistPrompts;
+    }
+
+    boolean writesRelativeHrefs() {
+        return relativeHrefs;
+    }
+
+    boolean filtersFields() {
+        return fields != null;
+    }
+
+    boolean filtersLinks() {
+        return linkRels != null;
+    }
+
+    boolean includesField(String name) {
+        return fields == null || fields.contains(name);
+    }
+
+    /**
+     * @param rel a rel, or a space separated list of rels.
+     */
+    boolean includesLink(String rel) {
+        if (linkRels == null) {
+            return true;
+        }
+        if (rel == null) {
+            return false;
+        }
+        if (linkRels.contains(rel)) {
+            return true;
+        }
+        for (String part : rel.split(" ")) {
+            if (linkRels.contains(part)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class Builder {
+        private Set<String> fields;
+        private Set<String> linkRels;
+        private boolean compact;
+        private boolean hoistPrompts;
+        private boolean relativeHrefs;
+        private JsonCodec codec = JsonCodec.JACKSON;
+
+        private Builder() {
+        }
+
+        /**
+         * Only the item data properties with these names are written.
+         */
+        public Builder fields(String... names) {
+            return fields(Arrays.asList(names));
+        }
+
+        public Builder fields(Iterable<String> names) {
+            fields = toSet(names);
+            return this;
+        }
+
+        /**
+         * Only the item links with one of these rels are written.
+         */
+        public Builder linkRels(String... rels) {
+            return linkRels(Arrays.asList(rels));
+        }
+
+        public Builder linkRels(Iterable<String> rels) {
+            linkRels = toSet(rels);
+            return this;
+        }
+
+        /**
+         * Leaves out item property prompts which are the capitalized name, as created by default,
+         * null values, and empty arrays.
+         * Clients are expected to use the capitalized name when there is no prompt.
+         */
+        public Builder compact() {
+            compact = true;
+            return this;
+        }
+
+        /**
+         * Moves prompts that all items agree on into the collection template, where it has a property of that name.
+         * Only applies when writing a whole {@link Collection}; streaming writers do not see all items up front.
+         */
+        public Builder hoistPrompts() {
+            hoistPrompts = true;
+            return this;
+        }
+
+        /**
+         * Writes the hrefs of items, links and queries relative to the collection href, where they are under it.
+         * Read them back with {@link net.hamnaberg.json.parser.CollectionParser#resolvingRelativeHrefs()}.
+         */
+        public Builder relativeHrefs() {
+            relativeHrefs = true;
+            return this;
+        }
+
+        /**
+         * The codec json text is written with. Defaults to {@link JsonCodec#JACKSON}.
+         */
+        public Builder codec(JsonCodec codec) {
+            if (codec == null) {
+                throw new IllegalArgumentException("Codec may not be null");
+            }
+            this.codec = codec;
+            return this;
+        }
+
+        public WriteOptions build() {
+            return new WriteOptions(fields, linkRels, compact, hoistPrompts, relativeHrefs, codec);
+        }
+
+        private static Set<String> toSet(Iterable<String> values) {
+            Set<String> set = new HashSet<String>();
+            for (String value : values) {
+                set.add(value);
+            }
+            return Collections.unmodifiableSet(set);
+        }
+    }
+}
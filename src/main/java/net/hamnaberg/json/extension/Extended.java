@@ -1,37 +1,109 @@
 package net.hamnaberg.json.extension;
 
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public abstract class Extended<T> {
+    private static final Object NULL = new Object();
+
+    /**
+     * The json of this instance. Null only for instances created by the library without it, whose json is
+     * built on first use; {@link #delegate()} works for both. Must not be modified.
+     */
     protected final ObjectNode delegate;
+    private volatile ObjectNode materialized;
+    private volatile ConcurrentMap<Extension<?>, Object> extracted;
 
     protected Extended(ObjectNode delegate) {
         this.delegate = delegate;
     }
 
+    /**
+     * For instances whose json is built on first use by {@link #materialize()}.
+     */
+    protected Extended() {
+        this.delegate = null;
+    }
+
+    /**
+     * The underlying json, built on first use for instances created without it. Must not be modified.
+     */
+    protected final ObjectNode delegate() {
+        if (delegate != null) {
+            return delegate;
+        }
+        ObjectNode node = materialized;
+        if (node == null) {
+            synchronized (this) {
+                node = materialized;
+                if (node == null) {
+                    node = materialize();
+                    materialized = node;
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Builds the json of an instance created without it. Called at most once per instance.
+     */
+    protected ObjectNode materialize() {
+        throw new IllegalStateException("No json to build");
+    }
+
     protected abstract T copy(ObjectNode value);
 
+    /**
+     * Extracts the extension value. The value is extracted once per instance and extension,
+     * and the same value is returned on later calls.
+     */
+    @SuppressWarnings("unchecked")
     public <A> A getExtension(Extension<A> extension) {
-        return extension.extract(delegate);
+        ConcurrentMap<Extension<?>, Object> cache = extracted;
+        if (cache == null) {
+            cache = new ConcurrentHashMap<Extension<?>, Object>(4, 0.75f, 1);
+            extracted = cache;
+        }
+        Object value = cache.get(extension);
+        if (value == null) {
+            A a = extension.extract(delegate());
+            Object existing = cache.putIfAbsent(extension, a == null ? NULL : a);
+            return existing == null || existing == NULL ? a : (A) existing;
+        }
+        return value == NULL ? null : (A) value;
     }
 
+    /**
+     * The extension writes into an empty node first, so nothing is copied when it writes nothing,
+     * or only fields this already has with the same values.
+     *
+     * @return a new copy with the written fields, or this if nothing changed.
+     */
+    @SuppressWarnings("unchecked")
     public <A> T apply(A value, Extension<A> extension) {
-        Map<String, JsonNode> map = extension.apply(value);
-        if (map == null || map.isEmpty()) {
+        ObjectNode written = JsonNodeFactory.instance.objectNode();
+        if (!extension.applyTo(value, written) || containsAll(delegate(), written)) {
             return (T)this;
         }
         ObjectNode copied = copyDelegate();
-        copied.putAll(map);
+        copied.putAll(written);
         return copy(copied);
     }
 
+    /**
+     * Copies the top level fields only. Nested nodes are shared between copies,
+     * which is safe since nodes owned by the model are never modified in place.
+     */
     protected ObjectNode copyDelegate() {
         ObjectNode copied = JsonNodeFactory.instance.objectNode();
-        copied.putAll(delegate);
+        copied.putAll(delegate());
         return copied;
     }
 
@@ -40,7 +112,8 @@ public abstract class Extended<T> {
     }
 
     protected String getAsString(String name) {
-        return delegate.has(name) ? delegate.get(name).asText() : null;
+        ObjectNode node = delegate();
+        return node.has(name) ? node.get(name).asText() : null;
     }
 
     @Override
@@ -50,15 +123,24 @@ public abstract class Extended<T> {
 
         Extended extended = (Extended) o;
 
-        if (delegate != null ? !delegate.equals(extended.delegate) : extended.delegate != null) return false;
-
-        return true;
+        return delegate().equals(extended.delegate());
     }
 
     @Override
     public int hashCode() {
-        return delegate != null ? delegate.hashCode() : 0;
+        return delegate().hashCode();
     }
 
     public abstract void validate();
+
+    private static boolean containsAll(ObjectNode node, ObjectNode fields) {
+        Iterator<Map.Entry<String, JsonNode>> iterator = fields.fields();
+        while (iterator.hasNext()) {
+            Map.Entry<String, JsonNode> field = iterator.next();
+            if (!field.getValue().equals(node.get(field.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
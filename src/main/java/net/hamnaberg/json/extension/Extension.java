@@ -10,6 +10,23 @@ public abstract class Extension<A> {
     public abstract A extract(ObjectNode node);
     public abstract Map<String, JsonNode> apply(A value);
 
+    /**
+     * Writes the value into the target node.
+     * The default copies the result of {@link #apply(Object)}; override to write directly.
+     * {@link Extended#apply(Object, Extension)} and {@code DataContainer.Transient#apply} pass an empty node,
+     * and put what was written into a copy of the object.
+     *
+     * @return true if anything was written.
+     */
+    public boolean applyTo(A value, ObjectNode target) {
+        Map<String, JsonNode> map = apply(value);
+        if (map == null || map.isEmpty()) {
+            return false;
+        }
+        target.putAll(map);
+        return true;
+    }
+
     public static <A, B> Extension<Tuple2<A, B>> combine(Extension<A> a, Extension<B> b) {
         return new Tuple2Extension<A, B>(Tuple2.of(a, b));
     }
@@ -18,6 +35,71 @@ public abstract class Extension<A> {
         return new Tuple3Extension<A, B, C>(Tuple3.of(a, b, c));
     }
 
+    /**
+     * Combines any number of extensions.
+     * Extensions missing from the values passed to apply are left untouched.
+     */
+    public static Extension<ExtensionValues> combineAll(Extension<?>... extensions) {
+        return combineAll(Arrays.asList(extensions));
+    }
+
+    public static Extension<ExtensionValues> combineAll(List<Extension<?>> extensions) {
+        return new CombinedExtension(new ArrayList<Extension<?>>(extensions));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A> boolean applyUnchecked(Extension<A> extension, Object value, ObjectNode target) {
+        return extension.applyTo((A) value, target);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A> Map<String, JsonNode> applyUnchecked(Extension<A> extension, Object value) {
+        return extension.apply((A) value);
+    }
+
+    private static class CombinedExtension extends Extension<ExtensionValues> {
+        private final List<Extension<?>> extensions;
+
+        private CombinedExtension(List<Extension<?>> extensions) {
+            this.extensions = extensions;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ExtensionValues extract(ObjectNode node) {
+            ExtensionValues.Builder builder = ExtensionValues.builder();
+            for (Extension<?> extension : extensions) {
+                builder.put((Extension<Object>) extension, extension.extract(node));
+            }
+            return builder.build();
+        }
+
+        @Override
+        public Map<String, JsonNode> apply(ExtensionValues value) {
+            Map<String, JsonNode> builder = MapOps.newHashMap();
+            for (Extension<?> extension : extensions) {
+                if (value.contains(extension)) {
+                    Map<String, JsonNode> map = applyUnchecked(extension, value.get(extension));
+                    if (map != null) {
+                        builder.putAll(map);
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(builder);
+        }
+
+        @Override
+        public boolean applyTo(ExtensionValues value, ObjectNode target) {
+            boolean written = false;
+            for (Extension<?> extension : extensions) {
+                if (value.contains(extension)) {
+                    written |= applyUnchecked(extension, value.get(extension), target);
+                }
+            }
+            return written;
+        }
+    }
+
     private static class Tuple2Extension<A, B> extends Extension<Tuple2<A, B>> {
         private Tuple2<Extension<A>, Extension<B>> delegate;
 
@@ -37,6 +119,12 @@ public abstract class Extension<A> {
             builder.putAll(delegate._2.apply(value._2));
             return Collections.unmodifiableMap(builder);
         }
+
+        @Override
+        public boolean applyTo(Tuple2<A, B> value, ObjectNode target) {
+            boolean written = delegate._1.applyTo(value._1, target);
+            return delegate._2.applyTo(value._2, target) || written;
+        }
     }
 
     private static class Tuple3Extension<A, B, C> extends Extension<Tuple3<A, B, C>> {
@@ -59,5 +147,12 @@ public abstract class Extension<A> {
             builder.putAll(delegate._3.apply(value._3));
             return Collections.unmodifiableMap(builder);
         }
+
+        @Override
+        public boolean applyTo(Tuple3<A, B, C> value, ObjectNode target) {
+            boolean written = delegate._1.applyTo(value._1, target);
+            written = delegate._2.applyTo(value._2, target) || written;
+            return delegate._3.applyTo(value._3, target) || written;
+        }
     }
 }
@@ -0,0 +1,79 @@
+package net.hamnaberg.json.extension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extensions which are decoded while parsing, instead of on first access.
+ * <p/>
+ * The parser calls {@link #decode(Extended)} on the parsed Collection, its items and its template,
+ * so {@link Extended#getExtension(Extension)} answers from the already decoded value.
+ * Immutable and thread-safe once built.
+ */
+public final class ExtensionRegistry {
+    public static final ExtensionRegistry EMPTY = builder().build();
+
+    private final Map<Class<?>, List<Extension<?>>> extensions;
+
+    private ExtensionRegistry(Map<Class<?>, List<Extension<?>>> extensions) {
+        this.extensions = extensions;
+    }
+
+    public boolean isEmpty() {
+        return extensions.isEmpty();
+    }
+
+    public boolean hasExtensions(Class<? extends Extended<?>> type) {
+        return extensions.containsKey(type);
+    }
+
+    public List<Extension<?>> getExtensions(Class<? extends Extended<?>> type) {
+        List<Extension<?>> list = extensions.get(type);
+        return list == null ? Collections.<Extension<?>>emptyList() : list;
+    }
+
+    /**
+     * Decodes all extensions registered for the type of the target.
+     */
+    public void decode(Extended<?> target) {
+        List<Extension<?>> list = extensions.get(target.getClass());
+        if (list != null) {
+            for (Extension<?> extension : list) {
+                target.getExtension(extension);
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final Map<Class<?>, List<Extension<?>>> extensions = new HashMap<Class<?>, List<Extension<?>>>();
+
+        /**
+         * @param type the model type, for instance Collection.class or Item.class
+         * @param extension the extension to decode for objects of that type
+         */
+        public Builder register(Class<? extends Extended<?>> type, Extension<?> extension) {
+            List<Extension<?>> list = extensions.get(type);
+            if (list == null) {
+                list = new ArrayList<Extension<?>>();
+                extensions.put(type, list);
+            }
+            list.add(extension);
+            return this;
+        }
+
+        public ExtensionRegistry build() {
+            Map<Class<?>, List<Extension<?>>> map = new HashMap<Class<?>, List<Extension<?>>>();
+            for (Map.Entry<Class<?>, List<Extension<?>>> entry : extensions.entrySet()) {
+                map.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<Extension<?>>(entry.getValue())));
+            }
+            return new ExtensionRegistry(Collections.unmodifiableMap(map));
+        }
+    }
+}
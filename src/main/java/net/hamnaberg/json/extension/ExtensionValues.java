@@ -0,0 +1,64 @@
+package net.hamnaberg.json.extension;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Values for a set of extensions, keyed by extension.
+ *
+ * @see Extension#combineAll(Extension[])
+ */
+public final class ExtensionValues {
+    private final Map<Extension<?>, Object> values;
+
+    private ExtensionValues(Map<Extension<?>, Object> values) {
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A> A get(Extension<A> extension) {
+        return (A) values.get(extension);
+    }
+
+    public boolean contains(Extension<?> extension) {
+        return values.containsKey(extension);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ExtensionValues that = (ExtensionValues) o;
+
+        return values.equals(that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionValues" + values.values();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final Map<Extension<?>, Object> values = new IdentityHashMap<Extension<?>, Object>();
+
+        public <A> Builder put(Extension<A> extension, A value) {
+            values.put(extension, value);
+            return this;
+        }
+
+        public ExtensionValues build() {
+            return new ExtensionValues(Collections.unmodifiableMap(new IdentityHashMap<Extension<?>, Object>(values)));
+        }
+    }
+}
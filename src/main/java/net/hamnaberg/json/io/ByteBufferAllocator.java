@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out fixed size buffers for encoding, and takes them back when they are released.
+ * <p/>
+ * Implementations must be thread-safe.
+ */
+public abstract class ByteBufferAllocator {
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /**
+     * Pooled heap buffers of {@link #DEFAULT_CHUNK_SIZE} bytes, keeping at most 256 idle buffers.
+     */
+    public static final ByteBufferAllocator DEFAULT = pooled(heap(DEFAULT_CHUNK_SIZE), 256);
+
+    /**
+     * @return a cleared buffer with at least one byte remaining.
+     */
+    public abstract ByteBuffer allocate();
+
+    /**
+     * Gives a buffer back. The caller must not use it afterwards.
+     */
+    public abstract void release(ByteBuffer buffer);
+
+    public static ByteBufferAllocator heap(int chunkSize) {
+        return new Unpooled(chunkSize, false);
+    }
+
+    public static ByteBufferAllocator direct(int chunkSize) {
+        return new Unpooled(chunkSize, true);
+    }
+
+    /**
+     * Reuses released buffers from the given allocator.
+     *
+     * @param maxIdle the number of released buffers to keep; any more are dropped.
+     */
+    public static ByteBufferAllocator pooled(ByteBufferAllocator allocator, int maxIdle) {
+        return new Pooled(allocator, maxIdle);
+    }
+
+    private static class Unpooled extends ByteBufferAllocator {
+        private final int chunkSize;
+        private final boolean direct;
+
+        private Unpooled(int chunkSize, boolean direct) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be positive, was " + chunkSize);
+            }
+            this.chunkSize = chunkSize;
+            this.direct = direct;
+        }
+
+        @Override
+        public ByteBuffer allocate() {
+            return direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+        }
+    }
+
+    private static class Pooled extends ByteBufferAllocator {
+        private final ByteBufferAllocator allocator;
+        private final int maxIdle;
+        private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<ByteBuffer>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        private Pooled(ByteBufferAllocator allocator, int maxIdle) {
+            this.allocator = allocator;
+            this.maxIdle = maxIdle;
+        }
+
+        @Override
+        public ByteBuffer allocate() {
+            ByteBuffer buffer = idle.poll();
+            if (buffer == null) {
+                return allocator.allocate();
+            }
+            idleCount.decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+            if (idleCount.incrementAndGet() <= maxIdle) {
+                idle.offer(buffer);
+            }
+            else {
+                idleCount.decrementAndGet();
+                allocator.release(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects written bytes in a list of buffers from an allocator.
+ * <p/>
+ * Not thread-safe.
+ */
+public final class ByteBufferOutputStream extends OutputStream {
+    private final ByteBufferAllocator allocator;
+    private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+    private ByteBuffer current;
+    private long size;
+    private boolean done;
+
+    public ByteBufferOutputStream(ByteBufferAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureWritable().put((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ByteBuffer buffer = ensureWritable();
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+            size += count;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Hands the written bytes over. The stream can not be used afterwards.
+     */
+    public EncodedBuffers toBuffers() {
+        checkOpen();
+        done = true;
+        ByteBuffer[] result = new ByteBuffer[buffers.size()];
+        for (int i = 0; i < result.length; i++) {
+            ByteBuffer buffer = buffers.get(i);
+            buffer.flip();
+            result[i] = buffer;
+        }
+        return new EncodedBuffers(result, size, allocator);
+    }
+
+    /**
+     * Releases everything written so far. The stream can not be used afterwards.
+     */
+    public void discard() {
+        if (!done) {
+            done = true;
+            for (ByteBuffer buffer : buffers) {
+                allocator.release(buffer);
+            }
+            buffers.clear();
+        }
+    }
+
+    private ByteBuffer ensureWritable() throws IOException {
+        checkOpen();
+        if (current == null || !current.hasRemaining()) {
+            current = allocator.allocate();
+            buffers.add(current);
+        }
+        return current;
+    }
+
+    private void checkOpen() {
+        if (done) {
+            throw new IllegalStateException("Buffers are already handed over");
+        }
+    }
+}
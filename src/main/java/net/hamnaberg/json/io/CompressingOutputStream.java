@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates into the underlying stream with a pooled deflater, optionally with gzip framing.
+ * <p/>
+ * Not thread-safe.
+ */
+public final class CompressingOutputStream extends FilterOutputStream {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int SYNC_FLUSH = 2;
+    private static final Method DEFLATE_WITH_FLUSH = deflateWithFlush();
+
+    private final CompressorPool pool;
+    private final boolean gzip;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[8192];
+    private Deflater deflater;
+
+    CompressingOutputStream(OutputStream out, CompressorPool pool, int level, boolean gzip) throws IOException {
+        super(out);
+        this.pool = pool;
+        this.gzip = gzip;
+        this.deflater = pool.borrowDeflater(level, gzip);
+        if (gzip) {
+            try {
+                out.write(GZIP_HEADER);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        if (len == 0) {
+            return;
+        }
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            drain(deflater.deflate(buffer, 0, buffer.length));
+        }
+        if (gzip) {
+            crc.update(b, off, len);
+        }
+    }
+
+    /**
+     * Writes out everything compressed so far so that it can be decompressed on the other side,
+     * without ending the compressed data.
+     * Needs Java 7 or later; on older runtimes only the already compressed output is written.
+     */
+    public void syncFlush() throws IOException {
+        checkOpen();
+        if (DEFLATE_WITH_FLUSH != null) {
+            int count;
+            do {
+                count = deflateWithFlush(deflater, buffer);
+                drain(count);
+            } while (count == buffer.length);
+        }
+        out.flush();
+    }
+
+    /**
+     * Completes the compressed data and gives the deflater back. Does NOT close the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (deflater == null) {
+            return;
+        }
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(deflater.deflate(buffer, 0, buffer.length));
+            }
+            if (gzip) {
+                writeInt((int) crc.getValue());
+                writeInt(deflater.getTotalIn());
+            }
+            out.flush();
+        } finally {
+            pool.release(deflater, gzip);
+            deflater = null;
+        }
+    }
+
+    /**
+     * Gives the deflater back without completing the compressed data, after a failed write.
+     * Nothing more is written, and the underlying stream is NOT closed.
+     */
+    public void abort() {
+        if (deflater != null) {
+            pool.release(deflater, gzip);
+            deflater = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void drain(int count) throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+
+    private void checkOpen() throws IOException {
+        if (deflater == null) {
+            throw new IOException("Stream is finished");
+        }
+    }
+
+    private static int deflateWithFlush(Deflater deflater, byte[] buffer) throws IOException {
+        try {
+            return (Integer) DEFLATE_WITH_FLUSH.invoke(deflater, buffer, 0, buffer.length, SYNC_FLUSH);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IOException(e.getCause().getMessage());
+        }
+    }
+
+    private static Method deflateWithFlush() {
+        try {
+            return Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * A content coding, gzip or deflate, with its settings.
+ * <p/>
+ * Compressors come from a {@link CompressorPool}, and go back to it when a stream is finished or closed.
+ * <pre>
+ * Compression gzip = Compression.gzip().level(6).syncFlushEvery(100);
+ * collection.writeTo(stream, gzip);
+ * </pre>
+ */
+public final class Compression {
+    private final boolean gzip;
+    private final int level;
+    private final int syncFlushEvery;
+    private final CompressorPool pool;
+
+    private Compression(boolean gzip, int level, int syncFlushEvery, CompressorPool pool) {
+        this.gzip = gzip;
+        this.level = level;
+        this.syncFlushEvery = syncFlushEvery;
+        this.pool = pool;
+    }
+
+    public static Compression gzip() {
+        return new Compression(true, Deflater.DEFAULT_COMPRESSION, 0, CompressorPool.DEFAULT);
+    }
+
+    /**
+     * The zlib format, as used by the HTTP deflate content coding.
+     */
+    public static Compression deflate() {
+        return new Compression(false, Deflater.DEFAULT_COMPRESSION, 0, CompressorPool.DEFAULT);
+    }
+
+    /**
+     * @param level 0-9, or {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public Compression level(int level) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Illegal compression level " + level);
+        }
+        return new Compression(gzip, level, syncFlushEvery, pool);
+    }
+
+    /**
+     * When streaming items, sync-flush the compressed output after this many items, so clients can start reading.
+     * 0 means never.
+     */
+    public Compression syncFlushEvery(int items) {
+        if (items < 0) {
+            throw new IllegalArgumentException("Items must not be negative, was " + items);
+        }
+        return new Compression(gzip, level, items, pool);
+    }
+
+    public Compression pool(CompressorPool pool) {
+        return new Compression(gzip, level, syncFlushEvery, pool);
+    }
+
+    /**
+     * @return "gzip" or "deflate", for the Content-Encoding header.
+     */
+    public String getContentEncoding() {
+        return gzip ? "gzip" : "deflate";
+    }
+
+    public int getSyncFlushEvery() {
+        return syncFlushEvery;
+    }
+
+    /**
+     * Compresses into the stream. {@link CompressingOutputStream#finish() Finish} the result to complete the data
+     * and give the compressor back; closing it also closes the stream.
+     */
+    public CompressingOutputStream compress(OutputStream stream) throws IOException {
+        return new CompressingOutputStream(stream, pool, level, gzip);
+    }
+
+    /**
+     * Decompresses the stream. Close the result to give the decompressor back.
+     */
+    public InputStream decompress(InputStream stream) throws IOException {
+        return gzip ? new GzipInputStream(stream, pool) : new PooledInflaterInputStream(stream, pool, false);
+    }
+}
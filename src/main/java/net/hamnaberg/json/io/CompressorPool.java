@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.io;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A bounded pool of reusable deflaters and inflaters.
+ * <p/>
+ * Each instance holds native memory until it is ended; reusing them avoids allocating it per request.
+ * Instances given back when the pool is full are ended right away.
+ * <p/>
+ * Thread-safe.
+ */
+public final class CompressorPool {
+    public static final CompressorPool DEFAULT = new CompressorPool(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final int maxIdle;
+    private final Pool<Deflater> deflaters = new Pool<Deflater>();
+    private final Pool<Deflater> rawDeflaters = new Pool<Deflater>();
+    private final Pool<Inflater> inflaters = new Pool<Inflater>();
+    private final Pool<Inflater> rawInflaters = new Pool<Inflater>();
+
+    /**
+     * @param maxIdle the number of idle instances kept of each kind.
+     */
+    public CompressorPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @param nowrap true for raw deflate data, as used by gzip; false for zlib data.
+     */
+    public Deflater borrowDeflater(int level, boolean nowrap) {
+        Deflater deflater = (nowrap ? rawDeflaters : deflaters).poll();
+        if (deflater == null) {
+            return new Deflater(level, nowrap);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    public void release(Deflater deflater, boolean nowrap) {
+        deflater.reset();
+        if (!(nowrap ? rawDeflaters : deflaters).offer(deflater, maxIdle)) {
+            deflater.end();
+        }
+    }
+
+    public Inflater borrowInflater(boolean nowrap) {
+        Inflater inflater = (nowrap ? rawInflaters : inflaters).poll();
+        return inflater == null ? new Inflater(nowrap) : inflater;
+    }
+
+    public void release(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (!(nowrap ? rawInflaters : inflaters).offer(inflater, maxIdle)) {
+            inflater.end();
+        }
+    }
+
+    private static class Pool<A> {
+        private final Queue<A> idle = new ConcurrentLinkedQueue<A>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        A poll() {
+            A value = idle.poll();
+            if (value != null) {
+                size.decrementAndGet();
+            }
+            return value;
+        }
+
+        boolean offer(A value, int max) {
+            if (size.incrementAndGet() > max) {
+                size.decrementAndGet();
+                return false;
+            }
+            idle.offer(value);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An encoded document, as a sequence of buffers ready for a gathering write.
+ * <p/>
+ * Call {@link #release()} when done, to give the buffers back to the allocator.
+ */
+public final class EncodedBuffers {
+    private final ByteBuffer[] buffers;
+    private final long size;
+    private final ByteBufferAllocator allocator;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    EncodedBuffers(ByteBuffer[] buffers, long size, ByteBufferAllocator allocator) {
+        this.buffers = buffers;
+        this.size = size;
+        this.allocator = allocator;
+    }
+
+    /**
+     * The buffers, positioned at the remaining bytes. Writing to a channel advances them.
+     */
+    public ByteBuffer[] getBuffers() {
+        checkReleased();
+        return buffers;
+    }
+
+    /**
+     * @return the total number of encoded bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Writes all remaining bytes, using a gathering write if the channel supports it.
+     * Loops until everything is written; non-blocking channels should use {@link #getBuffers()} instead.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        checkReleased();
+        if (channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            int first = 0;
+            while (first < buffers.length) {
+                gathering.write(buffers, first, buffers.length - first);
+                while (first < buffers.length && !buffers[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        }
+        else {
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the buffers to the allocator. Calling this more than once has no effect.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            for (ByteBuffer buffer : buffers) {
+                allocator.release(buffer);
+            }
+        }
+    }
+
+    private void checkReleased() {
+        if (released.get()) {
+            throw new IllegalStateException("Buffers are released");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a single gzip member with a pooled inflater, checking the trailer.
+ */
+final class GzipInputStream extends PooledInflaterInputStream {
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final CRC32 crc = new CRC32();
+    private boolean done;
+
+    GzipInputStream(InputStream in, CompressorPool pool) throws IOException {
+        super(in, pool, true);
+        try {
+            readHeader();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (done) {
+            return -1;
+        }
+        int count = super.read(b, off, len);
+        if (count == -1) {
+            readTrailer();
+            done = true;
+        }
+        else {
+            crc.update(b, off, count);
+        }
+        return count;
+    }
+
+    private void readHeader() throws IOException {
+        if (readByte(in) != 0x1f || readByte(in) != 0x8b) {
+            throw new ZipException("Not in gzip format");
+        }
+        if (readByte(in) != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readByte(in);
+        skip(in, 6);
+        if ((flags & FEXTRA) != 0) {
+            skip(in, readByte(in) | readByte(in) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte(in) != 0) {
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte(in) != 0) {
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(in, 2);
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        int remaining = inf.getRemaining();
+        InputStream trailer = remaining > 0 ? new TrailerStream(buf, len - remaining, remaining, in) : in;
+        long expectedCrc = readInt(trailer) & 0xffffffffL;
+        long expectedSize = readInt(trailer) & 0xffffffffL;
+        if (expectedCrc != crc.getValue()) {
+            throw new ZipException("Corrupt gzip trailer, crc mismatch");
+        }
+        if (expectedSize != (inf.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt gzip trailer, size mismatch");
+        }
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        return readByte(in) | readByte(in) << 8 | readByte(in) << 16 | readByte(in) << 24;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of gzip data");
+        }
+        return b;
+    }
+
+    private static void skip(InputStream in, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readByte(in);
+        }
+    }
+
+    private static class TrailerStream extends InputStream {
+        private final byte[] buffer;
+        private int position;
+        private final int end;
+        private final InputStream rest;
+
+        private TrailerStream(byte[] buffer, int offset, int length, InputStream rest) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.end = offset + length;
+            this.rest = rest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return position < end ? buffer[position++] & 0xff : rest.read();
+        }
+    }
+}
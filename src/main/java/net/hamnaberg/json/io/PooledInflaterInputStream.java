@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Inflates with a pooled inflater, which is given back on close.
+ */
+class PooledInflaterInputStream extends InflaterInputStream {
+    private final CompressorPool pool;
+    private final boolean nowrap;
+    private boolean released;
+
+    PooledInflaterInputStream(InputStream in, CompressorPool pool, boolean nowrap) {
+        super(in, pool.borrowInflater(nowrap), 8192);
+        this.pool = pool;
+        this.nowrap = nowrap;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!released) {
+                released = true;
+                pool.release(inf, nowrap);
+            }
+        }
+    }
+}
@@ -18,7 +18,10 @@ package net.hamnaberg.json.parser;
 
 import net.hamnaberg.json.*;
 import net.hamnaberg.json.Collection;
+import net.hamnaberg.json.extension.ExtensionRegistry;
+import net.hamnaberg.json.io.Compression;
 import net.hamnaberg.json.util.Charsets;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -31,10 +34,45 @@ import java.io.*;
 public class CollectionParser {
 
     private final ObjectMapper mapper = new ObjectMapper();
+    private final ExtensionRegistry registry;
+    private final boolean resolveRelativeHrefs;
+    private final JsonCodec codec;
+
+    public CollectionParser() {
+        this(ExtensionRegistry.EMPTY);
+    }
+
+    /**
+     * @param registry extensions to decode while parsing
+     */
+    public CollectionParser(ExtensionRegistry registry) {
+        this(registry, false, JsonCodec.JACKSON);
+    }
+
+    private CollectionParser(ExtensionRegistry registry, boolean resolveRelativeHrefs, JsonCodec codec) {
+        this.registry = registry;
+        this.resolveRelativeHrefs = resolveRelativeHrefs;
+        this.codec = codec;
+    }
+
+    /**
+     * A parser which resolves relative item, link and query hrefs against the collection href,
+     * as written with {@link WriteOptions.Builder#relativeHrefs()}.
+     */
+    public CollectionParser resolvingRelativeHrefs() {
+        return new CollectionParser(registry, true, codec);
+    }
+
+    /**
+     * A parser which reads json text with the codec, cursors included. Smile is always read by Jackson.
+     */
+    public CollectionParser usingCodec(JsonCodec codec) {
+        return new CollectionParser(registry, resolveRelativeHrefs, codec);
+    }
 
     public Collection parse(Reader reader) throws IOException {
         try {
-            return parse(mapper.readTree(reader));
+            return parse(readTree(reader));
         } finally {
             if (reader != null) {
                 reader.close();
@@ -56,6 +94,31 @@ public class CollectionParser {
         return parse(new BufferedReader(new InputStreamReader(stream, Charsets.UTF_8)));
     }
 
+    /**
+     * Parses a Collection from the given stream in the format. The stream is closed when done.
+     *
+     * @param stream the stream
+     * @param format the format, for instance from {@link DataFormat#fromMediaType(String)}
+     * @return a Collection
+     * @throws IOException
+     */
+    public Collection parse(InputStream stream, DataFormat format) throws IOException {
+        return parse(readTree(stream, format));
+    }
+
+    /**
+     * Parses a Collection from the given compressed stream, decompressing with a pooled inflater.
+     * The stream is closed, and the inflater given back, when done.
+     *
+     * @param stream the compressed stream
+     * @param compression how the stream is compressed
+     * @return a Collection
+     * @throws IOException
+     */
+    public Collection parse(InputStream stream, Compression compression) throws IOException {
+        return parse(compression.decompress(stream));
+    }
+
     /**
      * Parses a Collection from the given String.
      *
@@ -67,9 +130,43 @@ public class CollectionParser {
         return parse(new StringReader(input));
     }
 
+    /**
+     * Opens a cursor over the items of a Collection, without building the Collection.
+     * Closing the cursor closes the reader.
+     *
+     * @param reader the reader
+     * @return an item cursor
+     * @throws IOException
+     */
+    public ItemCursor cursor(Reader reader) throws IOException {
+        return new ItemCursor(createParser(reader), objectFactory);
+    }
+
+    /**
+     * Opens a cursor over the items of a Collection, without building the Collection.
+     * Closing the cursor closes the stream.
+     * <p/>
+     * The stream is expected to be UTF-8 encoded.
+     *
+     * @param stream the stream
+     * @return an item cursor
+     * @throws IOException
+     */
+    public ItemCursor cursor(InputStream stream) throws IOException {
+        return new ItemCursor(createParser(stream, DataFormat.JSON), objectFactory);
+    }
+
+    /**
+     * Opens a cursor over the items of a Collection in the format, without building the Collection.
+     * Closing the cursor closes the stream.
+     */
+    public ItemCursor cursor(InputStream stream, DataFormat format) throws IOException {
+        return new ItemCursor(createParser(stream, format), objectFactory);
+    }
+
     public Template parseTemplate(Reader reader) throws IOException {
         try {
-            return parseTemplate(mapper.readTree(reader));
+            return parseTemplate(readTree(reader));
         } finally {
             if (reader != null) {
                 reader.close();
@@ -91,10 +188,56 @@ public class CollectionParser {
         return parseTemplate(new BufferedReader(new InputStreamReader(stream, Charsets.UTF_8)));
     }
 
+    public Template parseTemplate(InputStream stream, DataFormat format) throws IOException {
+        return parseTemplate(readTree(stream, format));
+    }
+
+    public Template parseTemplate(InputStream stream, Compression compression) throws IOException {
+        return parseTemplate(compression.decompress(stream));
+    }
+
     public Template parseTemplate(String input) throws IOException {
         return parseTemplate(new StringReader(input));
     }
 
+    private JsonNode readTree(Reader reader) throws IOException {
+        return readTree(createParser(reader));
+    }
+
+    private JsonNode readTree(InputStream stream, DataFormat format) throws IOException {
+        return readTree(createParser(stream, format));
+    }
+
+    private JsonNode readTree(JsonParser parser) throws IOException {
+        try {
+            JsonNode node = mapper.readTree(parser);
+            if (node == null) {
+                throw new ParseException("Empty document");
+            }
+            return node;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * A parser for the json text. Closing it closes the reader.
+     */
+    private JsonParser createParser(Reader reader) throws IOException {
+        JsonParser parser = codec.createParser(reader);
+        parser.setCodec(mapper);
+        return parser;
+    }
+
+    /**
+     * A parser for the format. Closing it closes the stream.
+     */
+    private JsonParser createParser(InputStream stream, DataFormat format) throws IOException {
+        JsonParser parser = format == DataFormat.SMILE ? format.getFactory().createParser(stream) : codec.createParser(stream);
+        parser.setCodec(mapper);
+        return parser;
+    }
+
     private Collection parse(JsonNode node) throws ParseException {
         JsonNode collectionNode = node.get("collection");
         if (collectionNode != null) {
@@ -104,15 +247,35 @@ public class CollectionParser {
     }
 
     private Collection parseCollection(JsonNode collectionNode) {
+        if (resolveRelativeHrefs && collectionNode.isObject()) {
+            RelativeHrefs.resolveAll((ObjectNode) collectionNode);
+        }
         Collection c = objectFactory.createCollection((ObjectNode) collectionNode);
         c.validate();
+        if (!registry.isEmpty()) {
+            decode(c);
+        }
         return c;
     }
 
+    private void decode(Collection c) {
+        registry.decode(c);
+        if (registry.hasExtensions(Item.class)) {
+            for (Item item : c.getItems()) {
+                registry.decode(item);
+            }
+        }
+        for (Template template : c.getTemplate()) {
+            registry.decode(template);
+        }
+    }
+
     private Template parseTemplate(JsonNode collectionNode) throws ParseException {
         JsonNode node = collectionNode.get("template");
         if (node != null) {
-            return objectFactory.createTemplate((ObjectNode) node);
+            Template template = objectFactory.createTemplate((ObjectNode) node);
+            registry.decode(template);
+            return template;
         }
         throw new ParseException("Missing \"template\" property");
     }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import net.hamnaberg.json.InternalObjectFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streams the items of a vnd.collection+json document one at a time.
+ * <p/>
+ * Everything before the "items" array is skipped, and reading stops when the array ends.
+ * The cursor has a single {@link ItemView} which is refilled on every call to {@link #next()}.
+ * <p/>
+ * Not thread-safe.
+ */
+public final class ItemCursor implements Closeable {
+    private final JsonParser parser;
+    private final ItemView view;
+    private boolean positioned;
+    private boolean done;
+
+    ItemCursor(JsonParser parser, InternalObjectFactory factory) {
+        this.parser = parser;
+        this.view = new ItemView(factory);
+    }
+
+    /**
+     * Advances to the next item.
+     *
+     * @return false if there are no more items.
+     * @throws IOException if the document could not be read
+     */
+    public boolean next() throws IOException {
+        if (done) {
+            return false;
+        }
+        if (!positioned) {
+            positioned = true;
+            if (!seekItems()) {
+                done = true;
+                return false;
+            }
+        }
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_OBJECT) {
+            view.read(parser);
+            return true;
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw new ParseException("Expected an item object, but got " + token);
+        }
+        done = true;
+        return false;
+    }
+
+    /**
+     * @return the current item. Only valid until the next call to {@link #next()}.
+     */
+    public ItemView getItem() {
+        if (!positioned || done) {
+            throw new IllegalStateException("Cursor is not positioned on an item");
+        }
+        return view;
+    }
+
+    public void close() throws IOException {
+        done = true;
+        parser.close();
+    }
+
+    private boolean seekItems() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new ParseException("Expected a json object");
+        }
+        if (!seekField("collection", JsonToken.START_OBJECT)) {
+            throw new ParseException("Missing \"collection\" property");
+        }
+        return seekField("items", JsonToken.START_ARRAY);
+    }
+
+    private boolean seekField(String name, JsonToken expected) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (name.equals(field)) {
+                if (token != expected) {
+                    throw new ParseException(String.format("Expected \"%s\" to start with %s, but got %s", name, expected, token));
+                }
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,575 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.hamnaberg.json.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.hamnaberg.json.InternalObjectFactory;
+import net.hamnaberg.json.Item;
+import net.hamnaberg.json.Value;
+import net.hamnaberg.json.ValueFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutable view of the current item of an {@link ItemCursor}.
+ * <p/>
+ * The same instance is refilled every time the cursor advances, so the contents are only valid
+ * until the next call to {@link ItemCursor#next()}. Use {@link #snapshot()} to keep an item.
+ * <p/>
+ * Scalar values are stored as primitives. Property names, prompts and link attributes are reused
+ * from the previous item when they are equal, so homogeneous streams do not create new strings for them.
+ * Array, object and very large integer values are read as json nodes.
+ */
+public final class ItemView {
+    private static final int NONE = 0;
+    private static final int STRING = 1;
+    private static final int LONG = 2;
+    private static final int DOUBLE = 3;
+    private static final int BOOLEAN = 4;
+    private static final int NULL = 5;
+    private static final int NODE = 6;
+
+    private final InternalObjectFactory factory;
+
+    private String href;
+    private ObjectNode extra;
+
+    private int size;
+    private String[] names = new String[8];
+    private String[] prompts = new String[8];
+    private int[] types = new int[8];
+    private String[] strings = new String[8];
+    private long[] longs = new long[8];
+    private double[] doubles = new double[8];
+    private JsonNode[] nodes = new JsonNode[8];
+    private String[] nodeFields = new String[8];
+    private ObjectNode[] propertyExtras = new ObjectNode[8];
+
+    private int linkCount;
+    private String[] linkHrefs = new String[4];
+    private String[] linkRels = new String[4];
+    private String[] linkPrompts = new String[4];
+    private String[] linkNames = new String[4];
+    private String[] linkRenders = new String[4];
+    private ObjectNode[] linkExtras = new ObjectNode[4];
+
+    ItemView(InternalObjectFactory factory) {
+        this.factory = factory;
+    }
+
+    public boolean hasHref() {
+        return href != null;
+    }
+
+    /**
+     * @return the href as it appears in the document, or null.
+     */
+    public String getRawHref() {
+        return href;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param name property name
+     * @return the index of the first property with the given name, or -1
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (name.equals(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getName(int index) {
+        return names[check(index)];
+    }
+
+    public String getPrompt(int index) {
+        return prompts[check(index)];
+    }
+
+    public boolean hasValue(int index) {
+        int type = types[check(index)];
+        return type != NONE && !(type == NODE && !"value".equals(nodeFields[index]));
+    }
+
+    public boolean hasArray(int index) {
+        return types[check(index)] == NODE && "array".equals(nodeFields[index]);
+    }
+
+    public boolean hasObject(int index) {
+        return types[check(index)] == NODE && "object".equals(nodeFields[index]);
+    }
+
+    public boolean isString(int index) {
+        return types[check(index)] == STRING;
+    }
+
+    public boolean isNumeric(int index) {
+        int type = types[check(index)];
+        return type == LONG || type == DOUBLE || (type == NODE && nodes[index].isNumber());
+    }
+
+    public boolean isBoolean(int index) {
+        return types[check(index)] == BOOLEAN;
+    }
+
+    public boolean isNull(int index) {
+        return types[check(index)] == NULL;
+    }
+
+    public String getString(int index) {
+        switch (types[check(index)]) {
+            case STRING:
+                return strings[index];
+            case LONG:
+                return String.valueOf(longs[index]);
+            case DOUBLE:
+                return String.valueOf(doubles[index]);
+            case BOOLEAN:
+                return String.valueOf(longs[index] != 0);
+            case NODE:
+                return nodes[index].asText();
+            default:
+                return null;
+        }
+    }
+
+    public long getLong(int index) {
+        switch (types[check(index)]) {
+            case LONG:
+                return longs[index];
+            case DOUBLE:
+                return (long) doubles[index];
+            case NODE:
+                if (nodes[index].isNumber()) {
+                    return nodes[index].longValue();
+                }
+                break;
+        }
+        throw new IllegalStateException(String.format("Property %s is not numeric", names[index]));
+    }
+
+    public double getDouble(int index) {
+        switch (types[check(index)]) {
+            case LONG:
+                return longs[index];
+            case DOUBLE:
+                return doubles[index];
+            case NODE:
+                if (nodes[index].isNumber()) {
+                    return nodes[index].doubleValue();
+                }
+                break;
+        }
+        throw new IllegalStateException(String.format("Property %s is not numeric", names[index]));
+    }
+
+    public boolean getBoolean(int index) {
+        if (types[check(index)] != BOOLEAN) {
+            throw new IllegalStateException(String.format("Property %s is not a boolean", names[index]));
+        }
+        return longs[index] != 0;
+    }
+
+    /**
+     * Allocates; the array is converted to values.
+     */
+    public List<Value> getArray(int index) {
+        if (!hasArray(index)) {
+            return Collections.emptyList();
+        }
+        List<Value> values = new ArrayList<Value>(nodes[index].size());
+        for (JsonNode node : nodes[index]) {
+            values.add(ValueFactory.createValue(node));
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Allocates; the object is converted to values.
+     */
+    public Map<String, Value> getObject(int index) {
+        if (!hasObject(index)) {
+            return Collections.emptyMap();
+        }
+        Map<String, Value> values = new LinkedHashMap<String, Value>();
+        Iterator<Map.Entry<String, JsonNode>> fields = nodes[index].fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            values.put(field.getKey(), ValueFactory.createValue(field.getValue()));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    public String getString(String name) {
+        int index = indexOf(name);
+        return index == -1 ? null : getString(index);
+    }
+
+    public long getLong(String name) {
+        return getLong(existing(name));
+    }
+
+    public double getDouble(String name) {
+        return getDouble(existing(name));
+    }
+
+    public boolean getBoolean(String name) {
+        return getBoolean(existing(name));
+    }
+
+    public int getLinkCount() {
+        return linkCount;
+    }
+
+    public String getLinkHref(int index) {
+        return linkHrefs[checkLink(index)];
+    }
+
+    public String getLinkRel(int index) {
+        return linkRels[checkLink(index)];
+    }
+
+    public String getLinkPrompt(int index) {
+        return linkPrompts[checkLink(index)];
+    }
+
+    public String getLinkName(int index) {
+        return linkNames[checkLink(index)];
+    }
+
+    public String getLinkRender(int index) {
+        return linkRenders[checkLink(index)];
+    }
+
+    /**
+     * Copies the current contents into an immutable Item.
+     *
+     * @return a new Item, equal to the one the tree based parser would create.
+     */
+    public Item snapshot() {
+        JsonNodeFactory nf = JsonNodeFactory.instance;
+        ObjectNode node = nf.objectNode();
+        if (href != null) {
+            node.put("href", href);
+        }
+        if (size > 0) {
+            ArrayNode data = node.putArray("data");
+            for (int i = 0; i < size; i++) {
+                ObjectNode property = data.addObject();
+                putIfNotNull(property, "name", names[i]);
+                putIfNotNull(property, "prompt", prompts[i]);
+                switch (types[i]) {
+                    case STRING:
+                        property.put("value", strings[i]);
+                        break;
+                    case LONG:
+                        if (longs[i] >= Integer.MIN_VALUE && longs[i] <= Integer.MAX_VALUE) {
+                            property.put("value", (int) longs[i]);
+                        }
+                        else {
+                            property.put("value", longs[i]);
+                        }
+                        break;
+                    case DOUBLE:
+                        property.put("value", doubles[i]);
+                        break;
+                    case BOOLEAN:
+                        property.put("value", longs[i] != 0);
+                        break;
+                    case NULL:
+                        property.putNull("value");
+                        break;
+                    case NODE:
+                        property.put(nodeFields[i], nodes[i]);
+                        break;
+                }
+                if (propertyExtras[i] != null) {
+                    property.putAll(propertyExtras[i]);
+                }
+            }
+        }
+        if (linkCount > 0) {
+            ArrayNode links = node.putArray("links");
+            for (int i = 0; i < linkCount; i++) {
+                ObjectNode link = links.addObject();
+                putIfNotNull(link, "href", linkHrefs[i]);
+                putIfNotNull(link, "rel", linkRels[i]);
+                putIfNotNull(link, "prompt", linkPrompts[i]);
+                putIfNotNull(link, "name", linkNames[i]);
+                putIfNotNull(link, "render", linkRenders[i]);
+                if (linkExtras[i] != null) {
+                    link.putAll(linkExtras[i]);
+                }
+            }
+        }
+        if (extra != null) {
+            node.putAll(extra);
+        }
+        return factory.createItem(node);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ItemView with href %s, %s properties and %s links", href, size, linkCount);
+    }
+
+    void read(JsonParser parser) throws IOException {
+        href = null;
+        extra = null;
+        size = 0;
+        linkCount = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("href".equals(field) && token == JsonToken.VALUE_STRING) {
+                href = parser.getText();
+            }
+            else if ("data".equals(field) && token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == JsonToken.START_OBJECT) {
+                        readProperty(parser);
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            else if ("links".equals(field) && token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == JsonToken.START_OBJECT) {
+                        readLink(parser);
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            else {
+                if (extra == null) {
+                    extra = JsonNodeFactory.instance.objectNode();
+                }
+                extra.put(field, parser.<JsonNode>readValueAsTree());
+            }
+        }
+    }
+
+    private void readProperty(JsonParser parser) throws IOException {
+        if (size == names.length) {
+            growProperties();
+        }
+        int i = size++;
+        String name = null, prompt = null;
+        types[i] = NONE;
+        strings[i] = null;
+        nodes[i] = null;
+        nodeFields[i] = null;
+        propertyExtras[i] = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("name".equals(field) && token == JsonToken.VALUE_STRING) {
+                name = reuse(parser, names[i]);
+            }
+            else if ("prompt".equals(field) && token == JsonToken.VALUE_STRING) {
+                prompt = reuse(parser, prompts[i]);
+            }
+            else if ("value".equals(field) && token != JsonToken.START_ARRAY && token != JsonToken.START_OBJECT) {
+                readScalar(parser, token, i);
+            }
+            else if (("array".equals(field) && token == JsonToken.START_ARRAY) || ("object".equals(field) && token == JsonToken.START_OBJECT)) {
+                types[i] = NODE;
+                nodeFields[i] = field;
+                nodes[i] = parser.readValueAsTree();
+            }
+            else {
+                if (propertyExtras[i] == null) {
+                    propertyExtras[i] = JsonNodeFactory.instance.objectNode();
+                }
+                propertyExtras[i].put(field, parser.<JsonNode>readValueAsTree());
+            }
+        }
+        names[i] = name;
+        prompts[i] = prompt;
+    }
+
+    private void readScalar(JsonParser parser, JsonToken token, int i) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                types[i] = STRING;
+                strings[i] = parser.getText();
+                break;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    types[i] = NODE;
+                    nodeFields[i] = "value";
+                    nodes[i] = parser.readValueAsTree();
+                }
+                else {
+                    types[i] = LONG;
+                    longs[i] = parser.getLongValue();
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                types[i] = DOUBLE;
+                doubles[i] = parser.getDoubleValue();
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                types[i] = BOOLEAN;
+                longs[i] = token == JsonToken.VALUE_TRUE ? 1 : 0;
+                break;
+            default:
+                types[i] = NULL;
+        }
+    }
+
+    private void readLink(JsonParser parser) throws IOException {
+        if (linkCount == linkHrefs.length) {
+            growLinks();
+        }
+        int i = linkCount++;
+        String href = null, rel = null, prompt = null, name = null, render = null;
+        linkExtras[i] = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.VALUE_STRING) {
+                if (linkExtras[i] == null) {
+                    linkExtras[i] = JsonNodeFactory.instance.objectNode();
+                }
+                linkExtras[i].put(field, parser.<JsonNode>readValueAsTree());
+            }
+            else if ("href".equals(field)) {
+                href = parser.getText();
+            }
+            else if ("rel".equals(field)) {
+                rel = reuse(parser, linkRels[i]);
+            }
+            else if ("prompt".equals(field)) {
+                prompt = reuse(parser, linkPrompts[i]);
+            }
+            else if ("name".equals(field)) {
+                name = reuse(parser, linkNames[i]);
+            }
+            else if ("render".equals(field)) {
+                render = reuse(parser, linkRenders[i]);
+            }
+            else {
+                if (linkExtras[i] == null) {
+                    linkExtras[i] = JsonNodeFactory.instance.objectNode();
+                }
+                linkExtras[i].put(field, parser.getText());
+            }
+        }
+        linkHrefs[i] = href;
+        linkRels[i] = rel;
+        linkPrompts[i] = prompt;
+        linkNames[i] = name;
+        linkRenders[i] = render;
+    }
+
+    /**
+     * Returns the previous string if the current text token is equal to it, without creating a new String.
+     */
+    private static String reuse(JsonParser parser, String previous) throws IOException {
+        if (previous != null) {
+            int length = parser.getTextLength();
+            if (length == previous.length()) {
+                char[] chars = parser.getTextCharacters();
+                int offset = parser.getTextOffset();
+                boolean equal = true;
+                for (int i = 0; i < length && equal; i++) {
+                    equal = chars[offset + i] == previous.charAt(i);
+                }
+                if (equal) {
+                    return previous;
+                }
+            }
+        }
+        return parser.getText();
+    }
+
+    private void growProperties() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        prompts = Arrays.copyOf(prompts, capacity);
+        types = Arrays.copyOf(types, capacity);
+        strings = Arrays.copyOf(strings, capacity);
+        longs = Arrays.copyOf(longs, capacity);
+        doubles = Arrays.copyOf(doubles, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+        nodeFields = Arrays.copyOf(nodeFields, capacity);
+        propertyExtras = Arrays.copyOf(propertyExtras, capacity);
+    }
+
+    private void growLinks() {
+        int capacity = linkHrefs.length * 2;
+        linkHrefs = Arrays.copyOf(linkHrefs, capacity);
+        linkRels = Arrays.copyOf(linkRels, capacity);
+        linkPrompts = Arrays.copyOf(linkPrompts, capacity);
+        linkNames = Arrays.copyOf(linkNames, capacity);
+        linkRenders = Arrays.copyOf(linkRenders, capacity);
+        linkExtras = Arrays.copyOf(linkExtras, capacity);
+    }
+
+    private int existing(String name) {
+        int index = indexOf(name);
+        if (index == -1) {
+            throw new IllegalArgumentException(String.format("No property named %s", name));
+        }
+        return index;
+    }
+
+    private int check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Property index %s, size %s", index, size));
+        }
+        return index;
+    }
+
+    private int checkLink(int index) {
+        if (index < 0 || index >= linkCount) {
+            throw new IndexOutOfBoundsException(String.format("Link index %s, size %s", index, linkCount));
+        }
+        return index;
+    }
+
+    private static void putIfNotNull(ObjectNode node, String field, String value) {
+        if (value != null) {
+            node.put(field, value);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012 Erlend Hamnaberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.hamnaberg.json.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Resolves relative hrefs of a freshly parsed collection against its href.
+ * <p/>
+ * Plain relative paths and uri templates are joined to the base as strings.
+ * Anything else is resolved with {@link URI#resolve(String)}, which can not parse templates.
+ */
+final class RelativeHrefs {
+    private final URI base;
+    private final String origin;
+    private final String path;
+
+    RelativeHrefs(URI base) {
+        this.base = base;
+        String rawPath = base.getRawPath();
+        this.origin = base.getRawAuthority() == null || rawPath == null ? null : base.getScheme() + "://" + base.getRawAuthority();
+        this.path = rawPath == null || rawPath.isEmpty() ? "/" : rawPath;
+    }
+
+    /**
+     * Resolves the hrefs of the items, their links, and the links and queries of the collection, in place.
+     * Only for trees which are not yet wrapped by model objects.
+     */
+    static void resolveAll(ObjectNode collection) {
+        JsonNode href = collection.get("href");
+        if (href == null || !href.isTextual()) {
+            return;
+        }
+        URI base;
+        try {
+            base = new URI(href.textValue());
+        } catch (URISyntaxException e) {
+            return;
+        }
+        if (!base.isAbsolute() || base.isOpaque()) {
+            return;
+        }
+        RelativeHrefs hrefs = new RelativeHrefs(base);
+        hrefs.resolveEach(collection.get("links"));
+        hrefs.resolveEach(collection.get("queries"));
+        JsonNode items = collection.get("items");
+        if (items != null) {
+            for (int i = 0; i < items.size(); i++) {
+                hrefs.resolveHref(items.get(i));
+                hrefs.resolveEach(items.get(i).get("links"));
+            }
+        }
+    }
+
+    /**
+     * @return the href resolved against the base, or the href itself if it is absolute or can not be resolved.
+     */
+    String resolve(String href) {
+        if (hasColonInFirstSegment(href)) {
+            // a scheme, or not a valid relative reference (RFC 3986 section 4.2)
+            return href;
+        }
+        boolean template = href.indexOf('{') >= 0;
+        if (origin != null && (template || isPlainPath(href))) {
+            return join(href);
+        }
+        if (template) {
+            return href;
+        }
+        try {
+            return base.resolve(href).toString();
+        } catch (IllegalArgumentException e) {
+            return href;
+        }
+    }
+
+    private String join(String href) {
+        if (href.startsWith("//")) {
+            return base.getScheme() + ":" + href;
+        }
+        if (href.startsWith("/")) {
+            return origin + href;
+        }
+        if (href.startsWith("?")) {
+            return origin + path + href;
+        }
+        if (href.startsWith("#")) {
+            return origin + path + (base.getRawQuery() == null ? "" : "?" + base.getRawQuery()) + href;
+        }
+        return origin + path.substring(0, path.lastIndexOf('/') + 1) + href;
+    }
+
+    private void resolveEach(JsonNode array) {
+        if (array != null) {
+            for (int i = 0; i < array.size(); i++) {
+                resolveHref(array.get(i));
+            }
+        }
+    }
+
+    private void resolveHref(JsonNode node) {
+        JsonNode href = node.get("href");
+        if (node.isObject() && href != null && href.isTextual()) {
+            String resolved = resolve(href.textValue());
+            if (!resolved.equals(href.textValue())) {
+                ((ObjectNode) node).put("href", resolved);
+            }
+        }
+    }
+
+    /**
+     * @return true if the href is a relative path without an authority or dot segments.
+     */
+    private static boolean isPlainPath(String href) {
+        if (href.isEmpty()) {
+            return false;
+        }
+        char first = href.charAt(0);
+        return first != '/' && first != '?' && first != '#' && first != '.' && !href.contains("/.");
+    }
+
+    private static boolean hasColonInFirstSegment(String href) {
+        for (int i = 0; i < href.length(); i++) {
+            char c = href.charAt(i);
+            if (c == ':') {
+                return true;
+            }
+            if (c == '/' || c == '?' || c == '#' || c == '{') {
+                return false;
+            }
+        }
+        return false;
+    }
+}
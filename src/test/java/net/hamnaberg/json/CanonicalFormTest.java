@@ -0,0 +1,68 @@
+package net.hamnaberg.json;
+
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CanonicalFormTest {
+
+    @Test
+    public void sortsKeysAndNormalizesNumbers() throws Exception {
+        Collection a = new CollectionParser().parse("{\"collection\":{\"version\":\"1.0\",\"href\":\"http://example.com/\",\"items\":[{\"href\":\"http://example.com/1\",\"data\":[{\"value\":1.50,\"name\":\"price\"}]}]}}");
+        Collection b = new CollectionParser().parse("{\"collection\":{\"items\":[{\"data\":[{\"name\":\"price\",\"value\":1.5}],\"href\":\"http://example.com/1\"}],\"href\":\"http://example.com/\",\"version\":\"1.0\"}}");
+        CanonicalForm form = a.toCanonicalForm();
+        assertEquals("{\"collection\":{\"href\":\"http://example.com/\",\"items\":[{\"data\":[{\"name\":\"price\",\"value\":1.5}],\"href\":\"http://example.com/1\"}],\"version\":\"1.0\"}}",
+                new String(form.toByteArray(), "UTF-8"));
+        assertEquals(form.getETag(), b.toCanonicalForm().getETag());
+    }
+
+    @Test
+    public void etagIsComputedWhileWriting() throws Exception {
+        Collection collection = Collection.builder(URI.create("http://example.com/")).addItem(
+                Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("n", new BigDecimal("2.000")), Property.value("d", 3.0)))
+        ).build();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        String etag = collection.writeCanonicalTo(stream);
+        CanonicalForm form = collection.toCanonicalForm();
+        assertEquals(form.getETag(), etag);
+        assertEquals(new String(form.toByteArray(), "UTF-8"), stream.toString("UTF-8"));
+        assertTrue(stream.toString("UTF-8").contains("\"value\":2}"));
+        assertTrue(stream.toString("UTF-8").contains("\"value\":3}"));
+        assertEquals(66, etag.length());
+    }
+
+    @Test
+    public void matchesIfNoneMatch() {
+        CanonicalForm form = Collection.builder(URI.create("http://example.com/")).build().toCanonicalForm();
+        assertTrue(form.matches(form.getETag()));
+        assertTrue(form.matches("\"other\", W/" + form.getETag()));
+        assertTrue(form.matches("*"));
+        assertFalse(form.matches("\"other\""));
+        assertFalse(form.matches(null));
+    }
+
+    @Test
+    public void cacheIsBoundedAndKeyedByIdentity() {
+        CanonicalCache cache = new CanonicalCache(2);
+        Collection first = Collection.builder(URI.create("http://example.com/1")).build();
+        Collection second = Collection.builder(URI.create("http://example.com/2")).build();
+        Collection third = Collection.builder(URI.create("http://example.com/3")).build();
+        CanonicalForm form = cache.get(first);
+        assertSame(form, cache.get(first));
+        assertNotSame(form, cache.get(Collection.builder(URI.create("http://example.com/1")).build()));
+        cache.get(second);
+        cache.get(third);
+        assertEquals(2, cache.size());
+        assertEquals(null, cache.getIfPresent(first));
+    }
+}
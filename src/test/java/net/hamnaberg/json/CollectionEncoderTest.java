@@ -0,0 +1,64 @@
+package net.hamnaberg.json;
+
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CollectionEncoderTest {
+
+    @Test
+    public void sameBytesAsWriteTo() throws Exception {
+        Collection collection = new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        collection.writeTo(expected);
+        assertArrayEquals(expected.toByteArray(), drain(CollectionEncoder.create(collection), 7));
+    }
+
+    @Test
+    public void sameBytesAsCollectionWriter() throws Exception {
+        Collection envelope = Collection.builder(URI.create("http://example.com/"))
+                .addLink(Link.create(URI.create("http://example.com/next"), "next"))
+                .addItem(Item.create(URI.create("http://example.com/0"), Arrays.asList(Property.value("n", 0))))
+                .build();
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 1; i < 50; i++) {
+            items.add(Item.create(URI.create("http://example.com/" + i), Arrays.asList(Property.value("n", i))));
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        CollectionWriter writer = CollectionWriter.create(expected);
+        writer.write(envelope, items.iterator());
+        writer.close();
+        assertArrayEquals(expected.toByteArray(), drain(CollectionEncoder.create(envelope, items.iterator()), 64));
+    }
+
+    @Test
+    public void reportsDoneWhenBufferFillsExactly() throws Exception {
+        Collection collection = Collection.builder(URI.create("http://example.com/")).build();
+        int size = collection.toString().getBytes("UTF-8").length;
+        CollectionEncoder encoder = CollectionEncoder.create(collection);
+        assertFalse(encoder.next(ByteBuffer.allocate(size)));
+    }
+
+    private static byte[] drain(CollectionEncoder encoder, int bufferSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        boolean more;
+        do {
+            buffer.clear();
+            more = encoder.next(buffer);
+            buffer.flip();
+            out.write(buffer.array(), 0, buffer.limit());
+        } while (more);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,82 @@
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import net.hamnaberg.json.extension.Extension;
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CollectionSkeletonTest {
+
+    @Test
+    public void writesSameBytesAsFullCollection() throws Exception {
+        Collection prototype = new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        prototype = prototype.asTransient()
+                .addQuery(Query.create(URI.create("http://example.com/search"), "search", net.hamnaberg.funclite.Optional.<String>none(), Arrays.asList(Property.template("q"))))
+                .withTemplate(Template.create(Arrays.asList(Property.template("name"))))
+                .persistent();
+        CollectionSkeleton skeleton = CollectionSkeleton.compile(prototype);
+
+        URI href = URI.create("http://example.com/sider/blåbær?q=a/b");
+        List<Item> items = Arrays.asList(
+                Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("name", "one"))),
+                Item.create(URI.create("http://example.com/2"), Arrays.asList(Property.value("name", "two"))).memoize()
+        );
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        skeleton.writeTo(stream, href, items);
+
+        Collection expected = Collection.create(href, prototype.getLinks(), items, prototype.getQueries(), prototype.getTemplate().get(), null);
+        assertEquals(expected.toString(), stream.toString("UTF-8"));
+    }
+
+    @Test
+    public void emptyItemsAreLeftOut() throws Exception {
+        Collection prototype = Collection.builder(URI.create("http://example.com/")).build();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        CollectionSkeleton.compile(prototype).writeTo(stream, Collections.<Item>emptyList().iterator());
+        assertEquals(prototype.toString(), stream.toString("UTF-8"));
+    }
+
+    @Test
+    public void extensionFieldsAreKept() throws Exception {
+        URI href = URI.create("http://example.com/");
+        Extension<String> beta = new Extension<String>() {
+            @Override
+            public String extract(ObjectNode node) {
+                return node.has("beta") ? node.get("beta").asText() : null;
+            }
+
+            @Override
+            public Map<String, JsonNode> apply(String value) {
+                return Collections.<String, JsonNode>singletonMap("beta", new TextNode(value));
+            }
+        };
+        Collection prototype = Collection.builder(href)
+                .addLink(Link.create(URI.create("http://example.com/feed"), "alternate"))
+                .withTemplate(Template.create(Arrays.asList(Property.template("name"))))
+                .build()
+                .apply("yes", beta);
+        List<Item> items = Arrays.asList(Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("name", "one"))));
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        CollectionSkeleton.compile(prototype).writeTo(stream, items.iterator());
+
+        Collection expected = Collection.create(href, prototype.getLinks(), items, prototype.getQueries(), prototype.getTemplate().get(), null)
+                .apply("yes", beta);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        expected.writeTo(written);
+        assertArrayEquals(written.toByteArray(), stream.toByteArray());
+        assertEquals("yes", prototype.getExtension(beta));
+    }
+}
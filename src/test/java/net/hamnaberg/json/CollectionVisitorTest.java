@@ -0,0 +1,113 @@
+package net.hamnaberg.json;
+
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CollectionVisitorTest {
+
+    @Test
+    public void visitsParsedCollection() throws Exception {
+        Collection collection = new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        RecordingVisitor visitor = new RecordingVisitor();
+        collection.accept(visitor);
+        assertEquals(Arrays.asList(
+                "start http://example.org/friends/",
+                "link feed", "link queries", "link template",
+                "item http://example.org/friends/jdoe",
+                "property full-name VALUE", "string J. Doe", "end",
+                "property email VALUE", "string jdoe@example.org", "end",
+                "link blog", "link avatar",
+                "item end",
+                "end collection"
+        ), visitor.events);
+    }
+
+    @Test
+    public void visitsPrimitiveValues() {
+        Item item = Item.create(URI.create("http://example.com/1"), Arrays.asList(
+                Property.value("count", 42),
+                Property.value("ratio", 0.5),
+                Property.value("active", true),
+                Property.template("empty"),
+                Property.arrayObject("tags", Arrays.<Object>asList("a", 1))
+        ));
+        RecordingVisitor visitor = new RecordingVisitor();
+        item.accept(visitor);
+        assertEquals(Arrays.asList(
+                "item http://example.com/1",
+                "property count VALUE", "long 42", "end",
+                "property ratio VALUE", "double 0.5", "end",
+                "property active VALUE", "boolean true", "end",
+                "property empty EMPTY", "end",
+                "property tags ARRAY", "string a", "long 1", "end",
+                "item end"
+        ), visitor.events);
+    }
+
+    private static class RecordingVisitor extends CollectionVisitor {
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void visitCollectionStart(String version, String href) {
+            events.add("start " + href);
+        }
+
+        @Override
+        public void visitCollectionEnd() {
+            events.add("end collection");
+        }
+
+        @Override
+        public void visitLink(String href, String rel, String prompt, String name, String render) {
+            events.add("link " + rel);
+        }
+
+        @Override
+        public void visitItemStart(String href) {
+            events.add("item " + href);
+        }
+
+        @Override
+        public void visitItemEnd() {
+            events.add("item end");
+        }
+
+        @Override
+        public void visitProperty(String name, String prompt, PropertyKind kind) {
+            events.add("property " + name + " " + kind);
+        }
+
+        @Override
+        public void visitPropertyEnd() {
+            events.add("end");
+        }
+
+        @Override
+        public void visitString(String value) {
+            events.add("string " + value);
+        }
+
+        @Override
+        public void visitLong(long value) {
+            events.add("long " + value);
+        }
+
+        @Override
+        public void visitDouble(double value) {
+            events.add("double " + value);
+        }
+
+        @Override
+        public void visitBoolean(boolean value) {
+            events.add("boolean " + value);
+        }
+    }
+}
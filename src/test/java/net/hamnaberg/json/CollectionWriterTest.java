@@ -0,0 +1,138 @@
+package net.hamnaberg.json;
+
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CollectionWriterTest {
+
+    @Test
+    public void writesEnvelopeThenStreamedItems() throws Exception {
+        Collection parsed = new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        Collection envelope = parsed.withMutations(new Mutation<Collection.Transient>() {
+            @Override
+            public void apply(Collection.Transient mutable) {
+                mutable.removeItems(new net.hamnaberg.funclite.Predicate<Item>() {
+                    @Override
+                    public boolean apply(Item input) {
+                        return true;
+                    }
+                });
+            }
+        });
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        CollectionWriter writer = CollectionWriter.create(stream);
+        writer.write(envelope, parsed.getItems().iterator());
+        writer.close();
+
+        Collection written = new CollectionParser().parse(stream.toString("UTF-8"));
+        assertEquals(parsed, written);
+    }
+
+    @Test
+    public void pushesItemsOneAtATime() throws Exception {
+        List<Item> items = new ArrayList<Item>();
+        StringWriter out = new StringWriter();
+        CollectionWriter writer = CollectionWriter.create(out);
+        writer.start(Collection.builder(URI.create("http://example.com/")).build());
+        for (int i = 0; i < 3; i++) {
+            Item item = Item.create(URI.create("http://example.com/" + i), Arrays.asList(Property.value("n", i)));
+            items.add(item);
+            writer.writeItem(item);
+        }
+        writer.finish();
+        writer.close();
+
+        Collection written = new CollectionParser().parse(out.toString());
+        assertEquals(items.size(), written.getItems().size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(items.get(i).getHref(), written.getItems().get(i).getHref());
+        }
+        assertEquals(URI.create("http://example.com/"), written.getHref().get());
+    }
+
+    @Test
+    public void startFlushesTheEnvelope() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CollectionWriter writer = CollectionWriter.create(out);
+        writer.start(Collection.builder(URI.create("http://example.com/")).build());
+        assertEquals("{\"collection\":{\"version\":\"1.0\",\"href\":\"http://example.com/\",\"items\":[", out.toString("UTF-8"));
+        writer.finish();
+    }
+
+    @Test
+    public void closeDoesNotCompleteAnUnfinishedDocument() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CollectionWriter writer = CollectionWriter.create(out);
+        writer.start(Collection.builder(URI.create("http://example.com/")).build());
+        writer.writeItem(Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("n", 1))));
+        writer.close();
+        assertEquals("{\"collection\":{\"version\":\"1.0\",\"href\":\"http://example.com/\",\"items\":[", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void closeAfterAFailedItemWritesNothingMore() throws Exception {
+        FailingStream out = new FailingStream(100);
+        CollectionWriter writer = CollectionWriter.create(out);
+        try {
+            writer.start(Collection.builder(URI.create("http://example.com/")).build());
+            for (int i = 0; i < 1000; i++) {
+                writer.writeItem(Item.create(URI.create("http://example.com/" + i), Arrays.asList(Property.value("n", i))));
+            }
+            fail("Expected the write to fail");
+        } catch (IOException e) {
+            assertEquals("boom", e.getMessage());
+        } finally {
+            writer.close();
+        }
+        assertEquals(1, out.attempts);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finishAfterCloseFails() throws Exception {
+        CollectionWriter writer = CollectionWriter.create(new StringWriter());
+        writer.start(Collection.builder(URI.create("http://example.com/")).build());
+        writer.close();
+        writer.finish();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void itemBeforeStartFails() throws Exception {
+        CollectionWriter.create(new StringWriter()).writeItem(Item.create());
+    }
+
+    private static class FailingStream extends OutputStream {
+        private int remaining;
+        private int attempts;
+
+        FailingStream(int remaining) {
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > remaining) {
+                attempts++;
+                throw new IOException("boom");
+            }
+            remaining -= len;
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package net.hamnaberg.json;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.hamnaberg.funclite.CollectionOps;
+import net.hamnaberg.json.extension.Extension;
 import org.junit.Test;
 
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -15,4 +24,117 @@ public class DataContainerTest {
         assertNotSame(template, replaced);
         assertEquals(replacedFooProperty, replaced.getDataAsMap().get("foo"));
     }
+
+    @Test
+    public void addAppendsAndKeepsOriginal() throws Exception {
+        Template template = Template.create(Arrays.asList(Property.value("foo", "Hello")));
+        Template added = template.add(Property.value("bar", "World"));
+        assertEquals(1, template.getDataAsMap().size());
+        assertEquals(Arrays.asList(Property.value("foo", "Hello"), Property.value("bar", "World")), CollectionOps.newArrayList(added.getData()));
+    }
+
+    @Test
+    public void addAllAppendsEveryProperty() throws Exception {
+        Item item = Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("foo", "Hello")),
+                Arrays.asList(Link.create(URI.create("http://example.com/1/owner"), "owner")));
+        Item added = item.addAll(Arrays.asList(Property.value("bar", "World"), Property.value("baz", 1)));
+        assertEquals(Arrays.asList(Property.value("foo", "Hello"), Property.value("bar", "World"), Property.value("baz", 1)), CollectionOps.newArrayList(added.getData()));
+        assertEquals(item.getLinks(), added.getLinks());
+        assertEquals(Arrays.asList(Property.value("foo", "Hello")), CollectionOps.newArrayList(item.getData()));
+        assertSame(item, item.addAll(new ArrayList<Property>()));
+    }
+
+    @Test
+    public void transientApplyDoesNotGiveSharedNodesToTheExtension() throws Exception {
+        Item item = Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("foo", "Hello")),
+                Arrays.asList(Link.create(URI.create("http://example.com/1/owner"), "owner"))).memoize();
+        String written = Collection.builder(URI.create("http://example.com/")).addItem(item).build().toString();
+        Extension<URI> related = new Extension<URI>() {
+            @Override
+            public URI extract(ObjectNode node) {
+                return null;
+            }
+
+            @Override
+            public Map<String, JsonNode> apply(URI value) {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public boolean applyTo(URI value, ObjectNode target) {
+                target.withArray("links").add(Link.create(value, "related").asJson());
+                return true;
+            }
+        };
+        Item applied = item.asTransient().apply(URI.create("http://example.com/2"), related).persistent();
+        assertEquals(1, item.getLinks().size());
+        assertEquals(written, Collection.builder(URI.create("http://example.com/")).addItem(item).build().toString());
+        assertEquals(Arrays.asList(Link.create(URI.create("http://example.com/2"), "related")), applied.getLinks());
+    }
+
+    @Test
+    public void replaceKeepsUnchangedProperties() throws Exception {
+        Template template = Template.create(Arrays.asList(Property.value("foo", "Hello"), Property.value("bar", "World")));
+        Template replaced = template.replace(Property.value("bar", "There"));
+        assertEquals(template.getDataAsMap().get("foo"), replaced.getDataAsMap().get("foo"));
+        assertEquals(Property.value("bar", "There"), replaced.getDataAsMap().get("bar"));
+        assertEquals(Property.value("bar", "World"), template.getDataAsMap().get("bar"));
+    }
+
+    @Test
+    public void withMutationsAppliesAllChanges() throws Exception {
+        Item item = Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("foo", "Hello"), Property.value("bar", "World")));
+        Item mutated = item.withMutations(new Mutation<DataContainer.Transient<Item>>() {
+            @Override
+            public void apply(DataContainer.Transient<Item> t) {
+                t.add(Property.value("baz", 1)).replace(Property.value("foo", "Hi")).remove("bar");
+            }
+        });
+        assertEquals(Arrays.asList(Property.value("foo", "Hi"), Property.value("baz", 1)), CollectionOps.newArrayList(mutated.getData()));
+        assertEquals(item.getHref(), mutated.getHref());
+        assertEquals(2, item.getDataAsMap().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void transientCanNotBeUsedAfterPersistent() throws Exception {
+        DataContainer.Transient<Template> t = Template.create().asTransient();
+        t.persistent();
+        t.add(Property.template("foo"));
+    }
+
+    @Test
+    public void collectionMutationsShareUntouchedItems() throws Exception {
+        Item first = Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("foo", "Hello")));
+        Collection collection = Collection.builder().addItem(first).build();
+        Collection mutated = collection.withMutations(new Mutation<Collection.Transient>() {
+            @Override
+            public void apply(Collection.Transient t) {
+                t.withHref(URI.create("http://example.com/")).addItem(Item.create(URI.create("http://example.com/2"), Arrays.asList(Property.value("foo", "World"))));
+            }
+        });
+        assertEquals(URI.create("http://example.com/"), mutated.getHref().get());
+        assertEquals(2, mutated.getItems().size());
+        assertEquals(first, mutated.getItems().get(0));
+        assertEquals(1, collection.getItems().size());
+    }
+
+    @Test
+    public void chainedUpdatesMatchTheCopiedJson() throws Exception {
+        List<Property> properties = new ArrayList<Property>();
+        for (int i = 0; i < 100; i++) {
+            properties.add(Property.value("p" + i, i));
+        }
+        Item original = Item.create(URI.create("http://example.com/1"), properties);
+        Item updated = original;
+        for (int i = 0; i < 100; i += 2) {
+            updated = updated.replace(Property.value("p" + i, "changed"));
+            properties.set(i, Property.value("p" + i, "changed"));
+        }
+        updated = updated.add(Property.value("extra", true));
+        properties.add(Property.value("extra", true));
+        assertEquals(Property.value("p4", "changed"), updated.propertyByName("p4").get());
+        assertEquals(Item.create(URI.create("http://example.com/1"), properties), updated);
+        assertEquals(Property.value("p4", 4), original.propertyByName("p4").get());
+        assertSame(updated, updated.replace(Property.value("missing", 1)));
+    }
 }
@@ -0,0 +1,91 @@
+package net.hamnaberg.json;
+
+import net.hamnaberg.json.parser.CollectionParser;
+import net.hamnaberg.json.parser.ItemCursor;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataFormatTest {
+
+    @Test
+    public void choosesFormatByMediaType() {
+        assertEquals(DataFormat.JSON, DataFormat.fromMediaType(MediaType.COLLECTION_JSON));
+        assertEquals(DataFormat.SMILE, DataFormat.fromMediaType("Application/Vnd.Collection+Smile; charset=binary"));
+        assertEquals(MediaType.COLLECTION_SMILE, DataFormat.SMILE.getMediaType());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownMediaType() {
+        DataFormat.fromMediaType("application/json");
+    }
+
+    @Test
+    public void smileRoundTrips() throws Exception {
+        Collection collection = new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        ByteArrayOutputStream smile = new ByteArrayOutputStream();
+        collection.writeTo(smile, DataFormat.SMILE);
+
+        Collection parsed = new CollectionParser().parse(new ByteArrayInputStream(smile.toByteArray()), DataFormat.SMILE);
+        assertArrayEquals(json(collection), json(parsed));
+    }
+
+    @Test
+    public void templateWritesInTheFormat() throws Exception {
+        Template template = Template.create(Arrays.asList(Property.value("name", "one"))).memoize();
+        ByteArrayOutputStream smile = new ByteArrayOutputStream();
+        template.writeTo(smile, DataFormat.SMILE);
+
+        Template parsed = new CollectionParser().parseTemplate(new ByteArrayInputStream(smile.toByteArray()), DataFormat.SMILE);
+        assertEquals(template.toString(), parsed.toString());
+    }
+
+    @Test
+    public void smileSharesRepeatedNames() throws Exception {
+        Collection.Builder builder = Collection.builder(URI.create("http://example.com/"));
+        for (int i = 0; i < 200; i++) {
+            Item item = Item.create(URI.create("http://example.com/" + i), Arrays.asList(
+                    Property.value("full-name", "Name " + i), Property.value("email", i + "@example.com")));
+            builder.addItem(i % 2 == 0 ? item.memoize() : item);
+        }
+        Collection collection = builder.build();
+        ByteArrayOutputStream smile = new ByteArrayOutputStream();
+        collection.writeTo(smile, DataFormat.SMILE);
+        assertTrue(smile.size() < json(collection).length / 2);
+
+        ItemCursor cursor = new CollectionParser().cursor(new ByteArrayInputStream(smile.toByteArray()), DataFormat.SMILE);
+        int count = 0;
+        while (cursor.next()) {
+            count++;
+        }
+        cursor.close();
+        assertEquals(200, count);
+    }
+
+    @Test
+    public void smileStreamingWriter() throws Exception {
+        ByteArrayOutputStream smile = new ByteArrayOutputStream();
+        CollectionWriter writer = CollectionWriter.create(smile, WriteOptions.DEFAULT, DataFormat.SMILE);
+        writer.start(Collection.builder(URI.create("http://example.com/")).build());
+        writer.writeItem(Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("n", 1))));
+        writer.finish();
+        writer.close();
+
+        Collection parsed = new CollectionParser().parse(new ByteArrayInputStream(smile.toByteArray()), DataFormat.SMILE);
+        assertEquals(URI.create("http://example.com/1"), parsed.getFirstItem().get().getHref().get());
+    }
+
+    private static byte[] json(Collection collection) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        collection.writeTo(stream);
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,107 @@
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.databind.node.TextNode;
+import net.hamnaberg.funclite.Predicate;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EncodedFormsTest {
+
+    @Test
+    public void memoizedItemIsSplicedIntoCollection() throws Exception {
+        Item item = Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("name", "one")));
+        Collection plain = Collection.builder(URI.create("http://example.com/")).addItem(item).build();
+        String expected = plain.toString();
+
+        Item memoized = item.memoize();
+        Collection collection = Collection.builder(URI.create("http://example.com/")).addItem(memoized).build();
+        assertTrue(collection.getItems().get(0).isMemoized());
+        assertEquals(expected, collection.toString());
+        assertEquals(expected, bytes(collection));
+
+        // proves the stored form is written rather than the node; model nodes are never changed like this
+        memoized.unwrap().put("href", new TextNode("http://example.com/changed"));
+        assertEquals(expected, collection.toString());
+    }
+
+    @Test
+    public void copiesAreNotMemoizedButShareMemoizedParts() throws Exception {
+        Link link = Link.create(URI.create("http://example.com/a"), "alternate").memoize();
+        Item item = Item.create(URI.create("http://example.com/1"), Collections.<Property>emptyList(), Arrays.asList(link)).memoize();
+        Item added = item.add(Property.value("name", "one"));
+        assertFalse(added.isMemoized());
+        assertTrue(added.getLinks().get(0).isMemoized());
+        Item fresh = Item.create(URI.create("http://example.com/1"), Collections.<Property>emptyList(), Arrays.asList(Link.create(URI.create("http://example.com/a"), "alternate")))
+                .add(Property.value("name", "one"));
+        assertEquals(Collection.builder().addItem(fresh).build().toString(), Collection.builder().addItem(added).build().toString());
+    }
+
+    @Test
+    public void formsStayWithTheMemoizedObjects() throws Exception {
+        Item item = item(1);
+        Item memoized = item.memoize();
+        assertFalse(item.isMemoized());
+        assertSame(item.unwrap(), memoized.unwrap());
+        assertSame(memoized, memoized.memoize());
+
+        Collection plain = Collection.builder(URI.create("http://example.com/")).addItem(item).build();
+        assertNull(plain.forms());
+
+        Collection collection = plain.withMutations(new Mutation<Collection.Transient>() {
+            @Override
+            public void apply(Collection.Transient t) {
+                t.addItem(item(2).memoize());
+            }
+        });
+        assertTrue(collection.getItems().get(1).isMemoized());
+        assertFalse(collection.getItems().get(0).isMemoized());
+        assertEquals(bytes(Collection.builder(URI.create("http://example.com/")).addItem(item).addItem(item(2)).build()), bytes(collection));
+
+        Collection removed = collection.withMutations(new Mutation<Collection.Transient>() {
+            @Override
+            public void apply(Collection.Transient t) {
+                t.removeItems(new Predicate<Item>() {
+                    @Override
+                    public boolean apply(Item input) {
+                        return input.isMemoized();
+                    }
+                });
+            }
+        });
+        assertNull(removed.forms());
+        assertEquals(bytes(plain), bytes(removed));
+    }
+
+    private static Item item(int i) {
+        return Item.create(URI.create("http://example.com/" + i), Arrays.asList(Property.value("name", "bl\u00e5b\u00e6r \ud83d\ude00")));
+    }
+
+    @Test
+    public void createSharesNodesWithoutCopying() {
+        Property property = Property.value("name", "one");
+        Item item = Item.create(URI.create("http://example.com/1"), Arrays.asList(property));
+        Link link = Link.create(URI.create("http://example.com/a"), "alternate");
+        Collection collection = Collection.builder(URI.create("http://example.com/")).addItem(item).addLink(link).build();
+
+        assertSame(property.unwrap(), item.unwrap().get("data").get(0));
+        assertSame(item.unwrap(), collection.unwrap().get("items").get(0));
+        assertSame(link.unwrap(), collection.unwrap().get("links").get(0));
+        assertSame(item, collection.getItems().get(0));
+    }
+
+    private static String bytes(Collection collection) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        collection.writeTo(stream);
+        return stream.toString("UTF-8");
+    }
+}
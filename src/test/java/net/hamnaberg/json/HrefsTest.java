@@ -0,0 +1,67 @@
+package net.hamnaberg.json;
+
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HrefsTest {
+
+    @Test
+    public void relativizesOnlySafeHrefs() {
+        String dir = Hrefs.directoryOf("http://api.example.com/v2/orders?page=2");
+        assertEquals("http://api.example.com/v2/", dir);
+        assertEquals("orders/123", Hrefs.relativize(dir, "http://api.example.com/v2/orders/123"));
+        assertEquals("http://api.example.com/v1/orders", Hrefs.relativize(dir, "http://api.example.com/v1/orders"));
+        assertEquals("http://api.example.com/v2/a:b", Hrefs.relativize(dir, "http://api.example.com/v2/a:b"));
+        assertEquals("http://api.example.com/v2/../x", Hrefs.relativize(dir, "http://api.example.com/v2/../x"));
+        assertEquals("http://api.example.com/v2/?q", Hrefs.relativize(dir, "http://api.example.com/v2/?q"));
+        assertEquals("http://api.example.com/v2/x{?a:3}", Hrefs.relativize(dir, "http://api.example.com/v2/x{?a:3}"));
+        assertEquals("http://api.example.com/v2/1:2", Hrefs.relativize(dir, "http://api.example.com/v2/1:2"));
+        assertEquals("orders/{id}{?fields}", Hrefs.relativize(dir, "http://api.example.com/v2/orders/{id}{?fields}"));
+    }
+
+    @Test
+    public void roundTripsThroughWriterAndParser() throws Exception {
+        URI href = URI.create("http://api.example.com/v2/orders/");
+        Collection collection = Collection.builder(href)
+                .addLink(Link.create(URI.create("http://api.example.com/v2/orders/?page=2"), "next"))
+                .addItem(Item.create(URI.create("http://api.example.com/v2/orders/123"), Collections.<Property>emptyList(),
+                        Arrays.asList(Link.create(URI.create("http://api.example.com/v2/orders/123/lines"), "lines"), Link.create(URI.create("http://other.com/x"), "other"))))
+                .addQuery(Query.create(URI.create("http://api.example.com/v2/orders/search"), "search", net.hamnaberg.funclite.Optional.<String>none(), Collections.<Property>emptyList()))
+                .build();
+        StringWriter writer = new StringWriter();
+        collection.writeTo(writer, WriteOptions.builder().relativeHrefs().build());
+        String json = writer.toString();
+        assertTrue(json, json.contains("\"href\":\"123\""));
+        assertTrue(json, json.contains("\"href\":\"123/lines\""));
+        assertTrue(json, json.contains("\"href\":\"search\""));
+        assertTrue(json, json.contains("\"href\":\"http://other.com/x\""));
+
+        assertEquals(collection, new CollectionParser().resolvingRelativeHrefs().parse(json));
+    }
+
+    @Test
+    public void roundTripsTemplatedQueryHrefs() throws Exception {
+        URI href = URI.create("http://example.com/orders/");
+        Collection collection = Collection.builder(href)
+                .addQuery(Query.create(new URITemplateTarget("http://example.com/orders/x{?a:3}"), "prefix", net.hamnaberg.funclite.Optional.<String>none(), Collections.<Property>emptyList()))
+                .addQuery(Query.create(new URITemplateTarget("http://example.com/orders/search{?q,page}"), "search", net.hamnaberg.funclite.Optional.<String>none(), Collections.<Property>emptyList()))
+                .addQuery(Query.create(new URITemplateTarget("http://example.com/orders/{id}/lines"), "lines", net.hamnaberg.funclite.Optional.<String>none(), Collections.<Property>emptyList()))
+                .build();
+        StringWriter writer = new StringWriter();
+        collection.writeTo(writer, WriteOptions.builder().relativeHrefs().build());
+        String json = writer.toString();
+        assertTrue(json, json.contains("\"href\":\"http://example.com/orders/x{?a:3}\""));
+        assertTrue(json, json.contains("\"href\":\"search{?q,page}\""));
+        assertTrue(json, json.contains("\"href\":\"{id}/lines\""));
+
+        assertEquals(collection, new CollectionParser().resolvingRelativeHrefs().parse(json));
+    }
+}
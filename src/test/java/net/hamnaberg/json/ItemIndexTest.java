@@ -0,0 +1,64 @@
+package net.hamnaberg.json;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ItemIndexTest {
+    private static final URI PERSON = URI.create("http://example.com/profiles/person");
+    private static final URI ROBOT = URI.create("http://example.com/profiles/robot");
+
+    private final Item alice = item("alice", PERSON, 34);
+    private final Item bob = item("bob", ROBOT, 7.0);
+    private final Item carol = item("carol", null, 12);
+    private final Item dave = item("dave", PERSON, 7);
+    private final Collection collection = Collection.builder().addItems(Arrays.asList(alice, bob, carol, dave)).build();
+
+    @Test
+    public void lookupByHref() {
+        assertEquals(bob, collection.itemByHref(URI.create("http://example.com/bob")).get());
+        assertTrue(collection.itemByHref(URI.create("http://example.com/eve")).isNone());
+    }
+
+    @Test
+    public void lookupByProfile() {
+        assertEquals(Arrays.asList(alice, dave), collection.itemsByProfile(PERSON));
+        assertEquals(Arrays.asList(alice, carol, dave), collection.filterItemsByProfile(PERSON));
+        assertEquals(Collections.singletonList(carol), collection.filterItemsByProfile(URI.create("http://example.com/unknown")));
+    }
+
+    @Test
+    public void hashIndexComparesNumbersByValue() {
+        ItemIndex.PropertyIndex index = collection.getItemIndex().hashIndex("age");
+        assertEquals(Arrays.asList(bob, dave), index.get(7));
+        assertSame(index, collection.getItemIndex().hashIndex("age"));
+    }
+
+    @Test
+    public void sortedIndexSupportsRanges() {
+        ItemIndex.PropertyIndex index = collection.getItemIndex().sortedIndex("age");
+        List<Item> teens = index.range(ValueFactory.createValue(7), false, ValueFactory.createValue(20), true);
+        assertEquals(Collections.singletonList(carol), teens);
+        assertEquals(Arrays.asList(carol, alice), index.greaterThan(ValueFactory.createValue(12), true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void hashIndexHasNoRanges() {
+        collection.getItemIndex().hashIndex("age").lessThan(ValueFactory.createValue(1), true);
+    }
+
+    private static Item item(String name, URI profile, Object age) {
+        Item.Builder builder = Item.builder(URI.create("http://example.com/" + name))
+                .addProperty(Property.value("name", name))
+                .addProperty(Property.value("age", age));
+        if (profile != null) {
+            builder.addLink(Link.create(profile, "profile"));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,233 @@
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import net.hamnaberg.json.parser.CollectionParser;
+import net.hamnaberg.json.parser.ItemCursor;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class JsonCodecTest {
+    private static final Collection COLLECTION = collection(2000);
+
+    @Test
+    public void jacksonWritesSameAsWriteTo() throws Exception {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        COLLECTION.writeTo(plain);
+        assertArrayEquals(plain.toByteArray(), bytes(COLLECTION, JsonCodec.JACKSON));
+    }
+
+    @Test
+    public void collectionJsonWritesSameAsJackson() throws Exception {
+        assertArrayEquals(bytes(COLLECTION, JsonCodec.JACKSON), bytes(COLLECTION, JsonCodec.COLLECTION_JSON));
+
+        StringWriter writer = new StringWriter();
+        COLLECTION.writeTo(writer, JsonCodec.COLLECTION_JSON);
+        assertEquals(COLLECTION.toString(), writer.toString());
+
+        Template template = COLLECTION.getTemplate().get();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        template.writeTo(expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        template.writeTo(actual, JsonCodec.COLLECTION_JSON);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void collectionJsonWritesWithOptions() throws Exception {
+        WriteOptions jackson = WriteOptions.builder().compact().relativeHrefs().build();
+        WriteOptions codec = WriteOptions.builder().compact().relativeHrefs().codec(JsonCodec.COLLECTION_JSON).build();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        COLLECTION.writeTo(expected, jackson);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        COLLECTION.writeTo(actual, codec);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        Collection envelope = Collection.builder(URI.create("http://example.com/")).build();
+        CollectionWriter.create(streamed, codec).write(envelope, COLLECTION.getItems().iterator());
+        ByteArrayOutputStream streamedByJackson = new ByteArrayOutputStream();
+        CollectionWriter.create(streamedByJackson, jackson).write(envelope, COLLECTION.getItems().iterator());
+        assertArrayEquals(streamedByJackson.toByteArray(), streamed.toByteArray());
+    }
+
+    @Test
+    public void collectionJsonParsesSameAsJackson() throws Exception {
+        byte[] json = bytes(COLLECTION, JsonCodec.JACKSON);
+        CollectionParser jackson = new CollectionParser();
+        CollectionParser codec = new CollectionParser().usingCodec(JsonCodec.COLLECTION_JSON);
+        Collection expected = jackson.parse(new ByteArrayInputStream(json));
+
+        assertEquals(expected.unwrap(), codec.parse(new ByteArrayInputStream(json)).unwrap());
+        assertEquals(expected.unwrap(), codec.parse(new ByteArrayInputStream(json), DataFormat.JSON).unwrap());
+        assertEquals(expected.unwrap(), codec.parse(new TrickleInputStream(json), DataFormat.JSON).unwrap());
+        assertEquals(expected.unwrap(), codec.parse(COLLECTION.toString()).unwrap());
+    }
+
+    @Test
+    public void collectionJsonParsesEscapesAndNumbers() throws Exception {
+        String json = "{\"collection\": {\"version\": \"1.0\", \"href\": \"http://example.com/\", \"items\": [{\"data\": ["
+                + "{\"name\": \"text\", \"value\": \"\\u00e5\\t\\\"\\\\\\/\\ud83d\\ude00 \u00e6\ud83d\ude00\"},"
+                + "{\"name\": \"int\", \"value\": -2147483648}, {\"name\": \"long\", \"value\": 9223372036854775807},"
+                + "{\"name\": \"big\", \"value\": 92233720368547758070}, {\"name\": \"double\", \"value\": -1.5E-3},"
+                + "{\"name\": \"zero\", \"value\": 0.0}, {\"name\": \"flags\", \"array\": [true, false, null]},"
+                + "{\"name\": \"object\", \"object\": {\"\": {}, \"nested\": [[]]}}]}]}}";
+        Collection expected = new CollectionParser().parse(json);
+        Collection actual = new CollectionParser().usingCodec(JsonCodec.COLLECTION_JSON).parse(json);
+        assertEquals(expected.unwrap(), actual.unwrap());
+        byte[] withBom = ("\ufeff" + json).getBytes("UTF-8");
+        assertEquals(expected.unwrap(), new CollectionParser().usingCodec(JsonCodec.COLLECTION_JSON).parse(new ByteArrayInputStream(withBom), DataFormat.JSON).unwrap());
+        assertEquals("\u00e5\t\"\\/\ud83d\ude00 \u00e6\ud83d\ude00", actual.getFirstItem().get().getData().propertyByName("text").get().getValue().get().asString());
+    }
+
+    @Test
+    public void collectionJsonRejectsMalformedInput() throws Exception {
+        String[] inputs = {
+                "", "{", "{\"collection\": {\"version\": \"1.0\",}}", "{\"collection\" {}}", "{\"collection\": [01]}",
+                "{\"collection\": [1.]}", "{\"collection\": [1e]}", "{\"collection\": [tru]}", "{\"collection\": [truex]}",
+                "{\"collection\": \"unterminated}", "{\"collection\": \"\\x\"}", "{\"collection\": [1 2]}",
+                "{\"collection\": {}]", "{\"collection\": \"\u0001\"}"};
+        CollectionParser parser = new CollectionParser().usingCodec(JsonCodec.COLLECTION_JSON);
+        for (String input : inputs) {
+            try {
+                parser.parse(input);
+                fail("Expected " + input + " to be rejected");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void cursorReadsWithTheCodec() throws Exception {
+        byte[] json = bytes(COLLECTION, JsonCodec.JACKSON);
+        List<Item> expected = snapshots(new CollectionParser().cursor(new ByteArrayInputStream(json)));
+        List<Item> actual = snapshots(new CollectionParser().usingCodec(JsonCodec.COLLECTION_JSON).cursor(new ByteArrayInputStream(json)));
+        assertEquals(COLLECTION.getItems().size(), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(expected.get(i).unwrap(), actual.get(i).unwrap());
+        }
+    }
+
+    @Test
+    public void parserAndWritersUseTheGivenCodec() throws Exception {
+        CountingCodec codec = new CountingCodec();
+        CollectionParser parser = new CollectionParser().usingCodec(codec);
+        Collection collection = parser.parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        parser.parse(getClass().getResourceAsStream("/item.json"), DataFormat.JSON);
+        parser.cursor(getClass().getResourceAsStream("/item.json")).close();
+        Collection expected = new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        assertEquals(3, codec.parsers);
+
+        assertArrayEquals(bytes(expected, JsonCodec.JACKSON), bytes(collection, codec));
+        StringWriter writer = new StringWriter();
+        collection.writeTo(writer, WriteOptions.builder().codec(codec).build());
+        assertEquals(expected.toString(), writer.toString());
+        CollectionWriter.create(new ByteArrayOutputStream(), WriteOptions.builder().codec(codec).build()).write(collection, Collections.<Item>emptyList().iterator());
+        assertEquals(3, codec.generators);
+    }
+
+    private static byte[] bytes(Collection collection, JsonCodec codec) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        collection.writeTo(stream, codec);
+        return stream.toByteArray();
+    }
+
+    private static List<Item> snapshots(ItemCursor cursor) throws IOException {
+        List<Item> items = new ArrayList<Item>();
+        try {
+            while (cursor.next()) {
+                items.add(cursor.getItem().snapshot());
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    private static Collection collection(int size) {
+        Collection.Builder builder = Collection.builder(URI.create("http://example.com/"));
+        for (int i = 0; i < size; i++) {
+            Item item = Item.create(URI.create("http://example.com/items/" + i), Arrays.asList(
+                    Property.value("text", "tab\t \"quote\" \u0001 \\ bl\u00e5b\u00e6r \u20ac \ud83d\ude00 " + i),
+                    Property.value("double", i + 0.25),
+                    Property.value("long", Long.MAX_VALUE - i),
+                    Property.value("flag", i % 2 == 0),
+                    Property.value("nothing", (String) null),
+                    Property.arrayObject("array", Arrays.<Object>asList(1, "two", null)),
+                    Property.objectMap("object", Collections.<String, Object>singletonMap("key", i))));
+            builder.addItem(i % 3 == 0 ? item.memoize() : item);
+        }
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            longText.append("bl\u00e5 \ud83d\ude00\n");
+        }
+        Item longItem = Item.create(URI.create("http://example.com/items/long"), Arrays.asList(Property.value("text", longText.toString())));
+        builder.addItem(longItem);
+        builder.addItem(longItem.memoize());
+        builder.addLink(Link.create(URI.create("http://example.com/search"), "search"));
+        builder.withTemplate(Template.create(Arrays.asList(Property.template("text"), Property.template("flag"))));
+        return builder.build();
+    }
+
+    /**
+     * Gives at most three bytes per read, so multi-byte characters are split between reads.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+        private TrickleInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 3));
+        }
+    }
+
+    private static class CountingCodec extends JsonCodec {
+        private int parsers;
+        private int generators;
+
+        @Override
+        public JsonParser createParser(InputStream stream) throws IOException {
+            parsers++;
+            return JACKSON.createParser(stream);
+        }
+
+        @Override
+        public JsonParser createParser(Reader reader) throws IOException {
+            parsers++;
+            return JACKSON.createParser(reader);
+        }
+
+        @Override
+        public JsonGenerator createGenerator(OutputStream stream) throws IOException {
+            generators++;
+            return JACKSON.createGenerator(stream);
+        }
+
+        @Override
+        public JsonGenerator createGenerator(Writer writer) throws IOException {
+            generators++;
+            return JACKSON.createGenerator(writer);
+        }
+    }
+}
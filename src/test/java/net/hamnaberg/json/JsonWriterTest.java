@@ -0,0 +1,82 @@
+package net.hamnaberg.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class JsonWriterTest {
+
+    @Test
+    public void sameBytesAsObjectMapper() throws Exception {
+        Collection parsed = new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        Item numbers = Item.create(URI.create("http://example.com/æ"), Arrays.asList(
+                Property.value("int", 1),
+                Property.value("decimal", new BigDecimal("1.50")),
+                Property.value("double", 0.1),
+                Property.value("text", "quote \" and ø"),
+                Property.arrayObject("mixed", Arrays.<Object>asList(true, null, 2L))
+        ));
+        Collection collection = parsed.asTransient().addItem(numbers).persistent();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        collection.writeTo(actual);
+        assertArrayEquals(objectMapperBytes(collection), actual.toByteArray());
+    }
+
+    @Test
+    public void streamIsFlushedAndLeftOpen() throws Exception {
+        CountingStream stream = new CountingStream();
+        Collection.builder(URI.create("http://example.com/")).build().writeTo(stream);
+        assertEquals(0, stream.closed);
+        assertEquals("{\"collection\":{\"version\":\"1.0\",\"href\":\"http://example.com/\"}}", stream.toString("UTF-8"));
+    }
+
+    @Test
+    public void parallelWriteIsSameAsSequential() throws Exception {
+        Collection.Transient builder = Collection.builder(URI.create("http://example.com/")).build().asTransient();
+        for (int i = 0; i < 5000; i++) {
+            Item item = Item.create(URI.create("http://example.com/" + i), Arrays.asList(Property.value("n", i), Property.value("s", "value " + i)));
+            builder.addItem(i % 7 == 0 ? item.memoize() : item);
+        }
+        Collection collection = builder.addLink(Link.create(URI.create("http://example.com/next"), "next")).persistent();
+
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        collection.writeTo(sequential);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            collection.writeTo(parallel, executor);
+            assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] objectMapperBytes(Collection collection) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode obj = mapper.createObjectNode();
+        obj.put("collection", collection.asJson());
+        return mapper.writeValueAsBytes(obj);
+    }
+
+    private static class CountingStream extends ByteArrayOutputStream {
+        private int closed;
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+}
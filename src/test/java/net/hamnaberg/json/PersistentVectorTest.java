@@ -0,0 +1,89 @@
+package net.hamnaberg.json;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PersistentVectorTest {
+    @Test
+    public void appendAndSetAcrossTrieLevels() {
+        List<Integer> expected = new ArrayList<Integer>();
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for (int i = 0; i < 40000; i++) {
+            vector = vector.append(i);
+            expected.add(i);
+        }
+        PersistentVector<Integer> updated = vector;
+        for (int i = 0; i < expected.size(); i += 7) {
+            updated = updated.set(i, -i);
+        }
+        assertEquals(expected.size(), updated.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), vector.get(i));
+            assertEquals(i % 7 == 0 ? -i : i, updated.get(i).intValue());
+        }
+        assertEquals(expected, toList(vector));
+    }
+
+    @Test
+    public void ofBuildsTheSameVectorAsAppend() {
+        for (int n : new int[]{0, 1, 31, 32, 33, 1024, 1056, 1057, 33000}) {
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                expected.add(i);
+            }
+            PersistentVector<Integer> vector = PersistentVector.of(expected);
+            assertEquals(expected, toList(vector));
+            assertEquals(expected.size() + 1, toList(vector.append(n)).size());
+            assertEquals(Integer.valueOf(n), vector.append(n).get(n));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutsideTheVector() {
+        PersistentVector.<String>empty().append("a").get(1);
+    }
+
+    @Test
+    public void hashMapKeepsOldVersions() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        List<PersistentHashMap<String, Integer>> versions = new ArrayList<PersistentHashMap<String, Integer>>();
+        for (int i = 0; i < 5000; i++) {
+            map = map.put("key" + i, i);
+            versions.add(map);
+        }
+        assertEquals(5000, map.size());
+        assertSame(map, map.put("key10", 10));
+        PersistentHashMap<String, Integer> changed = map.put("key10", -10);
+        assertEquals(5000, changed.size());
+        assertEquals(Integer.valueOf(-10), changed.get("key10"));
+        assertEquals(Integer.valueOf(10), map.get("key10"));
+        assertNull(versions.get(9).get("key10"));
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(Integer.valueOf(i), map.get("key" + i));
+        }
+    }
+
+    @Test
+    public void hashMapHandlesCollisions() {
+        // "Aa" and "BB" have the same hash code
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().put("Aa", 1).put("BB", 2).put("C#", 3);
+        assertEquals(3, map.size());
+        assertEquals(Integer.valueOf(1), map.get("Aa"));
+        assertEquals(Integer.valueOf(2), map.get("BB"));
+        assertEquals(Integer.valueOf(3), map.get("C#"));
+        assertEquals(Integer.valueOf(4), map.put("BB", 4).get("BB"));
+        assertNull(map.get("AaAa"));
+    }
+
+    private static <E> List<E> toList(PersistentVector<E> vector) {
+        List<E> list = new ArrayList<E>();
+        for (E e : vector) {
+            list.add(e);
+        }
+        return list;
+    }
+}
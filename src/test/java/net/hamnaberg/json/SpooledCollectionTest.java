@@ -0,0 +1,115 @@
+package net.hamnaberg.json;
+
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpooledCollectionTest {
+
+    @Test
+    public void spillsBeyondBudgetAndWritesSameAsCollection() throws Exception {
+        Collection.Builder builder = Collection.builder(URI.create("http://example.com/"))
+                .addLink(Link.create(URI.create("http://example.com/next"), "next"))
+                .addItem(item(0));
+        SpooledCollection.Builder spooled = Collection.builder(URI.create("http://example.com/"))
+                .addLink(Link.create(URI.create("http://example.com/next"), "next"))
+                .addItem(item(0))
+                .spooled(1024);
+        for (int i = 1; i < 500; i++) {
+            Item item = i % 5 == 0 ? item(i).memoize() : item(i);
+            builder.addItem(item);
+            spooled.addItem(item);
+        }
+        SpooledCollection collection = spooled.build();
+        try {
+            assertTrue(collection.isSpilled());
+            assertEquals(500, collection.size());
+            assertArrayEquals(bytes(builder.build()), bytes(collection));
+            assertEquals(URI.create("http://example.com/0"), collection.getItem(0).getHref().get());
+            assertEquals(URI.create("http://example.com/321"), collection.getItem(321).getHref().get());
+
+            Iterator<Item> items = collection.iterator();
+            for (int i = 0; i < 500; i++) {
+                assertEquals(URI.create("http://example.com/" + i), items.next().getHref().get());
+            }
+            assertFalse(items.hasNext());
+        } finally {
+            collection.close();
+        }
+    }
+
+    @Test
+    public void staysInMemoryWithinBudget() throws Exception {
+        SpooledCollection collection = Collection.builder(URI.create("http://example.com/")).spooled(1024 * 1024)
+                .addItem(item(1)).addItem(item(2)).build();
+        assertFalse(collection.isSpilled());
+        assertEquals(URI.create("http://example.com/2"), collection.getItem(1).getHref().get());
+
+        Collection parsed = new CollectionParser().parse(new ByteArrayInputStream(bytes(collection)));
+        assertEquals(2, parsed.getItems().size());
+        collection.close();
+    }
+
+    @Test
+    public void writesEmptyCollection() throws Exception {
+        SpooledCollection collection = Collection.builder(URI.create("http://example.com/")).spooled(0).build();
+        Collection parsed = new CollectionParser().parse(new ByteArrayInputStream(bytes(collection)));
+        assertEquals(0, parsed.getItems().size());
+        assertFalse(collection.iterator().hasNext());
+        collection.close();
+    }
+
+    @Test
+    public void closingTheCollectionClosesAbandonedIterators() throws Exception {
+        File directory = File.createTempFile("spooled", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        try {
+            SpooledCollection.Builder builder = Collection.builder(URI.create("http://example.com/")).spooled(0, directory);
+            for (int i = 0; i < 10; i++) {
+                builder.addItem(item(i));
+            }
+            SpooledCollection collection = builder.build();
+            SpooledCollection.ItemIterator unread = collection.iterator();
+            assertTrue(unread.hasNext());
+            SpooledCollection.ItemIterator abandoned = collection.iterator();
+            assertEquals(item(0).getHref(), abandoned.next().getHref());
+            collection.close();
+            assertEquals(0, directory.list().length);
+            try {
+                abandoned.next();
+                fail("Expected the iterator to be closed");
+            } catch (IllegalStateException expected) {
+            }
+        } finally {
+            directory.delete();
+        }
+    }
+
+    private static Item item(int i) {
+        return Item.create(URI.create("http://example.com/" + i), Arrays.asList(Property.value("n", i), Property.value("s", "value " + i)));
+    }
+
+    private static byte[] bytes(Collection collection) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        collection.writeTo(stream);
+        return stream.toByteArray();
+    }
+
+    private static byte[] bytes(SpooledCollection collection) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        collection.writeTo(stream);
+        return stream.toByteArray();
+    }
+}
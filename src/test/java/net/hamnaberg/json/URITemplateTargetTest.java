@@ -1,12 +1,23 @@
 package net.hamnaberg.json;
 
+import net.hamnaberg.funclite.Optional;
 import org.junit.Test;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class URITemplateTargetTest {
 
@@ -28,4 +39,109 @@ public class URITemplateTargetTest {
         URI expanded = target.expand(properties);
         assertEquals("Incorrect Query", expected, expanded.toString());
     }
+
+    @Test
+    public void expansionCacheReturnsCachedUri() {
+        ExpansionCache cache = new ExpansionCache(10);
+        URITemplateTarget target = new URITemplateTarget("http://example.com/search{?q}");
+        URI first = target.expand(Arrays.asList(Property.value("q", "cats")), cache);
+        URI second = new URITemplateTarget("http://example.com/search{?q}").expand(Arrays.asList(Property.value("q", "cats")), cache);
+        assertEquals("http://example.com/search?q=cats", first.toString());
+        assertSame(first, second);
+        assertEquals("http://example.com/search?q=dogs", target.expand(Arrays.asList(Property.value("q", "dogs")), cache).toString());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void sharedTemplateExpandsConcurrently() throws Exception {
+        final URITemplateTarget target = new URITemplateTarget("http://example.com/{id}");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 200; i++) {
+                final int id = i;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        URI uri = target.expand(Arrays.asList(Property.value("id", String.valueOf(id))));
+                        return uri.toString().equals("http://example.com/" + id);
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void queryKeepsItsTarget() {
+        Query query = Query.create(new URITemplateTarget("http://example.com/{id}"), "search", Optional.<String>none(), Arrays.asList(Property.template("id")));
+        assertSame(query.getHref(), query.getHref());
+    }
+
+    @Test
+    public void expandsRfc6570Examples() {
+        Map<String, Value> keys = new LinkedHashMap<String, Value>();
+        keys.put("semi", ValueFactory.createValue(";"));
+        keys.put("dot", ValueFactory.createValue("."));
+        keys.put("comma", ValueFactory.createValue(","));
+        List<Property> properties = Arrays.asList(
+                Property.value("var", "value"),
+                Property.value("hello", "Hello World!"),
+                Property.value("path", "/foo/bar"),
+                Property.value("empty", ""),
+                Property.value("x", "1024"),
+                Property.value("y", "768"),
+                Property.arrayObject("list", Arrays.<Object>asList("red", "green", "blue")),
+                Property.object("keys", Optional.<String>none(), keys),
+                Property.template("undef"));
+
+        String[][] examples = {
+                {"{var}", "value"},
+                {"{hello}", "Hello%20World%21"},
+                {"{+hello}", "Hello%20World!"},
+                {"{+path}/here", "/foo/bar/here"},
+                {"{#path:6}/here", "#/foo/b/here"},
+                {"{var:3}", "val"},
+                {"{list}", "red,green,blue"},
+                {"{list*}", "red,green,blue"},
+                {"{keys}", "semi,%3B,dot,.,comma,%2C"},
+                {"{keys*}", "semi=%3B,dot=.,comma=%2C"},
+                {"{+keys*}", "semi=;,dot=.,comma=,"},
+                {"X{.list*}", "X.red.green.blue"},
+                {"{/list*,path:4}", "/red/green/blue/%2Ffoo"},
+                {"{;keys*}", ";semi=%3B;dot=.;comma=%2C"},
+                {"{;x,y,empty}", ";x=1024;y=768;empty"},
+                {"{?x,y,empty}", "?x=1024&y=768&empty="},
+                {"{?x,undef}", "?x=1024"},
+                {"{?list*}", "?list=red&list=green&list=blue"},
+                {"{?keys}", "?keys=semi,%3B,dot,.,comma,%2C"},
+                {"{&keys*}", "&semi=%3B&dot=.&comma=%2C"},
+                {"{#hello,undef,x}", "#Hello%20World!,1024"},
+                {"{undef}", ""}
+        };
+        for (String[] example : examples) {
+            assertEquals(example[0], example[1], new URITemplateTarget(example[0]).expand(properties).toString());
+        }
+    }
+
+    @Test
+    public void expandsNumbersAndUnicode() {
+        URITemplateTarget target = new URITemplateTarget("http://example.com/{name}{?n}");
+        URI uri = target.expand(Arrays.asList(Property.value("name", "bl\u00e5"), Property.value("n", 0.5)));
+        assertEquals("http://example.com/bl%C3%A5?n=0.5", uri.toString());
+    }
+
+    @Test
+    public void rejectsMalformedTemplates() {
+        for (String template : new String[]{"{", "}", "{a{b}}", "{}", "{=a}", "{a:0}", "{a:10000}", "{a b}"}) {
+            try {
+                new URITemplateTarget(template);
+                fail("Expected failure for " + template);
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package net.hamnaberg.json;
+
+import net.hamnaberg.funclite.Optional;
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class WriteOptionsTest {
+    private final Item item = Item.create(
+            URI.create("http://example.com/1"),
+            Arrays.asList(Property.value("name", "Shoe"), Property.value("price", 10), Property.value("description", "A shoe")),
+            Arrays.asList(Link.create(URI.create("http://example.com/1/img"), "image"), Link.create(URI.create("http://example.com/1/edit"), "edit"))
+    ).memoize();
+    private final Collection collection = Collection.builder(URI.create("http://example.com/"))
+            .addLink(Link.create(URI.create("http://example.com/2"), "next"))
+            .addItem(item)
+            .build();
+
+    @Test
+    public void projectsFieldsAndLinkRels() throws Exception {
+        WriteOptions options = WriteOptions.builder().fields("name", "price").linkRels("image").build();
+        StringWriter writer = new StringWriter();
+        collection.writeTo(writer, options);
+        Collection projected = new CollectionParser().parse(writer.toString());
+
+        Item written = projected.getFirstItem().get();
+        assertEquals(new HashSet<String>(Arrays.asList("name", "price")), written.getDataAsMap().keySet());
+        assertEquals(1, written.getLinks().size());
+        assertEquals("image", written.getLinks().get(0).getRel());
+        assertEquals(collection.getLinks(), projected.getLinks());
+    }
+
+    @Test
+    public void defaultOptionsWriteEverything() throws Exception {
+        StringWriter writer = new StringWriter();
+        collection.writeTo(writer, WriteOptions.DEFAULT);
+        assertEquals(collection.toString(), writer.toString());
+    }
+
+    @Test
+    public void streamingWritersProject() throws Exception {
+        WriteOptions options = WriteOptions.builder().fields("price").build();
+        StringWriter expected = new StringWriter();
+        collection.writeTo(expected, options);
+        StringWriter actual = new StringWriter();
+        CollectionWriter writer = CollectionWriter.create(actual, options);
+        writer.write(Collection.builder(URI.create("http://example.com/")).addLink(Link.create(URI.create("http://example.com/2"), "next")).build(), Arrays.asList(item).iterator());
+        writer.close();
+        assertEquals(new CollectionParser().parse(expected.toString()), new CollectionParser().parse(actual.toString()));
+    }
+
+    @Test
+    public void compactDropsDefaultPromptsNullsAndEmptyArrays() throws Exception {
+        Item item = Item.create(URI.create("http://example.com/1"), Arrays.asList(
+                Property.value("name", "Shoe"),
+                Property.value("size", Optional.some("Shoe size"), 42),
+                Property.value("color", Optional.<String>none(), ValueFactory.createValue((Object) null)),
+                Property.array("tags", Collections.<Value>emptyList())
+        ));
+        StringWriter writer = new StringWriter();
+        Collection.builder().addItem(item).build().writeTo(writer, WriteOptions.builder().compact().build());
+        assertEquals("{\"collection\":{\"version\":\"1.0\",\"items\":[{\"href\":\"http://example.com/1\",\"data\":[" +
+                "{\"name\":\"name\",\"value\":\"Shoe\"}," +
+                "{\"name\":\"size\",\"prompt\":\"Shoe size\",\"value\":42}," +
+                "{\"name\":\"color\"}," +
+                "{\"name\":\"tags\"}]}]}}", writer.toString());
+    }
+
+    @Test
+    public void hoistsAgreedPromptsIntoTemplate() throws Exception {
+        Collection collection = Collection.builder()
+                .addItem(Item.create(URI.create("http://example.com/1"), Arrays.asList(Property.value("name", Optional.some("Full name"), "A"), Property.value("n", Optional.some("One"), 1))))
+                .addItem(Item.create(URI.create("http://example.com/2"), Arrays.asList(Property.value("name", Optional.some("Full name"), "B"), Property.value("n", Optional.some("Two"), 2))))
+                .withTemplate(Template.create(Arrays.asList(Property.template("name", Optional.<String>none()), Property.template("n", Optional.<String>none()))))
+                .build();
+        StringWriter writer = new StringWriter();
+        collection.writeTo(writer, WriteOptions.builder().hoistPrompts().build());
+        Collection written = new CollectionParser().parse(writer.toString());
+
+        assertEquals(Optional.some("Full name"), written.getTemplate().get().getDataAsMap().get("name").getPrompt());
+        assertEquals(Optional.<String>none(), written.getTemplate().get().getDataAsMap().get("n").getPrompt());
+        assertEquals(Optional.<String>none(), written.getItems().get(0).getDataAsMap().get("name").getPrompt());
+        assertEquals(Optional.some("One"), written.getItems().get(0).getDataAsMap().get("n").getPrompt());
+    }
+}
@@ -0,0 +1,54 @@
+package net.hamnaberg.json.extension;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import net.hamnaberg.json.Collection;
+import net.hamnaberg.json.Item;
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ExtensionRegistryTest {
+
+    @Test
+    public void extractsOncePerInstance() throws Exception {
+        CountingExtension ext = new CountingExtension();
+        Collection collection = Collection.builder().build().apply("hello", ext);
+        assertEquals("hello", collection.getExtension(ext));
+        assertSame(collection.getExtension(ext), collection.getExtension(ext));
+        assertEquals(1, ext.count);
+    }
+
+    @Test
+    public void decodesRegisteredExtensionsWhileParsing() throws Exception {
+        CountingExtension ext = new CountingExtension();
+        ExtensionRegistry registry = ExtensionRegistry.builder().register(Item.class, ext).build();
+        Collection collection = new CollectionParser(registry).parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        assertEquals(1, ext.count);
+        Item item = collection.getFirstItem().get();
+        assertEquals(null, item.getExtension(ext));
+        assertEquals(1, ext.count);
+    }
+
+    private static class CountingExtension extends Extension<String> {
+        private int count;
+
+        @Override
+        public String extract(ObjectNode node) {
+            count++;
+            return node.has("counted") ? node.get("counted").asText() : null;
+        }
+
+        @Override
+        public Map<String, JsonNode> apply(String value) {
+            return Collections.<String, JsonNode>singletonMap("counted", new TextNode(value));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package net.hamnaberg.json.extension;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import net.hamnaberg.funclite.Function;
+import net.hamnaberg.json.Collection;
+import net.hamnaberg.json.Item;
+import net.hamnaberg.json.Property;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ExtensionTest {
+    private final Extension<String> color = new TextExtension("color");
+    private final Extension<String> size = new TextExtension("size");
+
+    @Test
+    public void combineAllWritesAndReadsEveryExtension() {
+        Extension<ExtensionValues> combined = Extension.combineAll(color, size);
+        ExtensionValues values = ExtensionValues.builder().put(color, "red").put(size, "xl").build();
+        Item item = Item.create(URI.create("http://example.com/1"), Collections.<Property>emptyList()).apply(values, combined);
+        assertEquals("red", item.getExtension(color));
+        assertEquals("xl", item.getExtension(size));
+        assertEquals(values, item.getExtension(combined));
+    }
+
+    @Test
+    public void applyWithoutChangesReturnsTheSameInstance() {
+        Item item = Item.create(URI.create("http://example.com/1"), Collections.<Property>emptyList()).apply("red", color);
+        assertSame(item, item.apply("red", color));
+        assertSame(item, item.apply(ExtensionValues.builder().build(), Extension.combineAll(color, size)));
+        assertEquals("blue", item.apply("blue", color).getExtension(color));
+    }
+
+    @Test
+    public void applyToItemsLeavesOriginalUntouched() {
+        Collection collection = collection(3);
+        Collection applied = collection.applyToItems("red", color);
+        for (Item item : applied.getItems()) {
+            assertEquals("red", item.getExtension(color));
+        }
+        for (Item item : collection.getItems()) {
+            assertNull(item.getExtension(color));
+        }
+    }
+
+    @Test
+    public void parallelApplyKeepsOrder() {
+        Collection collection = collection(5000);
+        Function<Item, String> hrefAsColor = new Function<Item, String>() {
+            @Override
+            public String apply(Item input) {
+                return input.getHref().get().toString();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Collection applied = collection.applyToItems(hrefAsColor, color, executor);
+            assertEquals(collection.applyToItems(hrefAsColor, color), applied);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Collection collection(int size) {
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < size; i++) {
+            items.add(Item.create(URI.create("http://example.com/" + i), Collections.singletonList(Property.value("n", i))));
+        }
+        return Collection.builder(URI.create("http://example.com/")).addItems(items).build();
+    }
+
+    @Test
+    public void subclassesReadTheDelegateField() {
+        Named named = new Named(JsonNodeFactory.instance.objectNode().put("name", "first"));
+        Named renamed = named.apply("second", new TextExtension("name"));
+        assertEquals("first", named.getName());
+        assertEquals("second", renamed.getName());
+    }
+
+    private static class Named extends Extended<Named> {
+        private Named(ObjectNode delegate) {
+            super(delegate);
+        }
+
+        String getName() {
+            return delegate.get("name").asText();
+        }
+
+        @Override
+        protected Named copy(ObjectNode value) {
+            return new Named(value);
+        }
+
+        @Override
+        public void validate() {
+        }
+    }
+
+    private static class TextExtension extends Extension<String> {
+        private final String name;
+
+        private TextExtension(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String extract(ObjectNode node) {
+            return node.has(name) ? node.get(name).asText() : null;
+        }
+
+        @Override
+        public Map<String, JsonNode> apply(String value) {
+            return Collections.<String, JsonNode>singletonMap(name, new TextNode(value));
+        }
+    }
+}
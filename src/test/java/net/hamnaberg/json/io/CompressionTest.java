@@ -0,0 +1,212 @@
+package net.hamnaberg.json.io;
+
+import net.hamnaberg.json.Collection;
+import net.hamnaberg.json.CollectionWriter;
+import net.hamnaberg.json.Item;
+import net.hamnaberg.json.Property;
+import net.hamnaberg.json.WriteOptions;
+import net.hamnaberg.json.parser.CollectionParser;
+import net.hamnaberg.json.util.Charsets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompressionTest {
+
+    @Test
+    public void gzipIsReadableByTheJdkAndRoundTrips() throws Exception {
+        Collection collection = parse();
+        byte[] plain = plain(collection);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        collection.writeTo(compressed, Compression.gzip().level(9));
+
+        assertArrayEquals(plain, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+        Collection parsed = new CollectionParser().parse(new ByteArrayInputStream(compressed.toByteArray()), Compression.gzip());
+        assertArrayEquals(plain, plain(parsed));
+    }
+
+    @Test
+    public void readsGzipWrittenByTheJdk() throws Exception {
+        byte[] plain = plain(parse());
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(plain);
+        gzip.close();
+
+        assertArrayEquals(plain, readAll(Compression.gzip().decompress(new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    @Test
+    public void deflateIsZlibFormat() throws Exception {
+        Collection collection = parse();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        collection.writeTo(compressed, Compression.deflate());
+
+        assertArrayEquals(plain(collection), readAll(new InflaterInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+        assertArrayEquals(plain(collection), readAll(Compression.deflate().decompress(new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    @Test
+    public void encodesCompressedIntoBuffers() throws Exception {
+        Collection collection = parse();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        collection.writeTo(expected, Compression.gzip());
+
+        EncodedBuffers buffers = collection.encode(ByteBufferAllocator.heap(64), Compression.gzip());
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        buffers.writeTo(Channels.newChannel(actual));
+        buffers.release();
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void streamingSyncFlushesEveryNItems() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        CollectionWriter writer = CollectionWriter.create(stream, WriteOptions.DEFAULT, Compression.gzip().syncFlushEvery(2));
+        writer.start(Collection.builder(URI.create("http://example.com/")).build());
+        writer.writeItem(item(1));
+        writer.writeItem(item(2));
+
+        String prefix = inflateRaw(Arrays.copyOfRange(stream.toByteArray(), 10, stream.size()));
+        assertTrue(prefix, prefix.endsWith("\"value\":2}]}"));
+
+        writer.writeItem(item(3));
+        writer.finish();
+        writer.close();
+        Collection parsed = new CollectionParser().parse(new ByteArrayInputStream(stream.toByteArray()), Compression.gzip());
+        assertEquals(3, parsed.getItems().size());
+    }
+
+    @Test
+    public void poolReusesCompressors() {
+        CompressorPool pool = new CompressorPool(1);
+        Deflater deflater = pool.borrowDeflater(1, true);
+        pool.release(deflater, true);
+        assertSame(deflater, pool.borrowDeflater(9, true));
+
+        Inflater inflater = pool.borrowInflater(false);
+        pool.release(inflater, false);
+        assertSame(inflater, pool.borrowInflater(false));
+    }
+
+    @Test
+    public void failedWriteGivesTheDeflaterBackWithoutFinishing() throws Exception {
+        Collection collection = parse();
+        for (int header : new int[]{0, 10}) {
+            CompressorPool pool = new CompressorPool(1);
+            Deflater deflater = pool.borrowDeflater(1, true);
+            pool.release(deflater, true);
+            FailingStream stream = new FailingStream(header);
+            try {
+                collection.writeTo(stream, Compression.gzip().pool(pool));
+                fail("Expected the write to fail");
+            } catch (IOException e) {
+                assertEquals("boom", e.getMessage());
+            }
+            assertEquals(1, stream.attempts);
+            assertSame(deflater, pool.borrowDeflater(1, true));
+        }
+    }
+
+    @Test
+    public void closingAnUnfinishedWriterGivesTheDeflaterBackWithoutFinishing() throws Exception {
+        CompressorPool pool = new CompressorPool(1);
+        Deflater deflater = pool.borrowDeflater(1, true);
+        pool.release(deflater, true);
+        FailingStream stream = new FailingStream(100);
+        CollectionWriter writer = CollectionWriter.create(stream, WriteOptions.DEFAULT, Compression.gzip().syncFlushEvery(10).pool(pool));
+        try {
+            writer.start(Collection.builder(URI.create("http://example.com/")).build());
+            for (int i = 0; i < 1000; i++) {
+                writer.writeItem(item(i));
+            }
+            fail("Expected the write to fail");
+        } catch (IOException e) {
+            assertEquals("boom", e.getMessage());
+        } finally {
+            writer.close();
+        }
+        assertEquals(1, stream.attempts);
+        assertSame(deflater, pool.borrowDeflater(1, true));
+
+        ByteArrayOutputStream unstarted = new ByteArrayOutputStream();
+        CollectionWriter.create(unstarted, WriteOptions.DEFAULT, Compression.gzip()).close();
+        assertEquals(10, unstarted.size());
+    }
+
+    private static class FailingStream extends OutputStream {
+        private int remaining;
+        private int attempts;
+
+        FailingStream(int remaining) {
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > remaining) {
+                attempts++;
+                throw new IOException("boom");
+            }
+            remaining -= len;
+        }
+    }
+
+    private static Item item(int i) {
+        return Item.create(URI.create("http://example.com/" + i), Arrays.asList(Property.value("n", i)));
+    }
+
+    private static String inflateRaw(byte[] bytes) throws Exception {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(bytes);
+        byte[] out = new byte[4096];
+        int count = inflater.inflate(out);
+        inflater.end();
+        return new String(out, 0, count, Charsets.UTF_8);
+    }
+
+    private Collection parse() throws Exception {
+        return new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+    }
+
+    private static byte[] plain(Collection collection) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        collection.writeTo(stream);
+        return stream.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream stream) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        int count;
+        while ((count = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        stream.close();
+        return out.toByteArray();
+    }
+}
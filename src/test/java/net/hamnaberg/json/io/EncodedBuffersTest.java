@@ -0,0 +1,72 @@
+package net.hamnaberg.json.io;
+
+import net.hamnaberg.json.Collection;
+import net.hamnaberg.json.parser.CollectionParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EncodedBuffersTest {
+
+    @Test
+    public void encodesInChunksAndReleases() throws Exception {
+        Collection collection = new CollectionParser().parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        collection.writeTo(expected);
+
+        RecordingAllocator allocator = new RecordingAllocator(64);
+        EncodedBuffers buffers = collection.encode(allocator);
+        assertTrue(buffers.getBuffers().length > 1);
+        assertEquals(expected.size(), buffers.size());
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        buffers.writeTo(Channels.newChannel(actual));
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+        buffers.release();
+        buffers.release();
+        assertEquals(allocator.allocated.size(), allocator.released.size());
+    }
+
+    @Test
+    public void pooledAllocatorReusesBuffers() {
+        ByteBufferAllocator allocator = ByteBufferAllocator.pooled(ByteBufferAllocator.direct(16), 1);
+        ByteBuffer buffer = allocator.allocate();
+        buffer.put((byte) 1);
+        allocator.release(buffer);
+        ByteBuffer reused = allocator.allocate();
+        assertTrue(buffer == reused);
+        assertEquals(0, reused.position());
+    }
+
+    private static class RecordingAllocator extends ByteBufferAllocator {
+        private final int size;
+        private final List<ByteBuffer> allocated = new ArrayList<ByteBuffer>();
+        private final List<ByteBuffer> released = new ArrayList<ByteBuffer>();
+
+        private RecordingAllocator(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public ByteBuffer allocate() {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            allocated.add(buffer);
+            return buffer;
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+            released.add(buffer);
+        }
+    }
+}
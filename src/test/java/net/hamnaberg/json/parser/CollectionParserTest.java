@@ -27,6 +27,7 @@ import org.junit.matchers.JUnitMatchers;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.net.URI;
 import java.util.Map;
 
@@ -131,4 +132,65 @@ public class CollectionParserTest {
         assertTrue(object.containsKey("foo"));
         assertEquals(ValueFactory.createOptionalValue("bar").get(), object.get("foo"));
     }
+
+    @Test
+    public void cursorReadsItemsInPlace() throws IOException {
+        Collection collection = parser.parse(new InputStreamReader(getClass().getResourceAsStream("/item.json")));
+        ItemCursor cursor = parser.cursor(getClass().getResourceAsStream("/item.json"));
+        try {
+            assertTrue(cursor.next());
+            ItemView view = cursor.getItem();
+            assertEquals("http://example.org/friends/jdoe", view.getRawHref());
+            assertEquals(2, view.size());
+            assertEquals("J. Doe", view.getString("full-name"));
+            assertEquals("Email", view.getPrompt(view.indexOf("email")));
+            assertEquals(2, view.getLinkCount());
+            assertEquals("image", view.getLinkRender(1));
+            assertEquals(collection.getFirstItem().get(), view.snapshot());
+            assertFalse(cursor.next());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void cursorReusesView() throws IOException {
+        String json = "{\"collection\": {\"href\": \"http://example.com/\", \"items\": [" +
+                "{\"href\": \"http://example.com/1\", \"data\": [{\"name\": \"count\", \"value\": 1}, {\"name\": \"ratio\", \"value\": 0.5}]}," +
+                "{\"href\": \"http://example.com/2\", \"data\": [{\"name\": \"count\", \"value\": 2}]}" +
+                "], \"template\": {}}}";
+        ItemCursor cursor = parser.cursor(new StringReader(json));
+        assertTrue(cursor.next());
+        ItemView first = cursor.getItem();
+        String name = first.getName(0);
+        assertEquals(1L, first.getLong("count"));
+        assertEquals(0.5, first.getDouble("ratio"), 0.0);
+        assertTrue(cursor.next());
+        assertSame(first, cursor.getItem());
+        assertSame(name, first.getName(0));
+        assertEquals(1, first.size());
+        assertEquals(2L, first.getLong(0));
+        assertFalse(cursor.next());
+        cursor.close();
+    }
+
+    @Test
+    public void cursorSkipsNonObjectDataAndLinks() throws IOException {
+        String json = "{\"collection\": {\"items\": [" +
+                "{\"data\": [null, \"x\", [1], {\"name\": \"count\", \"value\": 1}], \"links\": [null, {\"href\": \"http://example.com/a\", \"rel\": \"a\"}, 2], \"href\": \"http://example.com/1\"}," +
+                "{\"href\": \"http://example.com/2\"}" +
+                "]}}";
+        ItemCursor cursor = parser.cursor(new StringReader(json));
+        assertTrue(cursor.next());
+        ItemView view = cursor.getItem();
+        assertEquals(1, view.size());
+        assertEquals(1L, view.getLong("count"));
+        assertEquals(1, view.getLinkCount());
+        assertEquals("a", view.getLinkRel(0));
+        assertEquals("http://example.com/1", view.getRawHref());
+        assertTrue(cursor.next());
+        assertEquals("http://example.com/2", cursor.getItem().getRawHref());
+        assertFalse(cursor.next());
+        cursor.close();
+    }
 }
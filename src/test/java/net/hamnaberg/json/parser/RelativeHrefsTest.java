@@ -0,0 +1,31 @@
+package net.hamnaberg.json.parser;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class RelativeHrefsTest {
+
+    @Test
+    public void resolvesLikeUri() {
+        for (String base : Arrays.asList("http://api.example.com/v2/orders/", "http://api.example.com/v2/orders?page=2")) {
+            RelativeHrefs hrefs = new RelativeHrefs(URI.create(base));
+            for (String href : Arrays.asList("123", "123?x=1", "a/./b", "/root", "../up", "?q=1", "#f", "//other.com/x", "https://x.com/", "a:b")) {
+                assertEquals(href, URI.create(base).resolve(href).toString(), hrefs.resolve(href));
+            }
+        }
+    }
+
+    @Test
+    public void joinsTemplatesWithoutParsingThem() {
+        RelativeHrefs hrefs = new RelativeHrefs(URI.create("http://example.com/orders/list?page=2"));
+        assertEquals("http://example.com/orders/x{?a:3}", hrefs.resolve("x{?a:3}"));
+        assertEquals("http://example.com/search{?q}", hrefs.resolve("/search{?q}"));
+        assertEquals("http://other.com/{id}", hrefs.resolve("//other.com/{id}"));
+        assertEquals("http://example.com/orders/list{?q}", hrefs.resolve("http://example.com/orders/list{?q}"));
+        assertEquals("1:2", hrefs.resolve("1:2"));
+    }
+}